@@ -134,7 +134,8 @@ public class AceDocument {
 		}
 		
 		try {
-		// initialize APF reader
+		// initialize APF reader (shared by the threads that preprocess documents)
+		synchronized (AceDocument.class) {
 		if (builder == null) {
 			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
 			factory.setValidating(false);
@@ -150,6 +151,7 @@ public class AceDocument {
 		    });
 			
 			}
+		}
 		
 			analyzeDocument (textFileName, APFfileName);
 			
@@ -397,7 +399,11 @@ public class AceDocument {
 		Document apfDoc;
 		try
 		{
-			apfDoc = builder.parse(stream);
+			// DocumentBuilder is not thread-safe
+			synchronized (AceDocument.class)
+			{
+				apfDoc = builder.parse(stream);
+			}
 			fileTextWithXML = readDocument(textFileName);
 			fileText = eraseXML(fileTextWithXML);
 			readAPFdocument (apfDoc, fileText);
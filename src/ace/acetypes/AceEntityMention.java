@@ -37,14 +37,10 @@ public class AceEntityMention extends AceMention {
 		if(headIndices == null)
 		{
 			headIndices = new Vector<Integer>();
-			int i = 0;
-			for(Span tokenSpan : tokenSpans)
+			int[] range = Span.getOverlapRange(tokenSpans, this.head);
+			for(int i=range[0]; i<range[1]; i++)
 			{
-				if(this.head.overlap(tokenSpan))
-				{
-					headIndices.add(i);
-				}
-				i++;
+				headIndices.add(i);
 			}
 		}
 	}
@@ -31,14 +31,10 @@ public class AceEventMention extends AceMention{
 		if(headIndices == null)
 		{
 			headIndices = new Vector<Integer>();
-			int i = 0;
-			for(Span tokenSpan : tokenSpans)
+			int[] range = Span.getOverlapRange(tokenSpans, this.anchorExtent);
+			for(int i=range[0]; i<range[1]; i++)
 			{
-				if(this.anchorExtent.overlap(tokenSpan))
-				{
-					headIndices.add(i);
-				}
-				i++;
+				headIndices.add(i);
 			}
 		}
 	}
@@ -54,13 +50,10 @@ public class AceEventMention extends AceMention{
 		if(headIndices == null)
 		{
 			headIndices = new Vector<Integer>();
-			for(int i=0; i<tokenSpans.length; i++)
+			int[] range = Span.getOverlapRange(tokenSpans, this.anchorExtent);
+			for(int i=range[0]; i<range[1]; i++)
 			{
-				Span tokenSpan = tokenSpans[i];
-				if(this.anchorExtent.overlap(tokenSpan))
-				{
-					headIndices.add(i);
-				}
+				headIndices.add(i);
 			}
 			// if event trigger has more than one word, use simple rule to shrink it
 			if(headIndices.size() > 1)
@@ -36,14 +36,10 @@ public abstract class AceMention implements Comparable {
 		if(extentIndices == null)
 		{
 			extentIndices = new Vector<Integer>();
-			int i = 0;
-			for(Span tokenSpan : tokenSpans)
+			int[] range = Span.getOverlapRange(tokenSpans, this.extent);
+			for(int i=range[0]; i<range[1]; i++)
 			{
-				if(this.extent.overlap(tokenSpan))
-				{
-					extentIndices.add(i);
-				}
-				i++;
+				extentIndices.add(i);
 			}
 		}
 	}
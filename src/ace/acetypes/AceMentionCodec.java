@@ -0,0 +1,243 @@
+package ace.acetypes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import util.Span;
+
+/**
+ * binary form of the argument candidates (entity/value/timex mentions) of a sentence, with what the learning
+ * uses of them: ids, types, extents, heads, texts, the head/extent token indices, and their parents.
+ * After reading, the mentions of the same parent share one parent object, as the global features compare parents,
+ * the other mentions of the parent are not kept
+ */
+public class AceMentionCodec
+{
+	static final int EntityMention = 1;
+	static final int ValueMention = 2;
+	static final int TimexMention = 3;
+
+	/**
+	 * @param out
+	 * @param mentions only entity, value and timex mentions
+	 * @throws IOException
+	 */
+	static public void write(DataOutput out, List<? extends AceMention> mentions) throws IOException
+	{
+		out.writeInt(mentions.size());
+		for(AceMention mention : mentions)
+		{
+			if(mention instanceof AceEntityMention)
+			{
+				AceEntityMention entityMention = (AceEntityMention) mention;
+				out.writeByte(EntityMention);
+				writeString(out, entityMention.type);
+				writeSpan(out, entityMention.head);
+				writeSpan(out, entityMention.jetHead);
+				writeString(out, entityMention.headText);
+				writeString(out, entityMention.role);
+				AceEntity entity = entityMention.entity;
+				out.writeBoolean(entity != null);
+				if(entity != null)
+				{
+					writeString(out, entity.id);
+					writeString(out, entity.type);
+					writeString(out, entity.subtype);
+					writeString(out, entity.entClass);
+					out.writeBoolean(entity.generic);
+				}
+			}
+			else if(mention instanceof AceValueMention)
+			{
+				AceValue value = ((AceValueMention) mention).value;
+				out.writeByte(ValueMention);
+				out.writeBoolean(value != null);
+				if(value != null)
+				{
+					writeString(out, value.id);
+					writeString(out, value.type);
+					writeString(out, value.subtype);
+				}
+			}
+			else if(mention instanceof AceTimexMention)
+			{
+				AceTimex timex = ((AceTimexMention) mention).timex;
+				out.writeByte(TimexMention);
+				out.writeBoolean(timex != null);
+				if(timex != null)
+				{
+					writeString(out, timex.id);
+					writeString(out, timex.val);
+				}
+			}
+			else
+			{
+				throw new IOException("can't write " + mention.getClass().getName());
+			}
+			writeString(out, mention.id);
+			writeSpan(out, mention.extent);
+			writeSpan(out, mention.jetExtent);
+			writeString(out, mention.text);
+			writeIndices(out, mention.headIndices);
+			// for values and timexes, the head indices are the extent indices
+			out.writeBoolean(mention.extentIndices != null && mention.extentIndices == mention.headIndices);
+			if(mention.extentIndices == null || mention.extentIndices != mention.headIndices)
+			{
+				writeIndices(out, mention.extentIndices);
+			}
+		}
+	}
+
+	static public List<AceMention> read(DataInput in) throws IOException
+	{
+		int size = in.readInt();
+		List<AceMention> ret = new ArrayList<AceMention>(size);
+		Map<String, AceEventArgumentValue> parents = new HashMap<String, AceEventArgumentValue>();
+		for(int i=0; i<size; i++)
+		{
+			AceMention mention;
+			int kind = in.readByte();
+			if(kind == EntityMention)
+			{
+				AceEntityMention entityMention = new AceEntityMention();
+				entityMention.type = readString(in);
+				entityMention.head = readSpan(in);
+				entityMention.jetHead = readSpan(in);
+				entityMention.headText = readString(in);
+				entityMention.role = readString(in);
+				if(in.readBoolean())
+				{
+					String id = readString(in);
+					AceEntity entity = new AceEntity(id, readString(in), readString(in), false);
+					entity.entClass = readString(in);
+					entity.generic = in.readBoolean();
+					entityMention.entity = (AceEntity) getParent(parents, "entity", entity);
+				}
+				mention = entityMention;
+			}
+			else if(kind == ValueMention)
+			{
+				AceValueMention valueMention = new AceValueMention();
+				if(in.readBoolean())
+				{
+					String id = readString(in);
+					AceValue value = new AceValue(id, readString(in), readString(in));
+					valueMention.value = (AceValue) getParent(parents, "value", value);
+				}
+				mention = valueMention;
+			}
+			else if(kind == TimexMention)
+			{
+				AceTimexMention timexMention = new AceTimexMention();
+				if(in.readBoolean())
+				{
+					String id = readString(in);
+					AceTimex timex = new AceTimex(id, readString(in));
+					timexMention.timex = (AceTimex) getParent(parents, "timex", timex);
+				}
+				mention = timexMention;
+			}
+			else
+			{
+				throw new IOException("unknown mention kind " + kind);
+			}
+			mention.id = readString(in);
+			mention.extent = readSpan(in);
+			mention.jetExtent = readSpan(in);
+			mention.text = readString(in);
+			mention.headIndices = readIndices(in);
+			if(in.readBoolean())
+			{
+				mention.extentIndices = mention.headIndices;
+			}
+			else
+			{
+				mention.extentIndices = readIndices(in);
+			}
+			ret.add(mention);
+		}
+		return ret;
+	}
+
+	/**
+	 * the parent object that is already read with the same id, or the new one
+	 */
+	static private AceEventArgumentValue getParent(Map<String, AceEventArgumentValue> parents, String kind,
+			AceEventArgumentValue parent)
+	{
+		if(parent.id == null)
+		{
+			return parent;
+		}
+		String key = kind + "\t" + parent.id;
+		AceEventArgumentValue old = parents.get(key);
+		if(old != null)
+		{
+			return old;
+		}
+		parents.put(key, parent);
+		return parent;
+	}
+
+	static private void writeString(DataOutput out, String str) throws IOException
+	{
+		out.writeBoolean(str != null);
+		if(str != null)
+		{
+			out.writeUTF(str);
+		}
+	}
+
+	static private String readString(DataInput in) throws IOException
+	{
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	static private void writeSpan(DataOutput out, Span span) throws IOException
+	{
+		out.writeBoolean(span != null);
+		if(span != null)
+		{
+			out.writeInt(span.start());
+			out.writeInt(span.end());
+		}
+	}
+
+	static private Span readSpan(DataInput in) throws IOException
+	{
+		return in.readBoolean() ? new Span(in.readInt(), in.readInt()) : null;
+	}
+
+	static private void writeIndices(DataOutput out, Vector<Integer> indices) throws IOException
+	{
+		out.writeInt(indices == null ? -1 : indices.size());
+		if(indices != null)
+		{
+			for(Integer index : indices)
+			{
+				out.writeInt(index);
+			}
+		}
+	}
+
+	static private Vector<Integer> readIndices(DataInput in) throws IOException
+	{
+		int size = in.readInt();
+		if(size < 0)
+		{
+			return null;
+		}
+		Vector<Integer> indices = new Vector<Integer>(size);
+		for(int i=0; i<size; i++)
+		{
+			indices.add(in.readInt());
+		}
+		return indices;
+	}
+}
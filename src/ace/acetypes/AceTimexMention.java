@@ -28,6 +28,12 @@ import javax.xml.parsers.*;
 public class AceTimexMention extends AceMention {
 
 	AceTimex timex;
+
+	AceTimexMention()
+	{
+		; // default constructor, do noting
+	}
+
 	/**
 	 *  create a new Timex mention with the specified id and extent.
 	 */
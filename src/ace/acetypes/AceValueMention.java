@@ -29,6 +29,11 @@ public class AceValueMention extends AceMention {
 
 	AceValue value;
 
+	AceValueMention()
+	{
+		; // default constructor, do noting
+	}
+
 	/**
 	 *  create a new Value mention with the specified id and extent.
 	 */
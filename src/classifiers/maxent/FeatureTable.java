@@ -0,0 +1,712 @@
+package classifiers.maxent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import commons.DocumentCache;
+
+import cc.mallet.pipe.Pipe;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureVector;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import cc.mallet.types.Label;
+import cc.mallet.types.LabelAlphabet;
+
+/**
+ * the feature tables of the maxent classifiers, either in text, one row per line:
+ *   [name] [label] [feature:1 ...]
+ * or in binary (-DfeatureTable=binary), which is smaller and is read without regex:
+ *   magic, blocks of rows (e.g. one block per document), and a footer with the shared dictionary of names,
+ *   labels and features, and the offset/number of rows of each block. A row is the varint ids of its name,
+ *   its label and its features, with the feature values if they are not all 1.
+ *   The last 8 bytes are the offset of the footer.
+ *
+ * the trainers and decoders read both, the binary table is recognized by its magic.
+ * A table can also be made of blocks (e.g. the rows of each document in its own file, see newBlockWriter),
+ * they are appended in order by a BlockMerger
+ */
+public class FeatureTable
+{
+	static public final String FormatProperty = "featureTable";
+
+	static final int Magic = 0x46544231; // "FTB1"
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// an alphabet index that is not looked up yet, see toInstanceList
+	static final int NotLookedUp = -2;
+
+	/**
+	 * writes the rows of a table
+	 */
+	static public abstract class Writer
+	{
+		/**
+		 * start a new block (e.g. a document), the rows before it are in the previous block
+		 * @param name
+		 * @throws IOException
+		 */
+		public abstract void startBlock(String name) throws IOException;
+
+		/**
+		 * @param name
+		 * @param label
+		 * @param features
+		 * @param values null if all values are 1
+		 * @throws IOException
+		 */
+		public abstract void addRow(String name, String label, List<String> features, double[] values) throws IOException;
+
+		public void addRow(String name, String label, List<String> features) throws IOException
+		{
+			addRow(name, label, features, null);
+		}
+
+		public abstract void close() throws IOException;
+	}
+
+	/**
+	 * a writer in the format of -DfeatureTable=text|binary (default text)
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	static public Writer newWriter(File file) throws IOException
+	{
+		if(System.getProperty(FormatProperty, "text").equals("binary"))
+		{
+			return new BinaryWriter(file);
+		}
+		return new TextWriter(file);
+	}
+
+	/**
+	 * a writer of a block of a table in the format of -DfeatureTable=text|binary, the block is a table itself:
+	 * a text block is appended as it is, a binary block has its own dictionary, which is mapped to the
+	 * dictionary of the table when the block is appended (see BlockMerger)
+	 * @param block
+	 * @return
+	 * @throws IOException
+	 */
+	static public Writer newBlockWriter(File block) throws IOException
+	{
+		if(System.getProperty(FormatProperty, "text").equals("binary"))
+		{
+			return new BinaryWriter(block);
+		}
+		return new ChannelWriter(block);
+	}
+
+	/**
+	 * the text table, a block is not written
+	 */
+	static public class TextWriter extends Writer
+	{
+		PrintWriter writer;
+
+		public TextWriter(File file) throws FileNotFoundException
+		{
+			// the same charset as the binary table and ChannelWriter
+			writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8));
+		}
+
+		public void startBlock(String name)
+		{
+			;
+		}
+
+		public void addRow(String name, String label, List<String> features, double[] values)
+		{
+			writer.println(toTextRow(name, label, features, values));
+		}
+
+		public void close()
+		{
+			writer.close();
+		}
+	}
+
+	/**
+	 * a row of the text table, without the line separator
+	 */
+	static String toTextRow(String name, String label, List<String> features, double[] values)
+	{
+		StringBuilder row = new StringBuilder();
+		row.append(name);
+		row.append(" ");
+		row.append(label);
+		for(int i=0; i<features.size(); i++)
+		{
+			row.append(" ");
+			row.append(features.get(i));
+			row.append(":");
+			row.append(values == null ? "1" : String.valueOf(values[i]));
+		}
+		return row.toString();
+	}
+
+	/**
+	 * a text table (or a text block of a table) that is written through a buffer into a file channel
+	 */
+	static public class ChannelWriter extends Writer
+	{
+		FileChannel channel;
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+		public ChannelWriter(File file) throws FileNotFoundException
+		{
+			channel = new FileOutputStream(file).getChannel();
+		}
+
+		public void startBlock(String name)
+		{
+			;
+		}
+
+		public void addRow(String name, String label, List<String> features, double[] values) throws IOException
+		{
+			byte[] row = (toTextRow(name, label, features, values) + "\n").getBytes(UTF8);
+			if(row.length > buffer.remaining())
+			{
+				flush();
+			}
+			if(row.length > buffer.capacity())
+			{
+				ByteBuffer large = ByteBuffer.wrap(row);
+				while(large.hasRemaining())
+				{
+					channel.write(large);
+				}
+				return;
+			}
+			buffer.put(row);
+		}
+
+		void flush() throws IOException
+		{
+			buffer.flip();
+			while(buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		public void close() throws IOException
+		{
+			flush();
+			channel.close();
+		}
+	}
+
+	/**
+	 * appends the blocks to a table in the order they are given. In the text format the bytes of the blocks
+	 * are copied by the file channels (FileChannel.transferTo), in the binary format each block is a block of
+	 * the binary table: the rows of a binary block are copied with their ids mapped to the dictionary of the table,
+	 * a text block is parsed
+	 */
+	static public class BlockMerger
+	{
+		FileChannel channel = null;
+		Writer writer = null;
+
+		public BlockMerger(File table) throws IOException
+		{
+			if(System.getProperty(FormatProperty, "text").equals("binary"))
+			{
+				writer = new BinaryWriter(table);
+			}
+			else
+			{
+				channel = new FileOutputStream(table).getChannel();
+			}
+		}
+
+		/**
+		 * @param name the name of the block, e.g. the document
+		 * @param block a text table, or a binary table in the binary format
+		 * @throws IOException
+		 */
+		public void append(String name, File block) throws IOException
+		{
+			if(writer != null && isBinary(block))
+			{
+				((BinaryWriter) writer).appendTable(name, new FeatureTable(block));
+				return;
+			}
+			if(writer != null)
+			{
+				writer.startBlock(name);
+				BufferedReader reader = newTextReader(block);
+				try
+				{
+					String line;
+					while((line = reader.readLine()) != null)
+					{
+						addTextRow(writer, line);
+					}
+				}
+				finally
+				{
+					reader.close();
+				}
+				return;
+			}
+			FileChannel in = new FileInputStream(block).getChannel();
+			try
+			{
+				long size = in.size();
+				long position = 0;
+				while(position < size)
+				{
+					position += in.transferTo(position, size - position, channel);
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+
+		public void close() throws IOException
+		{
+			if(writer != null)
+			{
+				writer.close();
+			}
+			else
+			{
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * counts the bytes that are written, for the offsets of the blocks
+	 */
+	static class CountingOutputStream extends FilterOutputStream
+	{
+		long count = 0;
+
+		CountingOutputStream(OutputStream out)
+		{
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	static public class BinaryWriter extends Writer
+	{
+		CountingOutputStream counter;
+		DataOutputStream out;
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<String> strings = new ArrayList<String>();
+		List<String> blockNames = new ArrayList<String>();
+		List<Long> blockOffsets = new ArrayList<Long>();
+		List<Integer> blockRows = new ArrayList<Integer>();
+
+		public BinaryWriter(File file) throws IOException
+		{
+			counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			out = new DataOutputStream(counter);
+			out.writeInt(Magic);
+		}
+
+		int id(String str)
+		{
+			Integer id = ids.get(str);
+			if(id == null)
+			{
+				id = strings.size();
+				strings.add(str);
+				ids.put(str, id);
+			}
+			return id;
+		}
+
+		public void startBlock(String name) throws IOException
+		{
+			out.flush();
+			blockNames.add(name);
+			blockOffsets.add(counter.count);
+			blockRows.add(0);
+		}
+
+		public void addRow(String name, String label, List<String> features, double[] values) throws IOException
+		{
+			if(blockNames.isEmpty())
+			{
+				startBlock("");
+			}
+			blockRows.set(blockRows.size() - 1, blockRows.get(blockRows.size() - 1) + 1);
+			DocumentCache.writeVarint(out, id(name));
+			DocumentCache.writeVarint(out, id(label));
+			DocumentCache.writeVarint(out, features.size());
+			out.writeBoolean(values != null);
+			for(int i=0; i<features.size(); i++)
+			{
+				DocumentCache.writeVarint(out, id(features.get(i)));
+				if(values != null)
+				{
+					out.writeDouble(values[i]);
+				}
+			}
+		}
+
+		int id(String[] strings, int[] map, int id)
+		{
+			if(map[id] < 0)
+			{
+				map[id] = id(strings[id]);
+			}
+			return map[id];
+		}
+
+		/**
+		 * append the rows of all blocks of a binary table as one block, the ids of its dictionary are
+		 * mapped to the ids of this table (in the order they appear, as if the rows were added one by one)
+		 * @param name
+		 * @param table
+		 * @throws IOException
+		 */
+		public void appendTable(String name, FeatureTable table) throws IOException
+		{
+			startBlock(name);
+			int[] map = new int[table.strings.length];
+			Arrays.fill(map, -1);
+			int rows = 0;
+			RandomAccessFile raf = new RandomAccessFile(table.file, "r");
+			try
+			{
+				for(int b=0; b<table.blockNames.length; b++)
+				{
+					raf.seek(table.blockOffsets[b]);
+					DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel()), 1 << 16));
+					for(int r=0; r<table.blockRows[b]; r++)
+					{
+						// name, label, number of features, if there are values, then the features (and values)
+						DocumentCache.writeVarint(out, id(table.strings, map, DocumentCache.readVarint(in)));
+						DocumentCache.writeVarint(out, id(table.strings, map, DocumentCache.readVarint(in)));
+						int numFeatures = DocumentCache.readVarint(in);
+						DocumentCache.writeVarint(out, numFeatures);
+						boolean hasValues = in.readBoolean();
+						out.writeBoolean(hasValues);
+						for(int i=0; i<numFeatures; i++)
+						{
+							DocumentCache.writeVarint(out, id(table.strings, map, DocumentCache.readVarint(in)));
+							if(hasValues)
+							{
+								out.writeDouble(in.readDouble());
+							}
+						}
+					}
+					rows += table.blockRows[b];
+				}
+			}
+			finally
+			{
+				raf.close();
+			}
+			blockRows.set(blockRows.size() - 1, rows);
+		}
+
+		public void close() throws IOException
+		{
+			out.flush();
+			long footer = counter.count;
+			DocumentCache.writeVarint(out, strings.size());
+			for(String str : strings)
+			{
+				DocumentCache.writeString(out, str);
+			}
+			DocumentCache.writeVarint(out, blockNames.size());
+			for(int b=0; b<blockNames.size(); b++)
+			{
+				DocumentCache.writeString(out, blockNames.get(b));
+				out.writeLong(blockOffsets.get(b));
+				DocumentCache.writeVarint(out, blockRows.get(b));
+			}
+			out.writeLong(footer);
+			out.close();
+		}
+	}
+
+	/**
+	 * if the file is a binary table
+	 * @param file
+	 * @return
+	 */
+	static public boolean isBinary(File file)
+	{
+		if(!file.isFile() || file.length() < 12)
+		{
+			return false;
+		}
+		try
+		{
+			DataInputStream in = new DataInputStream(new FileInputStream(file));
+			try
+			{
+				return in.readInt() == Magic;
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	protected File file;
+	protected String[] strings;
+	protected String[] blockNames;
+	protected long[] blockOffsets;
+	protected int[] blockRows;
+
+	/**
+	 * open a binary table, the dictionary and the blocks are read
+	 * @param file
+	 * @throws IOException
+	 */
+	public FeatureTable(File file) throws IOException
+	{
+		this.file = file;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			if(raf.readInt() != Magic)
+			{
+				throw new IOException(file + " is not a binary feature table");
+			}
+			raf.seek(raf.length() - 8);
+			raf.seek(raf.readLong());
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel())));
+			strings = new String[DocumentCache.readVarint(in)];
+			for(int i=0; i<strings.length; i++)
+			{
+				strings[i] = DocumentCache.readString(in);
+			}
+			int numBlocks = DocumentCache.readVarint(in);
+			blockNames = new String[numBlocks];
+			blockOffsets = new long[numBlocks];
+			blockRows = new int[numBlocks];
+			for(int b=0; b<numBlocks; b++)
+			{
+				blockNames[b] = DocumentCache.readString(in);
+				blockOffsets[b] = in.readLong();
+				blockRows[b] = DocumentCache.readVarint(in);
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	public int numBlocks()
+	{
+		return blockNames.length;
+	}
+
+	public String getBlockName(int b)
+	{
+		return blockNames[b];
+	}
+
+	public int numRows()
+	{
+		int rows = 0;
+		for(int n : blockRows)
+		{
+			rows += n;
+		}
+		return rows;
+	}
+
+	/**
+	 * add the rows of the table to an instance list, as the Csv2FeatureVector/Target2Label pipe would do
+	 * (the features and labels are added to the alphabets of the pipe in the order they appear),
+	 * but the rows aren't passed through the pipe. A row without features is skipped, as the CsvIterator
+	 * regex (\w+)\s+(\S+)\s+(.*) doesn't match its text row
+	 * @param pipe the pipe of the instance list, e.g. the instance pipe of a trained classifier
+	 * @param blocks the names of the blocks to read, null for all
+	 * @return
+	 * @throws IOException
+	 */
+	public InstanceList toInstanceList(Pipe pipe, Set<String> blocks) throws IOException
+	{
+		InstanceList instances = new InstanceList(pipe);
+		Alphabet dataAlphabet = pipe.getDataAlphabet();
+		LabelAlphabet labelAlphabet = (LabelAlphabet) pipe.getTargetAlphabet();
+		// dictionary id --> alphabet index, -1 if it's not in the alphabet (e.g. it's frozen), NotLookedUp if it's not looked up yet
+		int[] indices = new int[strings.length];
+		Arrays.fill(indices, NotLookedUp);
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			for(int b=0; b<blockNames.length; b++)
+			{
+				if(blocks != null && !blocks.contains(blockNames[b]))
+				{
+					continue;
+				}
+				raf.seek(blockOffsets[b]);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel()), 1 << 16));
+				for(int r=0; r<blockRows[b]; r++)
+				{
+					String name = strings[DocumentCache.readVarint(in)];
+					String target = strings[DocumentCache.readVarint(in)];
+					int[] features = new int[DocumentCache.readVarint(in)];
+					double[] values = new double[features.length];
+					boolean hasValues = in.readBoolean();
+					if(features.length == 0)
+					{
+						continue;
+					}
+					Label label = labelAlphabet.lookupLabel(target, true);
+					// the features that are not in the alphabet are skipped
+					int known = 0;
+					for(int i=0; i<features.length; i++)
+					{
+						int id = DocumentCache.readVarint(in);
+						if(indices[id] == NotLookedUp)
+						{
+							indices[id] = dataAlphabet.lookupIndex(strings[id], true);
+						}
+						double value = hasValues ? in.readDouble() : 1.0;
+						if(indices[id] >= 0)
+						{
+							features[known] = indices[id];
+							values[known++] = value;
+						}
+					}
+					if(known < features.length)
+					{
+						features = Arrays.copyOf(features, known);
+						values = Arrays.copyOf(values, known);
+					}
+					instances.add(new Instance(new FeatureVector(dataAlphabet, features, values), label, name, null));
+				}
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+		return instances;
+	}
+
+	/**
+	 * convert a text table to a binary one, all rows are in one block
+	 * @param args
+	 * @throws IOException
+	 */
+	static public void main(String[] args) throws IOException
+	{
+		if(args.length < 2)
+		{
+			System.out.println("Usage:");
+			System.out.println("args[0] : text feature table");
+			System.out.println("args[1] : binary feature table");
+			System.exit(-1);
+		}
+		BufferedReader reader = newTextReader(new File(args[0]));
+		Writer writer = new BinaryWriter(new File(args[1]));
+		String line;
+		while((line = reader.readLine()) != null)
+		{
+			addTextRow(writer, line);
+		}
+		reader.close();
+		writer.close();
+	}
+
+	/**
+	 * a reader of a text table, which is written in UTF-8 as the binary one
+	 * @param file
+	 * @return
+	 * @throws FileNotFoundException
+	 */
+	static public BufferedReader newTextReader(File file) throws FileNotFoundException
+	{
+		return new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+	}
+
+	/**
+	 * parse a row of a text table, and add it to a writer
+	 * @param writer
+	 * @param line
+	 * @throws IOException
+	 */
+	static public void addTextRow(Writer writer, String line) throws IOException
+	{
+		String[] cols = line.trim().split("\\s+");
+		if(cols.length < 2)
+		{
+			return;
+		}
+		List<String> features = new ArrayList<String>();
+		double[] values = new double[cols.length - 2];
+		boolean allOnes = true;
+		for(int i=2; i<cols.length; i++)
+		{
+			// as Csv2FeatureVector: feature:value, or a feature with value 1
+			int index = cols[i].lastIndexOf(':');
+			if(index <= 0 || index == cols[i].length() - 1)
+			{
+				features.add(cols[i]);
+				values[i - 2] = 1.0;
+			}
+			else
+			{
+				features.add(cols[i].substring(0, index));
+				values[i - 2] = Double.parseDouble(cols[i].substring(index + 1));
+			}
+			allOnes &= values[i - 2] == 1.0;
+		}
+		writer.addRow(cols[0], cols[1], features, allOnes ? null : values);
+	}
+}
@@ -4,19 +4,31 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import cc.mallet.classify.Classifier;
+import cc.mallet.classify.MaxEnt;
 import cc.mallet.pipe.iterator.CsvIterator;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureSelection;
 import cc.mallet.types.Instance;
 import cc.mallet.types.InstanceList;
 import cc.mallet.types.Labeling;
 
+/**
+ * decode by a trained Mallet classifier
+ * 
+ * for a MaxEnt model, the features are scored directly against its parameters: a feature String is looked up
+ * in the data alphabet (unknown features are ignored, and the alphabet never grows), and the score of a label is
+ * the weight of its default feature plus the weights of the features, as MaxEnt.getClassificationScores does,
+ * without building an Instance through the pipe. It's thread-safe.
+ * Other classifiers are still decoded through the pipe
+ */
 public class MaxEntDecoder 
 {
 	// the model
@@ -24,6 +36,16 @@ public class MaxEntDecoder
 	// the name of this classifier
 	String label;
 	
+	// the parameters of the MaxEnt model, null if it's another classifier
+	double[] parameters;
+	// the weights of a label are parameters[label * stride, (label + 1) * stride)
+	int stride;
+	int defaultFeatureIndex;
+	FeatureSelection featureSelection;
+	FeatureSelection[] perClassFeatureSelection;
+	Alphabet dataAlphabet;
+	String[] labels;
+	
 	public MaxEntDecoder(File modelFile, String name) throws IOException
 	{
 		// read model
@@ -33,6 +55,10 @@ public class MaxEntDecoder
 			classifier = (Classifier) oos.readObject();
 			oos.close();
 		    this.label = name;
+		    if(classifier instanceof MaxEnt)
+		    {
+		    	initParameters((MaxEnt) classifier);
+		    }
 		} 
 	    catch (ClassNotFoundException e)
 		{
@@ -40,6 +66,181 @@ public class MaxEntDecoder
 		}
 	}
 	
+	protected void initParameters(MaxEnt maxent)
+	{
+		dataAlphabet = maxent.getAlphabet();
+		labels = new String[maxent.getLabelAlphabet().size()];
+		for(int i=0; i<labels.length; i++)
+		{
+			labels[i] = maxent.getLabelAlphabet().lookupLabel(i).toString();
+		}
+		parameters = maxent.getParameters();
+		// it's the size of the data alphabet (+ 1 for the default feature) when the model was trained
+		stride = parameters.length / labels.length;
+		defaultFeatureIndex = maxent.getDefaultFeatureIndex();
+		featureSelection = maxent.getFeatureSelection();
+		perClassFeatureSelection = maxent.getPerClassFeatureSelection();
+	}
+	
+	/**
+	 * the labels of the model, in the order of the scores
+	 * @return
+	 */
+	public String[] getLabels()
+	{
+		return labels;
+	}
+	
+	/**
+	 * the ids of features in the data alphabet, the unknown features are -1
+	 * @param features
+	 * @return
+	 */
+	public int[] getFeatureIds(List<String> features)
+	{
+		int[] ids = new int[features.size()];
+		for(int i=0; i<ids.length; i++)
+		{
+			ids[i] = getFeatureId(features.get(i));
+		}
+		return ids;
+	}
+	
+	public int getFeatureId(String feature)
+	{
+		int id = dataAlphabet.lookupIndex(feature, false);
+		// a feature that is added to the alphabet after training has no weights
+		return id < defaultFeatureIndex ? id : -1;
+	}
+	
+	/**
+	 * the probability of each label (in the order of getLabels()) given the features
+	 * @param featureIds ids of the features in the data alphabet, -1 is ignored
+	 * @param values the value of each feature, null if all are 1
+	 * @param scores the array to fill in, a new one if null
+	 * @return
+	 */
+	public double[] score(int[] featureIds, double[] values, double[] scores)
+	{
+		if(scores == null)
+		{
+			scores = new double[labels.length];
+		}
+		double max = Double.NEGATIVE_INFINITY;
+		for(int li=0; li<labels.length; li++)
+		{
+			int offset = li * stride;
+			FeatureSelection selection = perClassFeatureSelection == null ? featureSelection : perClassFeatureSelection[li];
+			double score = parameters[offset + defaultFeatureIndex];
+			for(int i=0; i<featureIds.length; i++)
+			{
+				int id = featureIds[i];
+				if(id >= 0 && (selection == null || selection.contains(id)))
+				{
+					score += parameters[offset + id] * (values == null ? 1.0 : values[i]);
+				}
+			}
+			scores[li] = score;
+			max = Math.max(max, score);
+		}
+		// normalize, as MaxEnt.getClassificationScores
+		double sum = 0;
+		for(int li=0; li<labels.length; li++)
+		{
+			scores[li] = Math.exp(scores[li] - max);
+			sum += scores[li];
+		}
+		for(int li=0; li<labels.length; li++)
+		{
+			scores[li] /= sum;
+		}
+		return scores;
+	}
+	
+	/**
+	 * the probability of each label (in the order of getLabels()) given the features, each with value 1
+	 * @param features
+	 * @return
+	 */
+	public double[] score(List<String> features)
+	{
+		return score(getFeatureIds(features), null, null);
+	}
+	
+	/**
+	 * the best label given the features, each feature String is a whole feature with value 1
+	 * @param name the name of the row, e.g. trigger or arg, only used by the pipe of other classifiers
+	 * @param defaultLabel the label of the row for the pipe, e.g. O or NON, it should be a label of the model
+	 * @param features
+	 * @return
+	 */
+	public String decode(String name, String defaultLabel, List<String> features)
+	{
+		if(parameters == null)
+		{
+			return decodeOnFeatureVector(toFeatureVector(name, defaultLabel, features));
+		}
+		return labels[getBestIndex(score(getFeatureIds(features), null, null))];
+	}
+	
+	/**
+	 * the best labels of a batch of candidates, e.g. all tokens of a sentence, or all arguments of a trigger,
+	 * they share one array of scores
+	 * @param name the name of the rows, as decode()
+	 * @param defaultLabel the label of the rows, as decode()
+	 * @param candidates the features of each candidate
+	 * @return
+	 */
+	public String[] decodeBatch(String name, String defaultLabel, List<List<String>> candidates)
+	{
+		String[] ret = new String[candidates.size()];
+		if(parameters == null)
+		{
+			for(int i=0; i<ret.length; i++)
+			{
+				ret[i] = decodeOnFeatureVector(toFeatureVector(name, defaultLabel, candidates.get(i)));
+			}
+			return ret;
+		}
+		double[] scores = new double[labels.length];
+		for(int i=0; i<ret.length; i++)
+		{
+			score(getFeatureIds(candidates.get(i)), null, scores);
+			ret[i] = labels[getBestIndex(scores)];
+		}
+		return ret;
+	}
+	
+	/**
+	 * the first label with the max score, as Labeling.getBestLabel
+	 */
+	static int getBestIndex(double[] scores)
+	{
+		int best = 0;
+		for(int li=1; li<scores.length; li++)
+		{
+			if(scores[li] > scores[best])
+			{
+				best = li;
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * the line of a feature table for the pipe: [name] [label] [feature:1 ...]
+	 */
+	static String toFeatureVector(String name, String label, List<String> features)
+	{
+		StringBuilder featureVector = new StringBuilder(name + " " + label);
+		for(String feature : features)
+		{
+			featureVector.append(" ");
+			featureVector.append(feature + ":1");
+		}
+		return featureVector.toString();
+	}
+	
 	/**
 	 * given a feature vector, in the form of:
 	 * [data ...] should like: feature:value
@@ -49,6 +250,10 @@ public class MaxEntDecoder
 	 */
 	public String decodeOnFeatureVector(String featureVector) 
 	{
+		if(parameters != null)
+		{
+			return decodeDirectly(featureVector);
+		}
 		InputStreamReader inputReader = new InputStreamReader(new ByteArrayInputStream(featureVector.getBytes()));
         CsvIterator reader =
             new CsvIterator(inputReader,
@@ -66,15 +271,64 @@ public class MaxEntDecoder
         return best;
     }
 	
-	public void decodeOnFeatureTable(File featureTable) throws FileNotFoundException 
+	/**
+	 * decode a feature vector line without the pipe, the [data ...] is parsed as Csv2FeatureVector does:
+	 * a token is feature:value, or a feature with value 1 if it has no value
+	 * @param featureVector
+	 * @return
+	 */
+	protected String decodeDirectly(String featureVector)
+	{
+		String[] tokens = featureVector.trim().split("\\s+", 3);
+		if(tokens.length < 3)
+		{
+			return labels[getBestIndex(score(new int[0], null, null))];
+		}
+		String[] data = tokens[2].trim().split("\\s+");
+		int[] ids = new int[data.length];
+		double[] values = new double[data.length];
+		for(int i=0; i<data.length; i++)
+		{
+			int index = data[i].lastIndexOf(':');
+			if(index <= 0 || index == data[i].length() - 1)
+			{
+				ids[i] = getFeatureId(data[i]);
+				values[i] = 1.0;
+			}
+			else
+			{
+				ids[i] = getFeatureId(data[i].substring(0, index));
+				values[i] = Double.parseDouble(data[i].substring(index + 1));
+			}
+		}
+		return labels[getBestIndex(score(ids, values, null))];
+	}
+	
+	/**
+	 * read a text or binary feature table through the instance pipe of the classifier
+	 * @param featureTable
+	 * @return
+	 * @throws IOException
+	 */
+	public InstanceList readFeatureTable(File featureTable) throws IOException
 	{
+		if(FeatureTable.isBinary(featureTable))
+		{
+			return new FeatureTable(featureTable).toInstanceList(classifier.getInstancePipe(), null);
+		}
         CsvIterator reader =
-            new CsvIterator(new FileReader(featureTable),
+            new CsvIterator(FeatureTable.newTextReader(featureTable),
                             "(\\w+)\\s+(\\S+)\\s+(.*)",
                             3, 2, 1);  // (data, label, name) field indices               
 
         InstanceList instances = new InstanceList(classifier.getInstancePipe());
         instances.addThruPipe(reader);
+        return instances;
+	}
+	
+	public void decodeOnFeatureTable(File featureTable) throws IOException 
+	{
+        InstanceList instances = readFeatureTable(featureTable);
 
         // get the predicted labeling                                           
         for(int i=0; i<instances.size(); i++) 
@@ -3,10 +3,10 @@ package classifiers.maxent;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.PrintStream;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -18,7 +18,6 @@ import java.util.Map.Entry;
 import cc.mallet.classify.Classifier;
 import cc.mallet.classify.ClassifierTrainer;
 import cc.mallet.classify.MaxEnt;
-import cc.mallet.classify.MaxEntTrainer;
 import cc.mallet.pipe.Csv2FeatureVector;
 import cc.mallet.pipe.Pipe;
 import cc.mallet.pipe.SerialPipes;
@@ -76,14 +75,22 @@ public class MaxentTrainer
 		pipe.setTargetProcessing(true);
 		
 		// read data
-		InstanceList trainingInstances = new InstanceList(pipe);
-		FileReader training_file_reader = new FileReader(trainingFilename);
-		CsvIterator reader =
-	            new CsvIterator(training_file_reader,
-	                            "(\\w+)\\s+(\\S+)\\s+(.*)",
-	                            3, 2, 1);  // (data, label, name) field indices    
-		trainingInstances.addThruPipe(reader);
-		training_file_reader.close();
+		InstanceList trainingInstances;
+		if(FeatureTable.isBinary(trainingFilename))
+		{
+			trainingInstances = new FeatureTable(trainingFilename).toInstanceList(pipe, null);
+		}
+		else
+		{
+			trainingInstances = new InstanceList(pipe);
+			Reader training_file_reader = FeatureTable.newTextReader(trainingFilename);
+			CsvIterator reader =
+		            new CsvIterator(training_file_reader,
+		                            "(\\w+)\\s+(\\S+)\\s+(.*)",
+		                            3, 2, 1);  // (data, label, name) field indices    
+			trainingInstances.addThruPipe(reader);
+			training_file_reader.close();
+		}
 		
 		// prune by info gain
 		// pruneByInfoGain(trainingInstances);
@@ -94,7 +101,8 @@ public class MaxentTrainer
 		System.setErr(System.out);
 		
 		// train a Maxent classifier (could be other classifiers)
-		ClassifierTrainer trainer = new MaxEntTrainer(Gaussian_Variance);
+		// the value/gradient of each step is computed on -Dmaxent.threads threads, the model is the same as MaxEntTrainer's
+		ClassifierTrainer trainer = new ParallelMaxEntTrainer(Gaussian_Variance);
 		Classifier classifier = trainer.train(trainingInstances);
 		
 		System.setErr(temp);
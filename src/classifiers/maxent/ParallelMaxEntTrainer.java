@@ -0,0 +1,372 @@
+package classifiers.maxent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cc.mallet.classify.ClassifierTrainer;
+import cc.mallet.classify.MaxEnt;
+import cc.mallet.optimize.InvalidOptimizableException;
+import cc.mallet.optimize.LimitedMemoryBFGS;
+import cc.mallet.optimize.Optimizable;
+import cc.mallet.optimize.OptimizationException;
+import cc.mallet.types.FeatureSelection;
+import cc.mallet.types.FeatureVector;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import cc.mallet.types.Labeling;
+import cc.mallet.types.MatrixOps;
+
+/**
+ * trains the same MaxEnt as Mallet's MaxEntTrainer with a gaussian prior (L-BFGS on the label likelihood),
+ * but the value and gradient of each L-BFGS step are computed on several threads (-Dmaxent.threads=N):
+ * the label distributions are computed on shards of the instances, then the expectations are
+ * reduced into the gradient, one label row per task. The sums are done in the order of the instances,
+ * so the model is the same as the one of MaxEntTrainer
+ */
+public class ParallelMaxEntTrainer extends ClassifierTrainer<MaxEnt>
+{
+	static public final String ThreadsProperty = "maxent.threads";
+
+	// the number of shards of the instances per thread, for the balance of the threads
+	static final int ShardsPerThread = 4;
+
+	double gaussianPriorVariance;
+	int numThreads;
+	Likelihood optimizable = null;
+
+	public ParallelMaxEntTrainer(double gaussianPriorVariance)
+	{
+		this.gaussianPriorVariance = gaussianPriorVariance;
+		this.numThreads = Integer.getInteger(ThreadsProperty, Runtime.getRuntime().availableProcessors());
+	}
+
+	public MaxEnt getClassifier()
+	{
+		return optimizable == null ? null : optimizable.theClassifier;
+	}
+
+	/**
+	 * as MaxEntTrainer.train, optimize until converged, then once more with a new L-BFGS,
+	 * which is not restricted by the gradient history
+	 */
+	public MaxEnt train(InstanceList trainingSet)
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory()
+		{
+			AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "maxent-" + count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try
+		{
+			optimizable = new Likelihood(trainingSet, executor);
+			System.out.println("maxent: " + trainingSet.size() + " instances, " + optimizable.getNumParameters()
+					+ " parameters, " + numThreads + " threads");
+
+			LimitedMemoryBFGS optimizer = new LimitedMemoryBFGS(optimizable);
+			boolean finished = false;
+			while(!finished)
+			{
+				finished = optimize(optimizer, 1);
+			}
+			optimizer = new LimitedMemoryBFGS(optimizable);
+			optimize(optimizer, Integer.MAX_VALUE);
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+		return optimizable.theClassifier;
+	}
+
+	/**
+	 * @return true if converged, or the optimizer gave up
+	 */
+	static boolean optimize(LimitedMemoryBFGS optimizer, int iterations)
+	{
+		try
+		{
+			return optimizer.optimize(iterations);
+		}
+		catch(InvalidOptimizableException e)
+		{
+			e.printStackTrace();
+			System.out.println("Catching InvalidOptimizableException! saying converged.");
+			return true;
+		}
+		catch(OptimizationException e)
+		{
+			e.printStackTrace();
+			System.out.println("Catching OptimizationException; saying converged.");
+			return true;
+		}
+	}
+
+	/**
+	 * the label likelihood of MaxEntOptimizableByLabelLikelihood with a gaussian prior
+	 */
+	class Likelihood implements Optimizable.ByGradientValue
+	{
+		MaxEnt theClassifier;
+		double[] parameters;
+		double[] constraints;
+		double[] cachedGradient;
+		double cachedValue;
+		boolean cachedValueStale = true;
+		boolean cachedGradientStale = true;
+		int numLabels;
+		int numFeatures;
+		int defaultFeatureIndex;
+		FeatureSelection featureSelection;
+		FeatureSelection[] perLabelFeatureSelection;
+
+		// the instances that have a label
+		Instance[] instances;
+		FeatureVector[] vectors;
+		int[] labels;
+		double[] weights;
+		// the label distribution of each instance, and its -log likelihood
+		double[] scores;
+		double[] values;
+
+		ExecutorService executor;
+
+		Likelihood(InstanceList trainingList, ExecutorService executor)
+		{
+			this.executor = executor;
+			trainingList.getTargetAlphabet().stopGrowth();
+			numLabels = trainingList.getTargetAlphabet().size();
+			numFeatures = trainingList.getDataAlphabet().size() + 1;
+			defaultFeatureIndex = numFeatures - 1;
+			parameters = new double[numLabels * numFeatures];
+			constraints = new double[numLabels * numFeatures];
+			cachedGradient = new double[numLabels * numFeatures];
+			featureSelection = trainingList.getFeatureSelection();
+			perLabelFeatureSelection = trainingList.getPerLabelFeatureSelection();
+			if(featureSelection != null)
+			{
+				featureSelection.add(defaultFeatureIndex);
+			}
+			if(perLabelFeatureSelection != null)
+			{
+				for(FeatureSelection selection : perLabelFeatureSelection)
+				{
+					selection.add(defaultFeatureIndex);
+				}
+			}
+			theClassifier = new MaxEnt(trainingList.getPipe(), parameters, featureSelection, perLabelFeatureSelection);
+
+			List<Instance> labeled = new ArrayList<Instance>();
+			for(Instance instance : trainingList)
+			{
+				if(instance.getLabeling() != null)
+				{
+					labeled.add(instance);
+				}
+			}
+			instances = labeled.toArray(new Instance[labeled.size()]);
+			vectors = new FeatureVector[instances.length];
+			labels = new int[instances.length];
+			weights = new double[instances.length];
+			for(int i=0; i<instances.length; i++)
+			{
+				Instance instance = instances[i];
+				Labeling labeling = instance.getLabeling();
+				vectors[i] = (FeatureVector) instance.getData();
+				labels[i] = labeling.getBestIndex();
+				weights[i] = trainingList.getInstanceWeight(instance);
+				MatrixOps.rowPlusEquals(constraints, numFeatures, labels[i], vectors[i], weights[i]);
+				constraints[labels[i] * numFeatures + defaultFeatureIndex] += 1.0 * weights[i];
+			}
+			scores = new double[vectors.length * numLabels];
+			values = new double[vectors.length];
+		}
+
+		public int getNumParameters()
+		{
+			return parameters.length;
+		}
+
+		public void getParameters(double[] buffer)
+		{
+			System.arraycopy(parameters, 0, buffer, 0, parameters.length);
+		}
+
+		public double getParameter(int index)
+		{
+			return parameters[index];
+		}
+
+		public void setParameters(double[] buffer)
+		{
+			cachedValueStale = cachedGradientStale = true;
+			// the classifier shares the array of the parameters
+			System.arraycopy(buffer, 0, parameters, 0, buffer.length);
+		}
+
+		public void setParameter(int index, double value)
+		{
+			cachedValueStale = cachedGradientStale = true;
+			parameters[index] = value;
+		}
+
+		/**
+		 * run the tasks on the threads, and wait for all of them
+		 */
+		void invokeAll(List<Callable<Object>> tasks)
+		{
+			try
+			{
+				List<Future<Object>> futures = executor.invokeAll(tasks);
+				for(Future<Object> future : futures)
+				{
+					future.get();
+				}
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+			catch(ExecutionException e)
+			{
+				throw new RuntimeException(e.getCause());
+			}
+		}
+
+		/**
+		 * the label distributions of the instances, a task per shard of the instances
+		 */
+		void computeScores()
+		{
+			int numShards = Math.max(1, Math.min(vectors.length, numThreads * ShardsPerThread));
+			List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+			for(int shard=0; shard<numShards; shard++)
+			{
+				final int from = (int) ((long) vectors.length * shard / numShards);
+				final int to = (int) ((long) vectors.length * (shard + 1) / numShards);
+				tasks.add(new Callable<Object>()
+				{
+					public Object call()
+					{
+						double[] buffer = new double[numLabels];
+						for(int i=from; i<to; i++)
+						{
+							theClassifier.getClassificationScores(instances[i], buffer);
+							System.arraycopy(buffer, 0, scores, i * numLabels, numLabels);
+							values[i] = - (weights[i] * Math.log(buffer[labels[i]]));
+						}
+						return null;
+					}
+				});
+			}
+			invokeAll(tasks);
+		}
+
+		/**
+		 * add the -expectations of the features of the instances [0, numInstances) into the gradient, a task per label
+		 */
+		void reduceExpectations(final int numInstances)
+		{
+			List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+			for(int li=0; li<numLabels; li++)
+			{
+				final int label = li;
+				tasks.add(new Callable<Object>()
+				{
+					public Object call()
+					{
+						for(int i=0; i<numInstances; i++)
+						{
+							double score = scores[i * numLabels + label];
+							if(score == 0)
+							{
+								continue;
+							}
+							MatrixOps.rowPlusEquals(cachedGradient, numFeatures, label, vectors[i], -weights[i] * score);
+							cachedGradient[numFeatures * label + defaultFeatureIndex] += (-weights[i] * score);
+						}
+						return null;
+					}
+				});
+			}
+			invokeAll(tasks);
+		}
+
+		public double getValue()
+		{
+			if(cachedValueStale)
+			{
+				cachedValue = 0;
+				cachedGradientStale = true;
+				MatrixOps.setAll(cachedGradient, 0.0);
+				computeScores();
+				for(int i=0; i<values.length; i++)
+				{
+					if(Double.isInfinite(values[i]))
+					{
+						System.out.println("Instance " + i + " has infinite value; skipping value and gradient");
+						// as Mallet, the gradient keeps the expectations of the instances before it
+						reduceExpectations(i);
+						cachedValue -= values[i];
+						cachedValueStale = false;
+						return -values[i];
+					}
+					cachedValue += values[i];
+				}
+				reduceExpectations(values.length);
+
+				double prior = 0;
+				for(int li=0; li<numLabels; li++)
+				{
+					for(int fi=0; fi<numFeatures; fi++)
+					{
+						double param = parameters[li * numFeatures + fi];
+						prior += param * param / (2.0 * gaussianPriorVariance);
+					}
+				}
+				double labelProb = cachedValue;
+				cachedValue += prior;
+				cachedValue *= -1.0; // maximize
+				cachedValueStale = false;
+				System.out.println("Value (labelProb=" + labelProb + " prior=" + prior + ") loglikelihood = " + cachedValue);
+			}
+			return cachedValue;
+		}
+
+		public void getValueGradient(double[] buffer)
+		{
+			if(cachedGradientStale)
+			{
+				if(cachedValueStale)
+				{
+					getValue();
+				}
+				MatrixOps.plusEquals(cachedGradient, constraints);
+				MatrixOps.plusEquals(cachedGradient, parameters, -1.0 / gaussianPriorVariance);
+				// a parameter set to -infinity can't change
+				MatrixOps.substitute(cachedGradient, Double.NEGATIVE_INFINITY, 0.0);
+				// the gradient of the features that are not selected is 0
+				for(int li=0; li<numLabels; li++)
+				{
+					MatrixOps.rowSetAll(cachedGradient, numFeatures, li, 0.0,
+							perLabelFeatureSelection == null ? featureSelection : perLabelFeatureSelection[li], false);
+				}
+				cachedGradientStale = false;
+			}
+			System.arraycopy(cachedGradient, 0, buffer, 0, cachedGradient.length);
+		}
+	}
+}
@@ -0,0 +1,504 @@
+package classifiers.perceptron;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a disk-backed list of training instances, for training sets that don't fit in the heap:
+ * the instances are encoded by a Codec and appended to a file once, then the file is memory-mapped,
+ * and each iteration over the list (i.e. each epoch of Perceptron.learning) decodes them again, block by block,
+ * so only the offsets of the instances and the blocks that are being learned stay in the heap
+ *
+ * -Dstore.block=N: the number of instances in a block (default 256)
+ * -Dstore.prefetch=N: the number of threads that decode the next blocks ahead of the learner (default 0, no prefetch)
+ * -Dstore.shuffle=true: each iteration visits the blocks, and the instances of a block, in a new random order,
+ * the blocks are still read sequentially from the file (default false, the order they are added)
+ *
+ * @param <T>
+ */
+public class InstanceStore<T extends AbstractInstance> extends AbstractList<T>
+{
+	static public final String BlockProperty = "store.block";
+	static public final String PrefetchProperty = "store.prefetch";
+	static public final String ShuffleProperty = "store.shuffle";
+
+	// a mapped buffer can't be larger than 2GB, so the file is mapped in segments of whole blocks
+	static final long MaxSegment = 1L << 30;
+
+	/**
+	 * encode/decode an instance, the decoded instance is only used during the run that encoded it,
+	 * so it can refer to the alphabets and string pools of the run by ids.
+	 * read is called by the prefetch threads, so it must not change state that the learner uses, e.g. the alphabets
+	 * @param <T>
+	 */
+	static public interface Codec<T>
+	{
+		public void write(T inst, DataOutputStream out) throws IOException;
+
+		public T read(DataInputStream in) throws IOException;
+	}
+
+	protected File file;
+	protected boolean deleteOnClose;
+	protected Codec<T> codec;
+	protected int blockSize;
+	protected int prefetch;
+	protected boolean shuffle;
+	protected long seed = 0;
+	protected int epoch = 0;
+
+	// the offsets of the instances in the file
+	protected long[] offsets = new long[1024];
+	protected int size = 0;
+	protected long length = 0;
+
+	// when the instances are added
+	protected DataOutputStream out;
+	protected ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+	// when the instances are read
+	protected MappedByteBuffer[] segments;
+	protected long[] segmentStarts;
+	protected int[] blockSegments;
+	protected ExecutorService executor;
+
+	// statistics
+	protected AtomicLong decodeNanos = new AtomicLong();
+	protected AtomicLong decoded = new AtomicLong();
+
+	/**
+	 * @param file the file is overwritten
+	 * @param codec
+	 * @throws IOException
+	 */
+	public InstanceStore(File file, Codec<T> codec) throws IOException
+	{
+		this.file = file;
+		this.codec = codec;
+		this.blockSize = Math.max(1, Integer.getInteger(BlockProperty, 256));
+		this.prefetch = Integer.getInteger(PrefetchProperty, 0);
+		this.shuffle = Boolean.getBoolean(ShuffleProperty);
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+	}
+
+	/**
+	 * a store in a temporary file, which is deleted when the store is closed
+	 * @param codec
+	 * @return
+	 * @throws IOException
+	 */
+	static public <T extends AbstractInstance> InstanceStore<T> createTemp(Codec<T> codec) throws IOException
+	{
+		File file = File.createTempFile("instances", ".bin");
+		file.deleteOnExit();
+		InstanceStore<T> store = new InstanceStore<T>(file, codec);
+		store.deleteOnClose = true;
+		return store;
+	}
+
+	/**
+	 * the seed of the random order of the first iteration, the next iterations use seed + 1, seed + 2 ...
+	 * @param seed
+	 */
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+	}
+
+	/**
+	 * encode an instance and append it to the file, only at the end of the list, and before it's read
+	 */
+	@Override
+	public synchronized void add(int index, T inst)
+	{
+		if(out == null)
+		{
+			throw new IllegalStateException("instances can't be added after the store is read");
+		}
+		if(index != size)
+		{
+			throw new UnsupportedOperationException("instances can only be added at the end");
+		}
+		try
+		{
+			record.reset();
+			DataOutputStream recordOut = new DataOutputStream(record);
+			codec.write(inst, recordOut);
+			recordOut.flush();
+			if(size == offsets.length)
+			{
+				offsets = Arrays.copyOf(offsets, size * 2);
+			}
+			offsets[size++] = length;
+			record.writeTo(out);
+			length += record.size();
+			modCount++;
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	public int numBlocks()
+	{
+		return (size + blockSize - 1) / blockSize;
+	}
+
+	/**
+	 * close the file for writing, and map it for reading, it's called by the first read
+	 * @throws IOException
+	 */
+	public synchronized void open() throws IOException
+	{
+		if(out == null)
+		{
+			return;
+		}
+		out.close();
+		out = null;
+		record = null;
+		offsets = Arrays.copyOf(offsets, size);
+
+		// split the blocks into segments
+		List<Long> starts = new ArrayList<Long>();
+		blockSegments = new int[numBlocks()];
+		for(int b=0; b<blockSegments.length; b++)
+		{
+			long blockStart = offsets[b * blockSize];
+			long blockEnd = getEnd(Math.min(size, (b + 1) * blockSize) - 1);
+			if(starts.isEmpty() || blockEnd - starts.get(starts.size() - 1) > MaxSegment)
+			{
+				starts.add(blockStart);
+			}
+			blockSegments[b] = starts.size() - 1;
+		}
+		segmentStarts = new long[starts.size()];
+		segments = new MappedByteBuffer[starts.size()];
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			for(int s=0; s<segments.length; s++)
+			{
+				segmentStarts[s] = starts.get(s);
+				long end = s + 1 < segments.length ? starts.get(s + 1) : length;
+				segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, segmentStarts[s], end - segmentStarts[s]);
+			}
+		}
+		finally
+		{
+			// the mapping stays valid after the channel is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * the end offset of instance i
+	 */
+	protected long getEnd(int i)
+	{
+		return i + 1 < size ? offsets[i + 1] : length;
+	}
+
+	protected void ensureOpen()
+	{
+		try
+		{
+			open();
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * decode instance i, it's a new object each time
+	 */
+	@Override
+	public T get(int i)
+	{
+		if(i < 0 || i >= size)
+		{
+			throw new IndexOutOfBoundsException("index " + i + " of " + size);
+		}
+		ensureOpen();
+		int s = blockSegments[i / blockSize];
+		ByteBuffer buffer = segments[s].duplicate();
+		buffer.limit((int) (getEnd(i) - segmentStarts[s]));
+		buffer.position((int) (offsets[i] - segmentStarts[s]));
+		long start = System.nanoTime();
+		try
+		{
+			return codec.read(new DataInputStream(new BufferInputStream(buffer)));
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		finally
+		{
+			decodeNanos.addAndGet(System.nanoTime() - start);
+			decoded.incrementAndGet();
+		}
+	}
+
+	/**
+	 * decode the instances of a block
+	 * @param b
+	 * @param random shuffle the instances by it if not null
+	 * @return
+	 */
+	protected List<T> readBlock(int b, Random random)
+	{
+		List<T> block = new ArrayList<T>(blockSize);
+		for(int i=b*blockSize; i<Math.min(size, (b + 1) * blockSize); i++)
+		{
+			block.add(get(i));
+		}
+		if(random != null)
+		{
+			Collections.shuffle(block, random);
+		}
+		return block;
+	}
+
+	protected synchronized ExecutorService getExecutor()
+	{
+		if(executor == null)
+		{
+			executor = Executors.newFixedThreadPool(prefetch, new ThreadFactory()
+			{
+				AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "store-" + count.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * a new pass over all instances, in the order they are added, or in a new random order of blocks
+	 * and instances if -Dstore.shuffle=true
+	 */
+	@Override
+	public Iterator<T> iterator()
+	{
+		ensureOpen();
+		final int[] order = new int[numBlocks()];
+		for(int b=0; b<order.length; b++)
+		{
+			order[b] = b;
+		}
+		final long epochSeed;
+		synchronized(this)
+		{
+			epochSeed = seed + epoch++;
+		}
+		if(shuffle)
+		{
+			Random random = new Random(epochSeed);
+			for(int b=order.length-1; b>0; b--)
+			{
+				int j = random.nextInt(b + 1);
+				int tmp = order[b];
+				order[b] = order[j];
+				order[j] = tmp;
+			}
+		}
+
+		return new Iterator<T>()
+		{
+			// the next block to read or to submit
+			int next = 0;
+			// the blocks that are being decoded by the prefetch threads, in order
+			LinkedList<Future<List<T>>> pending = new LinkedList<Future<List<T>>>();
+			Iterator<T> current = Collections.<T>emptyList().iterator();
+
+			Callable<List<T>> getTask(final int b)
+			{
+				return new Callable<List<T>>()
+				{
+					public List<T> call()
+					{
+						// the random order within a block doesn't depend on which thread decodes it
+						return readBlock(b, shuffle ? new Random(epochSeed * 31 + b) : null);
+					}
+				};
+			}
+
+			List<T> nextBlock()
+			{
+				if(prefetch <= 0)
+				{
+					int b = order[next++];
+					return readBlock(b, shuffle ? new Random(epochSeed * 31 + b) : null);
+				}
+				// keep two blocks per thread ahead of the learner
+				while(next < order.length && pending.size() < prefetch * 2)
+				{
+					pending.add(getExecutor().submit(getTask(order[next++])));
+				}
+				try
+				{
+					return pending.removeFirst().get();
+				}
+				catch(InterruptedException e)
+				{
+					throw new RuntimeException(e);
+				}
+				catch(ExecutionException e)
+				{
+					throw new RuntimeException(e.getCause());
+				}
+			}
+
+			public boolean hasNext()
+			{
+				while(!current.hasNext())
+				{
+					if(next >= order.length && pending.isEmpty())
+					{
+						return false;
+					}
+					current = nextBlock().iterator();
+				}
+				return true;
+			}
+
+			public T next()
+			{
+				if(!hasNext())
+				{
+					throw new NoSuchElementException();
+				}
+				return current.next();
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * stop the prefetch threads, release the mapping, and delete the file if it's temporary
+	 * the store can't be used after that
+	 */
+	public synchronized void close()
+	{
+		if(executor != null)
+		{
+			executor.shutdownNow();
+			executor = null;
+		}
+		try
+		{
+			if(out != null)
+			{
+				out.close();
+				out = null;
+			}
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+		segments = null;
+		if(deleteOnClose && !file.delete())
+		{
+			// it's mapped on some platforms, and deleted on exit
+			System.err.println("can't delete " + file);
+		}
+	}
+
+	public void printStatistics(PrintStream out)
+	{
+		long count = decoded.get();
+		out.println(String.format("instance store %s\tinstances=%d\tblocks=%d\tsize=%.1fMB\tavg=%dB\tdecoded=%d\tdecode=%.3fms/instance",
+				file, size, numBlocks(), length / 1048576.0, size == 0 ? 0 : length / size, count,
+				count == 0 ? 0 : decodeNanos.get() / 1000000.0 / count));
+	}
+
+	/**
+	 * an InputStream over the remaining bytes of a buffer
+	 */
+	static class BufferInputStream extends InputStream
+	{
+		ByteBuffer buffer;
+
+		BufferInputStream(ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read()
+		{
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int off, int len)
+		{
+			if(len == 0)
+			{
+				return 0;
+			}
+			if(!buffer.hasRemaining())
+			{
+				return -1;
+			}
+			len = Math.min(len, buffer.remaining());
+			buffer.get(bytes, off, len);
+			return len;
+		}
+
+		@Override
+		public int available()
+		{
+			return buffer.remaining();
+		}
+	}
+}
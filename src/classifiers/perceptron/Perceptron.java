@@ -1,19 +1,26 @@
 package classifiers.perceptron;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 
 import org.apache.commons.lang3.SerializationUtils;
 
 import util.Controller;
+import util.FeatureProfiler;
 
 import commons.Alphabets;
 import commons.FeatureVector;
@@ -82,6 +89,17 @@ public class Perceptron implements java.io.Serializable
 	 * @return
 	 */
 	public AbstractAssignment decoding(AbstractInstance inst)
+	{
+		return decoding(inst, beamSearcher);
+	}
+	
+	/**
+	 *  given a single instance, decode with the given beam searcher (see newBeamSearcher), and give the best assignment
+	 * @param inst
+	 * @param beamSearcher
+	 * @return
+	 */
+	public AbstractAssignment decoding(AbstractInstance inst, AbstractBeamSearch beamSearcher)
 	{
 		List<? extends AbstractAssignment> assns = beamSearcher.beamSearch(inst, controller.beamSize, false, 0);
 		return assns.get(0);
@@ -93,21 +111,100 @@ public class Perceptron implements java.io.Serializable
 	 * @return
 	 */
 	public List<AbstractAssignment> decoding(List<? extends AbstractInstance> instanceList)
+	{
+		return decoding(instanceList, beamSearcher);
+	}
+	
+	/**
+	 *  given an instanceList, decode with the given beam searcher (see newBeamSearcher), and give the best assignmentList
+	 * @param instanceList
+	 * @param beamSearcher
+	 * @return
+	 */
+	public List<AbstractAssignment> decoding(List<? extends AbstractInstance> instanceList, AbstractBeamSearch beamSearcher)
 	{
 		List<AbstractAssignment> ret = new ArrayList<AbstractAssignment>();
 		for(AbstractInstance inst : instanceList)
 		{
-			List<? extends AbstractAssignment> assns = beamSearcher.beamSearch(inst, controller.beamSize, false, 0);
-			ret.add(assns.get(0));
+			ret.add(decoding(inst, beamSearcher));
 		}
 		return ret;
 	}
 	
+	/**
+	 * a copy of the beam searcher that shares this model, so that several threads can decode at the same time,
+	 * each with its own beam searcher
+	 * @return
+	 */
+	public AbstractBeamSearch newBeamSearcher()
+	{
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes)
+			{
+				{
+					enableReplaceObject(true);
+				}
+				
+				@Override
+				protected Object replaceObject(Object obj)
+				{
+					// the model is not copied
+					return obj == Perceptron.this ? null : obj;
+				}
+			};
+			out.writeObject(beamSearcher);
+			out.close();
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+			AbstractBeamSearch ret = (AbstractBeamSearch) in.readObject();
+			in.close();
+			ret.SetModel(this);
+			return ret;
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		catch(ClassNotFoundException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+	
 	public void learning(List<? extends AbstractInstance> trainingList, int maxIter)
 	{
 		learning(trainingList, null, 0);
 	}
 	
+	/**
+	 * learn from training instances that are streamed from the disk: they are encoded by the codec
+	 * into a temporary InstanceStore one by one as they are made, so the training set doesn't have to fit in the heap,
+	 * and each iteration decodes them again. The store is deleted when the learning is done
+	 * @param trainingInstances
+	 * @param codec
+	 * @param devList
+	 * @param cutoff
+	 * @throws IOException
+	 */
+	public <T extends AbstractInstance> void learning(Iterator<? extends T> trainingInstances, InstanceStore.Codec<T> codec,
+			List<? extends AbstractInstance> devList, int cutoff) throws IOException
+	{
+		InstanceStore<T> store = InstanceStore.createTemp(codec);
+		try
+		{
+			while(trainingInstances.hasNext())
+			{
+				store.add(trainingInstances.next());
+			}
+			learning(store, devList, cutoff);
+		}
+		finally
+		{
+			store.close();
+		}
+	}
+	
 	/**
 	 * given an training instance list, and max number of iterations, learn weights by perceptron
 	 * in each iteration, use current weights to test the dev instance list, and in each peak, save the model to file
@@ -228,6 +325,15 @@ public class Perceptron implements java.io.Serializable
 		// print out num of invalid update
 		beamSearcher.print_num_update(System.out);
 		
+		if(trainingList instanceof InstanceStore)
+		{
+			// the training instances are streamed from the disk in each iteration
+			((InstanceStore<?>) trainingList).printStatistics(System.out);
+		}
+		
+		// dump feature extraction counters if profiling is enabled
+		FeatureProfiler.dump();
+		
 		return;
 	}
 	
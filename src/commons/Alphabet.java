@@ -85,6 +85,22 @@ public class Alphabet implements Serializable
 		return retIndex;
 	}
 
+	/**
+	 * add an entry if it isn't present
+	 * @return the index of the entry if it's added by this call, -1 if it's present
+	 */
+	public int add (Object entry)
+	{
+		if(map.containsKey(entry))
+		{
+			return -1;
+		}
+		int index = entries.size();
+		map.put (entry, index);
+		entries.add (entry);
+		return index;
+	}
+
 	public int lookupIndex (Object entry)
 	{
 		return lookupIndex (entry, true);
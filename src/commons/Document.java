@@ -1,17 +1,20 @@
 package commons;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -28,7 +31,7 @@ import util.SentDetectorWrapper;
 import util.Span;
 import util.TokenAnnotations;
 import util.TokenizerWrapper;
-import util.TypeConstraints;
+import util.TriggerLexicon;
 import cc.mallet.util.FileUtils;
 import event.types.SentenceInstance;
 
@@ -59,6 +62,11 @@ public class Document
 	// if the document is monoCase
 	boolean monoCase = false;
 
+	// the key in DocumentCache, null if the cache is disabled
+	protected String cacheKey = null;
+	// true if the sentences are loaded from DocumentCache, i.e. they are already POS tagged, parsed etc.
+	protected boolean preprocessed = false;
+
 	/*
 	 * the list of sentences they are instances in the learning process, there can be a
 	 * dummy list of sentences, where each sentence is a cluster of sentence e.g. the
@@ -72,12 +80,18 @@ public class Document
 	 */
 	public AceDocument aceAnnotations;
 
+	// the string pool of the token tables of the sentences
+	protected TokenTable.StringPool strings = new TokenTable.StringPool();
+
+	// interval indices of the mention lists of aceAnnotations, see getMentionIndex()
+	protected Map<List<?>, MentionIndex> mentionIndices = new IdentityHashMap<List<?>, MentionIndex>();
+
 	// Event type --> Trigger token
-	public static Map<String, List<String>> triggerTokens = new HashMap<String, List<String>>();
+	public static Map<String, List<String>> triggerTokens = TriggerLexicon.getSingleton().getTriggersByType(TriggerLexicon.THRESHOLD_ALL);
 	// Event subtype --> Trigger token
-	public static Map<String, List<String>> triggerTokensFineGrained = new HashMap<String, List<String>>();
+	public static Map<String, List<String>> triggerTokensFineGrained = TriggerLexicon.getSingleton().getTriggersBySubType(TriggerLexicon.THRESHOLD_ALL);
 	// Event subtype --> trigger token with high confidence value
-	public static Map<String, List<String>> triggerTokensHighQuality = new HashMap<String, List<String>>();
+	public static Map<String, List<String>> triggerTokensHighQuality = TriggerLexicon.getSingleton().getTriggersBySubType(TriggerLexicon.THRESHOLD_HIGH_QUALITY);
 
 	/**
 	 * the container for the sentence "clusters"
@@ -85,81 +99,21 @@ public class Document
 	protected List<List<Sentence>> sentClusters = new ArrayList<List<Sentence>>();
 
 	/**
-	 * return the sentence clusters to the client
+	 * the string pool that the token tables of the sentences share
 	 * @return
 	 */
-	public List<List<Sentence>> getSentenceClusters()
+	public TokenTable.StringPool getStrings()
 	{
-		return sentClusters;
+		return strings;
 	}
 
-	static
+	/**
+	 * return the sentence clusters to the client
+	 * @return
+	 */
+	public List<List<Sentence>> getSentenceClusters()
 	{
-		// initialize priorityQueueEntities
-		try
-		{
-			// initialize dict of triggerTokens
-			BufferedReader reader = new BufferedReader(new FileReader(
-					"data/triggerTokens"));
-			String line = null;
-			while ((line = reader.readLine()) != null)
-			{
-				if (line.length() == 0)
-				{
-					continue;
-				}
-				String[] fields = line.split("\\t");
-				String eventSubType = fields[0];
-				String triggerToken = fields[1];
-				Double confidence = Double.parseDouble(fields[2]);
-				if (confidence < 0.150)
-				{
-					continue;
-				}
-				String eventType = TypeConstraints.eventTypeMapModified
-						.get(eventSubType);
-				List<String> triggers = triggerTokens.get(eventType);
-				if (triggers == null)
-				{
-					triggers = new ArrayList<String>();
-					triggerTokens.put(eventType, triggers);
-				}
-				if (!triggers.contains(triggerToken))
-				{
-					triggers.add(triggerToken);
-				}
-
-				triggers = triggerTokensFineGrained.get(eventSubType);
-				if (triggers == null)
-				{
-					triggers = new ArrayList<String>();
-					triggerTokensFineGrained.put(eventSubType, triggers);
-				}
-				if (!triggers.contains(triggerToken))
-				{
-					triggers.add(triggerToken);
-				}
-
-				if (confidence >= 0.50)
-				{
-					triggers = triggerTokensHighQuality.get(eventSubType);
-					if (triggers == null)
-					{
-						triggers = new ArrayList<String>();
-						triggerTokensHighQuality.put(eventSubType, triggers);
-					}
-					if (!triggers.contains(triggerToken))
-					{
-						triggers.add(triggerToken);
-					}
-				}
-			}
-			reader.close();
-		}
-		catch (IOException e)
-		{
-			e.printStackTrace();
-		}
+		return sentClusters;
 	}
 
 	public void printDocCluster(PrintStream out)
@@ -180,113 +134,107 @@ public class Document
 		}
 	}
 
+	// POS tags of the tokens whose lemma can put a sentence into a cluster
+	static final Set<String> ClusterPOS = new HashSet<String>(Arrays.asList("IN", "JJ", "RB", "DT", "VBG", "VBD", "NN",
+			"NNPS", "VB", "VBN", "NNS", "VBP", "NNP", "PRP", "VBZ"));
+
+	/**
+	 * cluster the sentences by the coarse event types that their tokens can trigger:
+	 * each type makes a cluster of the sentences that have one of its trigger lemmas, clusters are
+	 * taken from the largest, without the sentences of the larger clusters, and the other
+	 * sentences are singleton clusters
+	 *
+	 * the clusters are built from an inverted index lemma --> sentences (as BitSets), so each
+	 * distinct lemma is looked up in the trigger lexicon once
+	 */
 	public void setSentenceClustersByTokens()
 	{
-		final String allowedPOS = "IN|JJ|RB|DT|VBG|VBD|NN|NNPS|VB|VBN|NNS|VBP|NNP|PRP|VBZ";
-
 		this.sentClusters.clear();
-		// travels each entity to get relevant sents
+		TriggerLexicon lexicon = TriggerLexicon.getSingleton();
+		int numSents = this.sentences.size();
 
-		for (String eventType : triggerTokens.keySet())
+		// inverted index: trigger lemma --> the sentences that have it
+		Map<String, BitSet> lemmaIndex = new HashMap<String, BitSet>();
+		for (int i = 0; i < numSents; i++)
 		{
-			List<String> triggers = triggerTokens.get(eventType);
-			List<Sentence> cluster = new ArrayList<Sentence>();
-			// add sentence that contains this entity
-			for (int i = 0; i < this.sentences.size(); i++)
+			TokenTable tokens = TokenTable.of((List<Map<Class<?>, Object>>) this.sentences.get(i)
+					.get(Sent_Attribute.Token_FEATURE_MAPs));
+			for (int j = 0; j < tokens.size(); j++)
 			{
-				Sentence sent = this.sentences.get(i);
-				List<Map<Class<?>, Object>> tokens = (List<Map<Class<?>, Object>>) sent
-						.get(Sent_Attribute.Token_FEATURE_MAPs);
-				for (int j = 0; j < tokens.size(); j++)
+				String pos = tokens.getString(j, TokenAnnotations.PartOfSpeechAnnotation.class);
+				String lemma = tokens.getString(j, TokenAnnotations.LemmaAnnotation.class);
+				if (pos == null || lemma == null || !ClusterPOS.contains(pos) || !lexicon.contains(lemma))
 				{
-					String pos = (String) tokens.get(j).get(
-							TokenAnnotations.PartOfSpeechAnnotation.class);
-					if (pos.matches(allowedPOS))
-					{
-						String lemma = (String) tokens.get(j).get(
-								TokenAnnotations.LemmaAnnotation.class);
-						if (triggers.contains(lemma))
-						{
-							cluster.add(sent);
-							break;
-						}
-					}
+					continue;
+				}
+				BitSet sents = lemmaIndex.get(lemma);
+				if (sents == null)
+				{
+					sents = new BitSet(numSents);
+					lemmaIndex.put(lemma, sents);
 				}
+				sents.set(i);
 			}
+		}
 
-			// add cluster if doesn't exist
-			if (cluster.size() > 0 && !this.sentClusters.contains(cluster))
+		// the sentences of each coarse event type
+		BitSet[] typeSents = new BitSet[lexicon.numTypes()];
+		for (int type = 0; type < typeSents.length; type++)
+		{
+			typeSents[type] = new BitSet(numSents);
+		}
+		for (Map.Entry<String, BitSet> entry : lemmaIndex.entrySet())
+		{
+			BitSet types = lexicon.getTypeIds(entry.getKey(), TriggerLexicon.THRESHOLD_ALL);
+			for (int type = types.nextSetBit(0); type >= 0; type = types.nextSetBit(type + 1))
 			{
-				this.sentClusters.add(cluster);
+				typeSents[type].or(entry.getValue());
 			}
 		}
 
-		// sort clusters by size and remove overlapping sents
-		Collections.sort(this.sentClusters, new Comparator<List<Sentence>>()
+		// distinct clusters in type order, sorted by size (the sort is stable)
+		List<BitSet> clusters = new ArrayList<BitSet>();
+		for (BitSet cluster : typeSents)
+		{
+			if (!cluster.isEmpty() && !clusters.contains(cluster))
+			{
+				clusters.add(cluster);
+			}
+		}
+		Collections.sort(clusters, new Comparator<BitSet>()
 		{
 			@Override
-			public int compare(List<Sentence> set1, List<Sentence> set2)
+			public int compare(BitSet set1, BitSet set2)
 			{
-				if (set1.size() > set2.size())
-				{
-					return -1;
-				}
-				else if (set1.size() < set2.size())
-				{
-					return 1;
-				}
-				else
-				{
-					return 0;
-				}
+				return set2.cardinality() - set1.cardinality();
 			}
 		});
 
-		for (int i = 1; i < this.sentClusters.size(); i++)
+		// remove the sents of larger clusters
+		BitSet covered = new BitSet(numSents);
+		for (BitSet cluster : clusters)
 		{
-			List<Sentence> cluster = this.sentClusters.get(i);
-			for (int j = 0; j < i; j++)
+			cluster.andNot(covered);
+			if (cluster.isEmpty())
 			{
-				List<Sentence> pre_cluster = this.sentClusters.get(j);
-				// remove overlapping sents
-				cluster.removeAll(pre_cluster);
+				continue;
 			}
-			if (cluster.size() == 0)
+			covered.or(cluster);
+			List<Sentence> sents = new ArrayList<Sentence>();
+			for (int i = cluster.nextSetBit(0); i >= 0; i = cluster.nextSetBit(i + 1))
 			{
-				this.sentClusters.remove(cluster);
-				i--;
+				sents.add(this.sentences.get(i));
 			}
+			this.sentClusters.add(sents);
 		}
 
 		// set the remaining sents as singleton clusters
-		for (int i = 0; i < this.sentences.size(); i++)
-		{
-			// only add sents that are not in any existing clusters
-			Sentence sent = this.sentences.get(i);
-			if (isNotInCluster(sent))
-			{
-				List<Sentence> cluster = new ArrayList<Sentence>();
-				cluster.add(sent);
-				this.sentClusters.add(cluster);
-			}
-		}
-	}
-
-	/**
-	 * check if sent is in any cluster or not
-	 * @param sent
-	 * @return
-	 */
-	private boolean isNotInCluster(Sentence sent)
-	{
-		for (List<Sentence> cluster : this.sentClusters)
+		for (int i = covered.nextClearBit(0); i < numSents; i = covered.nextClearBit(i + 1))
 		{
-			if (cluster.contains(sent))
-			{
-				return false;
-			}
+			List<Sentence> cluster = new ArrayList<Sentence>();
+			cluster.add(this.sentences.get(i));
+			this.sentClusters.add(cluster);
 		}
-		return true;
 	}
 
 	/**
@@ -325,7 +273,7 @@ public class Document
 		}
 
 		sentences = new ArrayList<Sentence>();
-		readDoc(txtFile, this.monoCase);
+		readDocCached(txtFile, baseFileName + apfFileExt, "year=" + year);
 	}
 
 	/**
@@ -350,7 +298,7 @@ public class Document
 		}
 		this.docID = this.aceAnnotations.docID;
 		sentences = new ArrayList<Sentence>();
-		readDoc(txtFile, this.monoCase);
+		readDocCached(txtFile, apfFile, "");
 	}
 
 	/**
@@ -375,7 +323,29 @@ public class Document
 		}
 
 		sentences = new ArrayList<Sentence>();
-		readDoc(txtFile, this.monoCase);
+		readDocCached(txtFile, baseFileName + apfFileExt, "");
+	}
+
+	/**
+	 * a document from raw text in memory (e.g. a text feed at decoding time), no file and no APF annotation is read.
+	 * the text has no header or XML markup, and since there are no annotations, the fixes of sentence and token
+	 * boundaries that depend on them are skipped, and the sentences have no entity/value/timex mentions
+	 * @param docID
+	 * @param text
+	 * @param monoCase
+	 * @return
+	 * @throws IOException
+	 */
+	static public Document fromText(String docID, String text, boolean monoCase)
+			throws IOException
+	{
+		Document doc = new Document();
+		doc.monoCase = monoCase;
+		doc.docID = docID;
+		doc.setHasLabel(false);
+		doc.sentences = new ArrayList<Sentence>();
+		doc.readText(text);
+		return doc;
 	}
 
 	/**
@@ -448,6 +418,48 @@ public class Document
 		}
 	}
 
+	/**
+	 * load the preprocessed document from DocumentCache if it's enabled and has the document, 
+	 * otherwise read the document by readDoc(), and it will be saved to the cache after doPreprocess()
+	 * @param txtFile
+	 * @param apfFile
+	 * @param variant the settings that readDoc() depends on, other than monoCase/hasLabel
+	 * @throws IOException
+	 */
+	protected void readDocCached(File txtFile, String apfFile, String variant)
+			throws IOException
+	{
+		DocumentCache cache = DocumentCache.getSingleton();
+		if (cache != null)
+		{
+			variant = "monoCase=" + this.monoCase + "\thasLabel="
+					+ this.isHasLabel() + "\tfsh=" + this.docID.contains("fsh_")
+					+ "\t" + variant;
+			this.cacheKey = cache.getKey(txtFile,
+					this.isHasLabel() ? new File(apfFile) : null, variant);
+			if (cache.load(this, this.cacheKey))
+			{
+				this.preprocessed = true;
+				return;
+			}
+		}
+		readDoc(txtFile, this.monoCase);
+	}
+
+	/**
+	 * true if the sentences are loaded from DocumentCache, which have been through doPreprocess()
+	 * @return
+	 */
+	public boolean isPreprocessed()
+	{
+		return preprocessed;
+	}
+
+	public String getCacheKey()
+	{
+		return cacheKey;
+	}
+
 	/**
 	 * read txt document, do POS tagging, chunking, parsing
 	 * @param txtFile
@@ -481,6 +493,33 @@ public class Document
 			sentSpans = fixSentBoundaries(sentSpans);
 		}
 
+		addSentences(sentSpans);
+	}
+
+	/**
+	 * read raw text, i.e. the whole text is one segment without headline, do sentence split and tokenization
+	 * @param rawText
+	 * @throws IOException
+	 */
+	public void readText(String rawText) throws IOException
+	{
+		List<TextSegment> segments = new ArrayList<TextSegment>();
+		segments.add(new TextSegment(null, rawText));
+		this.headline = "";
+		this.before_text = "";
+		this.textoffset = 0;
+
+		Span[] sentSpans = splitSents(segments);
+		addSentences(sentSpans);
+	}
+
+	/**
+	 * tokenize the sentences, and add them to the document
+	 * @param sentSpans absolute spans of the sentences
+	 * @throws IOException
+	 */
+	protected void addSentences(Span[] sentSpans) throws IOException
+	{
 		int sentID = 0;
 		for (Span sentSpan : sentSpans)
 		{
@@ -500,8 +539,12 @@ public class Document
 				tokenSpans[idx] = absoluteTokenSpan;
 			}
 			// fix tokenization error, e.g. split anti-war to three words
-			tokenSpans = fixTokenBoudaries(tokenSpans, allText);
-			tokenSpans = fixTokenBoudariesAggresive(tokenSpans, allText);
+			if (hasLabel())
+			{
+				// align the tokens with ace annotations
+				tokenSpans = fixTokenBoudaries(tokenSpans, allText);
+				tokenSpans = fixTokenBoudariesAggresive(tokenSpans, allText);
+			}
 			tokenSpans = fixTokenBoudariesAdhoc(tokenSpans, allText);
 			Sentence sent = new Sentence(this, sentID++);
 			sent.put(Sent_Attribute.TOKEN_SPANS, tokenSpans);
@@ -517,7 +560,7 @@ public class Document
 			sent.put(Sent_Attribute.TOKENS, tokens);
 			// save span of the sent
 			sent.setExtent(sentSpan);
-			List<Map<Class<?>, Object>> tokenFeatureMaps = new ArrayList<Map<Class<?>, Object>>();
+			List<Map<Class<?>, Object>> tokenFeatureMaps = new TokenTable(strings, tokenSpans.length);
 			sent.put(Sent_Attribute.Token_FEATURE_MAPs, tokenFeatureMaps);
 			this.sentences.add(sent);
 		}
@@ -1041,6 +1084,23 @@ public class Document
 		return aceAnnotations;
 	}
 
+	/**
+	 * the interval index of a mention list of aceAnnotations, it's built on first use,
+	 * and again if mentions are removed from the list (e.g. events without trigger)
+	 * @param mentions
+	 * @return
+	 */
+	MentionIndex getMentionIndex(List<?> mentions)
+	{
+		MentionIndex index = mentionIndices.get(mentions);
+		if (index == null || index.size() != mentions.size())
+		{
+			index = new MentionIndex(mentions);
+			mentionIndices.put(mentions, index);
+		}
+		return index;
+	}
+
 	protected void setHasLabel(boolean hasLabel)
 	{
 		this.hasLabel = hasLabel;
@@ -1064,12 +1124,18 @@ public class Document
 			Controller controller, boolean learnable)
 	{
 		List<SentenceInstance> instancelist = new ArrayList<SentenceInstance>();
+		boolean compact = Boolean.getBoolean(SentenceInstance.CompactProperty);
 		for (int sent_id = 0; sent_id < this.getSentences().size(); sent_id++)
 		{
 			Sentence sent = this.getSentences().get(sent_id);
 			// add all instances
 			SentenceInstance inst = new SentenceInstance(sent, alphabets,
 					controller, learnable);
+			if (compact)
+			{
+				// keep only what learning needs, so that the document can be released
+				inst.compact();
+			}
 			instancelist.add(inst);
 		}
 		return instancelist;
@@ -0,0 +1,594 @@
+package commons;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import util.ParserWrapper;
+import util.Span;
+import util.TokenAnnotations;
+import util.graph.DependencyGraph;
+import util.graph.GraphEdge;
+import util.graph.GraphNode;
+
+import commons.Sentence.Sent_Attribute;
+
+import edu.stanford.nlp.trees.LabeledScoredTreeFactory;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeFactory;
+
+/**
+ * on-disk cache of preprocessed documents, i.e. the output of Document.readDoc() and
+ * TextFeatureGenerator.doPreprocess(): sentence/token spans, tokens, POS tags, lemmas, chunks,
+ * Nomlex base forms, parse trees and dependency graphs
+ *
+ * the cache is enabled by -DdocCache=path/to/cache/dir. A document is keyed by the SHA-1 of
+ * its text (and APF) file content, the way it's read (monoCase etc.) and the version of the
+ * NLP models in data/, so a cached entry is never used after its inputs change.
+ * each entry is a small binary file: a string table followed by varint encoded ids and offsets
+ */
+public class DocumentCache
+{
+	static public final String DirProperty = "docCache";
+
+	// bump this when the format, or what readDoc()/doPreprocess() produce, is changed
+	static public final int FormatVersion = 1;
+
+	static final int Magic = 0x44434348; // "DCCH"
+
+	// the models whose output is cached
+	static final String[] ResourceFiles = new String[]{
+		"data/en-sent.bin",
+		"data/en-token.bin",
+		"data/en-chunker.bin",
+		"data/left3words-wsj-0-18.tagger",
+		"data/englishPCFG.ser.gz",
+		"data/NOMLEX"
+	};
+
+	static private DocumentCache cache = null;
+	static private boolean initialized = false;
+
+	/**
+	 * the cache given by -DdocCache, null if disabled
+	 * @return
+	 */
+	static public synchronized DocumentCache getSingleton()
+	{
+		if(!initialized)
+		{
+			initialized = true;
+			String dir = System.getProperty(DirProperty);
+			if(dir != null)
+			{
+				cache = new DocumentCache(new File(dir));
+			}
+		}
+		return cache;
+	}
+
+	protected File dir;
+	protected String resourceVersion;
+
+	public DocumentCache(File dir)
+	{
+		this.dir = dir;
+		if(!dir.exists())
+		{
+			dir.mkdirs();
+		}
+		this.resourceVersion = getResourceVersion();
+	}
+
+	/**
+	 * name, size and modification time of the model files, and the parser settings
+	 * @return
+	 */
+	static protected String getResourceVersion()
+	{
+		StringBuilder ret = new StringBuilder();
+		ret.append(FormatVersion);
+		for(String name : ResourceFiles)
+		{
+			File file = new File(name);
+			ret.append("\t").append(name).append(":").append(file.length()).append(":").append(file.lastModified());
+		}
+		// the guard rails of the parser decide which sentences are parsed
+		ret.append("\t").append(ParserWrapper.getSettings());
+		return ret.toString();
+	}
+
+	/**
+	 * the key of a document, the SHA-1 of everything that readDoc()/doPreprocess() depend on
+	 * @param txtFile
+	 * @param apfFile null if the document has no label
+	 * @param variant other settings, e.g. monoCase
+	 * @return
+	 * @throws IOException
+	 */
+	public String getKey(File txtFile, File apfFile, String variant) throws IOException
+	{
+		try
+		{
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(resourceVersion.getBytes("UTF-8"));
+			digest.update((byte) 0);
+			digest.update(variant.getBytes("UTF-8"));
+			digest.update((byte) 0);
+			updateDigest(digest, txtFile);
+			if(apfFile != null)
+			{
+				digest.update((byte) 0);
+				updateDigest(digest, apfFile);
+			}
+			StringBuilder ret = new StringBuilder();
+			for(byte b : digest.digest())
+			{
+				ret.append(String.format("%02x", b & 0xff));
+			}
+			return ret.toString();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	static private void updateDigest(MessageDigest digest, File file) throws IOException
+	{
+		InputStream in = new FileInputStream(file);
+		byte[] buffer = new byte[8192];
+		int len;
+		while((len = in.read(buffer)) > 0)
+		{
+			digest.update(buffer, 0, len);
+		}
+		in.close();
+	}
+
+	protected File getFile(String key)
+	{
+		return new File(dir, key + ".doc");
+	}
+
+	/**
+	 * fill in the text and sentences of doc from the cache
+	 * @param doc
+	 * @param key
+	 * @return false if the document is not cached (or the entry can't be read)
+	 */
+	public boolean load(Document doc, String key)
+	{
+		File file = getFile(key);
+		if(!file.exists())
+		{
+			return false;
+		}
+		try
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try
+			{
+				read(in, doc, key);
+			}
+			finally
+			{
+				in.close();
+			}
+			return true;
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			// fall back to preprocessing
+			doc.sentences = new ArrayList<Sentence>();
+			return false;
+		}
+	}
+
+	/**
+	 * write a preprocessed document to the cache
+	 * the entry is written to a temp file and then renamed, so concurrent readers never see a partial entry
+	 * @param doc
+	 * @param key
+	 */
+	public void save(Document doc, String key)
+	{
+		File file = getFile(key);
+		File temp = new File(dir, key + "." + Thread.currentThread().getId() + ".tmp");
+		try
+		{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try
+			{
+				write(out, doc, key);
+			}
+			finally
+			{
+				out.close();
+			}
+			if(!temp.renameTo(file))
+			{
+				file.delete();
+				temp.renameTo(file);
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			temp.delete();
+		}
+	}
+
+	/**
+	 * strings are written once in a table, and referred by their ids
+	 */
+	static class StringTable
+	{
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<String> strings = new ArrayList<String>();
+
+		int id(String str)
+		{
+			if(str == null)
+			{
+				return 0;
+			}
+			Integer id = ids.get(str);
+			if(id == null)
+			{
+				strings.add(str);
+				id = strings.size();
+				ids.put(str, id);
+			}
+			return id;
+		}
+	}
+
+	protected void write(DataOutputStream out, Document doc, String key) throws IOException
+	{
+		// the body is written first, since it fills in the string table
+		StringTable table = new StringTable();
+		ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+		DataOutputStream body = new DataOutputStream(bodyBytes);
+		List<Sentence> sentences = doc.getSentences();
+		writeVarint(body, sentences.size());
+		for(Sentence sent : sentences)
+		{
+			writeSentence(body, sent, table);
+		}
+		body.flush();
+
+		out.writeInt(Magic);
+		out.writeInt(FormatVersion);
+		out.writeUTF(key);
+		writeString(out, doc.headline);
+		writeString(out, doc.text);
+		writeString(out, doc.allText);
+		writeVarint(out, zigzag(doc.textoffset));
+		writeVarint(out, table.strings.size());
+		for(String str : table.strings)
+		{
+			writeString(out, str);
+		}
+		bodyBytes.writeTo(out);
+	}
+
+	protected void read(DataInputStream in, Document doc, String key) throws IOException
+	{
+		if(in.readInt() != Magic || in.readInt() != FormatVersion || !in.readUTF().equals(key))
+		{
+			throw new IOException("bad cache entry: " + key);
+		}
+		doc.headline = readString(in);
+		doc.text = readString(in);
+		doc.allText = readString(in);
+		doc.textoffset = unzigzag(readVarint(in));
+		int numStrings = readVarint(in);
+		// id 0 is null
+		String[] table = new String[numStrings + 1];
+		for(int i=1; i<=numStrings; i++)
+		{
+			table[i] = readString(in).intern();
+		}
+		int numSents = readVarint(in);
+		doc.sentences = new ArrayList<Sentence>(numSents);
+		TreeFactory treeFactory = new LabeledScoredTreeFactory();
+		for(int i=0; i<numSents; i++)
+		{
+			doc.sentences.add(readSentence(in, doc, i, table, treeFactory));
+		}
+	}
+
+	protected void writeSentence(DataOutputStream out, Sentence sent, StringTable table) throws IOException
+	{
+		Span extent = sent.getExtent();
+		writeVarint(out, zigzag(extent.start()));
+		writeVarint(out, zigzag(extent.end() - extent.start()));
+
+		String[] tokens = (String[]) sent.get(Sent_Attribute.TOKENS);
+		String[] posTags = (String[]) sent.get(Sent_Attribute.POSTAGS);
+		String[] chunks = (String[]) sent.get(Sent_Attribute.CHUNKS);
+		Span[] tokenSpans = (Span[]) sent.get(Sent_Attribute.TOKEN_SPANS);
+		List<Map<Class<?>, Object>> tokenFeatureMaps = (List<Map<Class<?>, Object>>) sent
+				.get(Sent_Attribute.Token_FEATURE_MAPs);
+		writeVarint(out, tokens.length);
+		for(int i=0; i<tokens.length; i++)
+		{
+			Map<Class<?>, Object> map = tokenFeatureMaps.get(i);
+			writeVarint(out, zigzag(tokenSpans[i].start() - extent.start()));
+			writeVarint(out, zigzag(tokenSpans[i].end() - tokenSpans[i].start()));
+			writeVarint(out, table.id(tokens[i]));
+			writeVarint(out, table.id(posTags[i]));
+			writeVarint(out, table.id(chunks[i]));
+			writeVarint(out, table.id((String) map.get(TokenAnnotations.LemmaAnnotation.class)));
+			writeVarint(out, table.id((String) map.get(TokenAnnotations.NomlexbaseAnnotation.class)));
+		}
+
+		writeTree(out, (Tree) sent.get(Sent_Attribute.ParseTree), table);
+		writeGraph(out, (DependencyGraph) sent.get(Sent_Attribute.DepGraph), table);
+	}
+
+	protected Sentence readSentence(DataInputStream in, Document doc, int sentID, String[] table, TreeFactory treeFactory) throws IOException
+	{
+		Sentence sent = new Sentence(doc, sentID);
+		int sentStart = unzigzag(readVarint(in));
+		Span extent = new Span(sentStart, sentStart + unzigzag(readVarint(in)));
+		sent.setExtent(extent);
+
+		int length = readVarint(in);
+		String[] tokens = new String[length];
+		String[] posTags = new String[length];
+		String[] chunks = new String[length];
+		Span[] tokenSpans = new Span[length];
+		TokenTable tokenFeatureMaps = new TokenTable(doc.getStrings(), length);
+		for(int i=0; i<length; i++)
+		{
+			int start = sentStart + unzigzag(readVarint(in));
+			tokenSpans[i] = new Span(start, start + unzigzag(readVarint(in)));
+			tokens[i] = table[readVarint(in)];
+			posTags[i] = table[readVarint(in)];
+			chunks[i] = table[readVarint(in)];
+			String lemma = table[readVarint(in)];
+			String nomlexBase = table[readVarint(in)];
+
+			// the same annotations as TextFeatureGenerator.doPreprocess()
+			Map<Class<?>, Object> map = tokenFeatureMaps.addToken();
+			map.put(TokenAnnotations.TextAnnotation.class, tokens[i]);
+			map.put(TokenAnnotations.PartOfSpeechAnnotation.class, posTags[i]);
+			map.put(TokenAnnotations.LemmaAnnotation.class, lemma);
+			map.put(TokenAnnotations.ChunkingAnnotation.class, chunks[i]);
+			map.put(TokenAnnotations.SpanAnnotation.class, tokenSpans[i]);
+			if(nomlexBase != null)
+			{
+				map.put(TokenAnnotations.NomlexbaseAnnotation.class, nomlexBase);
+			}
+		}
+		sent.put(Sent_Attribute.TOKEN_SPANS, tokenSpans);
+		sent.put(Sent_Attribute.TOKENS, tokens);
+		sent.put(Sent_Attribute.POSTAGS, posTags);
+		sent.put(Sent_Attribute.CHUNKS, chunks);
+		sent.put(Sent_Attribute.ChunkStructure, TextFeatureGenerator.getChunkStructure(chunks));
+		sent.put(Sent_Attribute.Token_FEATURE_MAPs, tokenFeatureMaps);
+
+		Tree tree = readTree(in, table, treeFactory);
+		if(tree != null)
+		{
+			sent.put(Sent_Attribute.ParseTree, tree);
+		}
+		DependencyGraph graph = readGraph(in, table);
+		if(graph != null)
+		{
+			sent.put(Sent_Attribute.DepGraph, graph);
+		}
+		return sent;
+	}
+
+	/**
+	 * a tree in pre-order: label, number of children (0 for a leaf)
+	 * @param out
+	 * @param tree
+	 * @param table
+	 * @throws IOException
+	 */
+	protected void writeTree(DataOutputStream out, Tree tree, StringTable table) throws IOException
+	{
+		out.writeBoolean(tree != null);
+		if(tree != null)
+		{
+			writeTreeNode(out, tree, table);
+		}
+	}
+
+	private void writeTreeNode(DataOutputStream out, Tree node, StringTable table) throws IOException
+	{
+		Tree[] children = node.children();
+		writeVarint(out, table.id(node.value()));
+		writeVarint(out, children.length);
+		for(Tree child : children)
+		{
+			writeTreeNode(out, child, table);
+		}
+	}
+
+	protected Tree readTree(DataInputStream in, String[] table, TreeFactory treeFactory) throws IOException
+	{
+		if(!in.readBoolean())
+		{
+			return null;
+		}
+		return readTreeNode(in, table, treeFactory);
+	}
+
+	private Tree readTreeNode(DataInputStream in, String[] table, TreeFactory treeFactory) throws IOException
+	{
+		String label = table[readVarint(in)];
+		int numChildren = readVarint(in);
+		if(numChildren == 0)
+		{
+			return treeFactory.newLeaf(label);
+		}
+		List<Tree> children = new ArrayList<Tree>(numChildren);
+		for(int i=0; i<numChildren; i++)
+		{
+			children.add(readTreeNode(in, table, treeFactory));
+		}
+		return treeFactory.newTreeNode(label, children);
+	}
+
+	/**
+	 * a graph as its root, a table of edges, and the edge ids of each vertex
+	 * (an edge is shared by its governor and dependent, and the order of edges of each vertex is kept)
+	 * @param out
+	 * @param graph
+	 * @param table
+	 * @throws IOException
+	 */
+	protected void writeGraph(DataOutputStream out, DependencyGraph graph, StringTable table) throws IOException
+	{
+		out.writeBoolean(graph != null);
+		if(graph == null)
+		{
+			return;
+		}
+		Map<GraphEdge, Integer> edgeIds = new IdentityHashMap<GraphEdge, Integer>();
+		List<GraphEdge> edges = new ArrayList<GraphEdge>();
+		for(GraphNode vertex : graph.getVertices())
+		{
+			for(GraphEdge edge : vertex.getEdges())
+			{
+				if(!edgeIds.containsKey(edge))
+				{
+					edgeIds.put(edge, edges.size());
+					edges.add(edge);
+				}
+			}
+		}
+		writeVarint(out, zigzag(graph.getRoot()));
+		writeVarint(out, edges.size());
+		for(GraphEdge edge : edges)
+		{
+			writeVarint(out, zigzag(edge.getGovernor()));
+			writeVarint(out, zigzag(edge.getDependent()));
+			writeVarint(out, table.id(edge.getRelation()));
+		}
+		writeVarint(out, graph.getVertices().size());
+		for(GraphNode vertex : graph.getVertices())
+		{
+			writeVarint(out, vertex.getEdges().size());
+			for(GraphEdge edge : vertex.getEdges())
+			{
+				writeVarint(out, edgeIds.get(edge));
+			}
+		}
+	}
+
+	protected DependencyGraph readGraph(DataInputStream in, String[] table) throws IOException
+	{
+		if(!in.readBoolean())
+		{
+			return null;
+		}
+		DependencyGraph graph = new DependencyGraph();
+		graph.setRoot(unzigzag(readVarint(in)));
+		GraphEdge[] edges = new GraphEdge[readVarint(in)];
+		for(int i=0; i<edges.length; i++)
+		{
+			int governor = unzigzag(readVarint(in));
+			int dependent = unzigzag(readVarint(in));
+			edges[i] = new GraphEdge(governor, dependent, table[readVarint(in)]);
+		}
+		int numVertices = readVarint(in);
+		graph.getVertices().setSize(numVertices);
+		for(int i=0; i<numVertices; i++)
+		{
+			GraphNode vertex = new GraphNode(i);
+			int numEdges = readVarint(in);
+			for(int j=0; j<numEdges; j++)
+			{
+				vertex.getEdges().add(edges[readVarint(in)]);
+			}
+			graph.getVertices().set(i, vertex);
+		}
+		return graph;
+	}
+
+	static public int zigzag(int value)
+	{
+		return (value << 1) ^ (value >> 31);
+	}
+
+	static public int unzigzag(int value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	static public void writeVarint(DataOutputStream out, int value) throws IOException
+	{
+		while((value & ~0x7f) != 0)
+		{
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	static public int readVarint(DataInputStream in) throws IOException
+	{
+		int value = 0;
+		for(int shift = 0; shift < 32; shift += 7)
+		{
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			if((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new IOException("malformed varint");
+	}
+
+	/**
+	 * a nullable string of any length, as a varint (length + 1, 0 for null) and UTF-8 bytes
+	 * @param out
+	 * @param str
+	 * @throws IOException
+	 */
+	static public void writeString(DataOutputStream out, String str) throws IOException
+	{
+		if(str == null)
+		{
+			writeVarint(out, 0);
+			return;
+		}
+		byte[] bytes = str.getBytes("UTF-8");
+		writeVarint(out, bytes.length + 1);
+		out.write(bytes);
+	}
+
+	static public String readString(DataInputStream in) throws IOException
+	{
+		int length = readVarint(in);
+		if(length == 0)
+		{
+			return null;
+		}
+		byte[] bytes = new byte[length - 1];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+}
@@ -0,0 +1,330 @@
+package commons;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * preprocess the documents of a file list (read ACE files, sentence splitting, tokenization,
+ * POS tagging, chunking, parsing and text features) in a bounded thread pool
+ *
+ * documents are returned in the order of the file list, and at most window documents are
+ * in flight (or waiting to be consumed) at any time, so that memory stays bounded.
+ * an exception in one document is kept in its Result, and doesn't stop the others,
+ * check(result) throws it, unless failed documents are skipped by -DpreprocessSkipErrors=true
+ *
+ * the number of threads is given by -DpreprocessThreads=N (default: the number of processors),
+ * with N=1 every document is processed in the calling thread, as before
+ */
+public class DocumentPreprocessor
+{
+	static public final String ThreadsProperty = "preprocessThreads";
+	static public final String SkipErrorsProperty = "preprocessSkipErrors";
+
+	/**
+	 * the result of preprocessing one line of the file list
+	 */
+	public static class Result
+	{
+		// the line in the file list, e.g. bn/CNN_ENG_20030304_173120.16
+		public final String line;
+		public final String fileName;
+		// null if preprocessing failed
+		public final Document doc;
+		public final Throwable error;
+
+		Result(String line, String fileName, Document doc, Throwable error)
+		{
+			this.line = line;
+			this.fileName = fileName;
+			this.doc = doc;
+			this.error = error;
+		}
+	}
+
+	protected File srcDir;
+	protected boolean hasLabel;
+	protected TextFeatureGenerator featGen;
+	protected int numThreads;
+	protected int window;
+	protected ExecutorService executor = null;
+	// whether a failed document is reported and skipped, instead of failing the run
+	protected boolean skipErrors = Boolean.getBoolean(SkipErrorsProperty);
+
+	public DocumentPreprocessor(File srcDir, boolean hasLabel)
+	{
+		this(srcDir, hasLabel, new TextFeatureGenerator(), getDefaultThreads());
+	}
+
+	public DocumentPreprocessor(File srcDir, boolean hasLabel, TextFeatureGenerator featGen, int numThreads)
+	{
+		this(srcDir, hasLabel, featGen, numThreads, 2 * numThreads);
+	}
+
+	/**
+	 * @param srcDir source dir of the file list
+	 * @param hasLabel whether the documents have APF annotations
+	 * @param featGen shared by all threads, it's read-only after construction
+	 * @param numThreads size of the thread pool
+	 * @param window max number of documents that are in flight or not yet consumed
+	 */
+	public DocumentPreprocessor(File srcDir, boolean hasLabel, TextFeatureGenerator featGen, int numThreads, int window)
+	{
+		this.srcDir = srcDir;
+		this.hasLabel = hasLabel;
+		this.featGen = featGen;
+		this.numThreads = Math.max(1, numThreads);
+		this.window = Math.max(this.numThreads, window);
+	}
+
+	static public int getDefaultThreads()
+	{
+		String value = System.getProperty(ThreadsProperty);
+		if(value != null)
+		{
+			try
+			{
+				return Math.max(1, Integer.parseInt(value.trim()));
+			}
+			catch(NumberFormatException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * read the non-empty lines of a file list
+	 * @param fileList
+	 * @return
+	 * @throws IOException
+	 */
+	static public List<String> readFileList(File fileList) throws IOException
+	{
+		List<String> ret = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(fileList));
+		String line = "";
+		while((line = reader.readLine()) != null)
+		{
+			if(line.trim().length() > 0)
+			{
+				ret.add(line);
+			}
+		}
+		reader.close();
+		return ret;
+	}
+
+	public String getFileName(String line)
+	{
+		return srcDir + File.separator + line;
+	}
+
+	/**
+	 * make a Document for one line of the file list, and fill in its text features
+	 * @param line
+	 * @return
+	 * @throws Exception
+	 */
+	protected Document preprocess(String line) throws Exception
+	{
+		boolean monoCase = line.contains("bn/") ? true : false;
+		Document doc = new Document(getFileName(line), hasLabel, monoCase);
+		// fill in text feature vector for each token
+		featGen.fillTextFeatures(doc);
+		return doc;
+	}
+
+	protected Result preprocessSafely(String line)
+	{
+		try
+		{
+			return new Result(line, getFileName(line), preprocess(line), null);
+		}
+		catch(Exception e)
+		{
+			return new Result(line, getFileName(line), null, e);
+		}
+		catch(StackOverflowError e)
+		{
+			// e.g. the parser on a pathological sentence
+			return new Result(line, getFileName(line), null, e);
+		}
+	}
+
+	/**
+	 * preprocess the documents of a file list, the results are in the order of the file list
+	 * @param lines
+	 * @return
+	 */
+	public Iterator<Result> process(final List<String> lines)
+	{
+		if(numThreads == 1)
+		{
+			return new Iterator<Result>()
+			{
+				int next = 0;
+
+				public boolean hasNext()
+				{
+					return next < lines.size();
+				}
+
+				public Result next()
+				{
+					if(!hasNext())
+					{
+						throw new NoSuchElementException();
+					}
+					return preprocessSafely(lines.get(next++));
+				}
+
+				public void remove()
+				{
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		final ExecutorService executor = getExecutor();
+		return new Iterator<Result>()
+		{
+			// futures of the documents in flight, in the order of the file list
+			LinkedList<Future<Result>> pending = new LinkedList<Future<Result>>();
+			int submitted = 0;
+			int consumed = 0;
+
+			{
+				fill();
+			}
+
+			void fill()
+			{
+				while(submitted < lines.size() && pending.size() < window)
+				{
+					final String line = lines.get(submitted++);
+					pending.add(executor.submit(new Callable<Result>()
+					{
+						public Result call()
+						{
+							return preprocessSafely(line);
+						}
+					}));
+				}
+			}
+
+			public boolean hasNext()
+			{
+				return consumed < lines.size();
+			}
+
+			public Result next()
+			{
+				if(!hasNext())
+				{
+					throw new NoSuchElementException();
+				}
+				String line = lines.get(consumed++);
+				Future<Result> future = pending.removeFirst();
+				Result result;
+				try
+				{
+					result = future.get();
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					result = new Result(line, getFileName(line), null, e);
+				}
+				catch(ExecutionException e)
+				{
+					result = new Result(line, getFileName(line), null, e.getCause());
+				}
+				fill();
+				return result;
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	public void setSkipErrors(boolean skipErrors)
+	{
+		this.skipErrors = skipErrors;
+	}
+
+	/**
+	 * check the result of a document
+	 * @param result
+	 * @return true if the document is preprocessed, false if it failed and is skipped
+	 * @throws IOException the error of the document, if failed documents are not skipped
+	 */
+	public boolean check(Result result) throws IOException
+	{
+		if(result.error == null)
+		{
+			return true;
+		}
+		if(!skipErrors)
+		{
+			throw new IOException("failed to preprocess " + result.fileName, result.error);
+		}
+		report(result);
+		return false;
+	}
+
+	/**
+	 * print the error of a failed document
+	 * @param result
+	 */
+	static public void report(Result result)
+	{
+		System.err.println("failed to preprocess " + result.fileName + ", skipped");
+		result.error.printStackTrace();
+	}
+
+	protected synchronized ExecutorService getExecutor()
+	{
+		if(executor == null)
+		{
+			final AtomicInteger count = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "preprocess-" + count.incrementAndGet());
+					// don't keep the JVM alive if shutdown() is not called
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	public synchronized void shutdown()
+	{
+		if(executor != null)
+		{
+			executor.shutdown();
+			executor = null;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package commons;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import util.Span;
+
+import ace.acetypes.AceMention;
+
+/**
+ * an interval index of the mentions of a document by their extents, so that the mentions
+ * of a sentence are found by binary search instead of a scan of all mentions
+ *
+ * mentions are sorted by start offset, and maxEnd[k] is the largest end offset of the first k+1 of them,
+ * so a query only visits the mentions that start before the end of the sentence, back to the first one
+ * that can still reach the sentence
+ */
+public class MentionIndex
+{
+	protected List<?> mentions;
+	// the positions of the mentions in the list, sorted by start offset
+	protected Integer[] order;
+	protected int[] starts;
+	protected int[] maxEnds;
+
+	/**
+	 * @param mentions the objects that are not AceMention are ignored
+	 */
+	public MentionIndex(List<?> mentions)
+	{
+		this.mentions = mentions;
+		List<Integer> positions = new ArrayList<Integer>();
+		for(int i=0; i<mentions.size(); i++)
+		{
+			Object obj = mentions.get(i);
+			if(obj instanceof AceMention && ((AceMention) obj).extent != null)
+			{
+				positions.add(i);
+			}
+		}
+		order = positions.toArray(new Integer[positions.size()]);
+		final List<?> list = mentions;
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			public int compare(Integer i, Integer j)
+			{
+				int start1 = ((AceMention) list.get(i)).extent.start();
+				int start2 = ((AceMention) list.get(j)).extent.start();
+				return start1 < start2 ? -1 : (start1 == start2 ? i.compareTo(j) : 1);
+			}
+		});
+
+		starts = new int[order.length];
+		maxEnds = new int[order.length];
+		for(int k=0; k<order.length; k++)
+		{
+			Span extent = ((AceMention) mentions.get(order[k])).extent;
+			starts[k] = extent.start();
+			maxEnds[k] = k == 0 ? extent.end() : Math.max(maxEnds[k-1], extent.end());
+		}
+	}
+
+	/**
+	 * the number of mentions in the list when the index was built
+	 * @return
+	 */
+	public int size()
+	{
+		return mentions.size();
+	}
+
+	/**
+	 * the mentions that overlap with span, in the order of the list
+	 * @param span
+	 * @return
+	 */
+	public List<Object> getOverlapping(Span span)
+	{
+		// the first mention that starts after the span
+		int low = 0;
+		int high = starts.length;
+		while(low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if(starts[mid] <= span.end())
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+
+		List<Integer> positions = new ArrayList<Integer>();
+		for(int k=low-1; k>=0 && maxEnds[k] >= span.start(); k--)
+		{
+			AceMention mention = (AceMention) mentions.get(order[k]);
+			if(span.overlap(mention.extent))
+			{
+				positions.add(order[k]);
+			}
+		}
+		Integer[] sorted = positions.toArray(new Integer[positions.size()]);
+		Arrays.sort(sorted);
+
+		List<Object> ret = new ArrayList<Object>(sorted.length);
+		for(Integer position : sorted)
+		{
+			ret.add(mentions.get(position));
+		}
+		return ret;
+	}
+}
@@ -128,27 +128,14 @@ public class Sentence
 	}
 	
 	/**
-	 * fill ace annotations to the sentence 
-	 * @param eventMentions2
-	 * @param eventMentions3
-	 * @param class1
+	 * fill ace annotations to the sentence, i.e. the mentions that are overlapped with the sent
+	 * the mentions are looked up in the interval index of the document, in the order of the list
+	 * @param mentions
+	 * @param sentMentions
 	 */
 	private void fillMentions2Sent(List mentions, List sentMentions)
 	{
-		for(Object obj : mentions)
-		{
-			if(obj instanceof AceMention)
-			{
-				AceMention mention = (AceMention) obj;
-				Span mention_extent = mention.extent;
-				
-				// if the mention is overlapped with the sent, add it to the sent 
-				if(extent.overlap(mention_extent))
-				{
-					sentMentions.add(mention);
-				}
-			}
-		}	
+		sentMentions.addAll(doc.getMentionIndex(mentions).getOverlapping(extent));
 	}
 
 	public Object get(Sent_Attribute key)
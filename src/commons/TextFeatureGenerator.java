@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -15,12 +16,14 @@ import java.util.Vector;
 
 import util.BrownClusterOriginal;
 import util.ChunkWrapper;
+import util.FeatureProfiler;
 import util.FrameNet;
 import util.Nomlex;
 import util.POSTaggerWrapperStanford;
 import util.ParserWrapper;
 import util.Span;
 import util.TokenAnnotations;
+import util.TriggerLexicon;
 import util.TypeConstraints;
 import util.WordNetWrapper;
 import util.ParserWrapper.ParseResult;
@@ -110,11 +113,11 @@ public class TextFeatureGenerator
 						posTags);
 				sent.put(Sent_Attribute.CHUNKS, chunks);
 
-				List<Map<Class<?>, Object>> tokenFeatureMaps = new ArrayList<Map<Class<?>, Object>>();
+				TokenTable tokenFeatureMaps = new TokenTable(doc.getStrings(), tokenSpans.length);
 				sent.put(Sent_Attribute.Token_FEATURE_MAPs, tokenFeatureMaps);
 				for (int idx = 0; idx < tokenSpans.length; idx++)
 				{
-					HashMap<Class<?>, Object> map = new HashMap<Class<?>, Object>();
+					Map<Class<?>, Object> map = tokenFeatureMaps.addToken();
 					// change the first token in each sentence to lowercase
 					if (idx == 0 && tokens[0] != null
 							&& Character.isUpperCase(tokens[0].charAt(0)))
@@ -130,7 +133,6 @@ public class TextFeatureGenerator
 							lemma.toLowerCase());
 					map.put(TokenAnnotations.SpanAnnotation.class,
 							tokenSpans[idx]);
-					tokenFeatureMaps.add(map);
 				}
 				// fill in ace annotations such as event/relation/entity mentions
 				sent.fillAceAnnotaions();
@@ -147,6 +149,17 @@ public class TextFeatureGenerator
 
 	public static void doPreprocess(Document doc)
 	{
+		// loaded from DocumentCache, only the ace annotations are needed
+		if (doc.isPreprocessed())
+		{
+			for (Sentence sent : doc.getSentences())
+			{
+				sent.fillAceAnnotaions();
+			}
+			return;
+		}
+
+		boolean complete = true;
 		for (Sentence sent : doc.getSentences())
 		{
 			String[] tokens = (String[]) sent.get(Sent_Attribute.TOKENS);
@@ -159,52 +172,33 @@ public class TextFeatureGenerator
 						.posTag(tokens);
 				sent.put(Sent_Attribute.POSTAGS, posTags);
 
-				// get parse/deps tree
-				ParseResult parse = ParserWrapper.getParserWrapper()
-						.getTypedDeps(tokens);
-				// create dependency graph representation, in order to faciliate graph manupulation
-				Collection<TypedDependency> tdl = parse.deps;
-				DependencyGraph graph = new DependencyGraph(tdl, tokens.length);
-				sent.put(Sentence.Sent_Attribute.DepGraph, graph);
-				sent.put(Sent_Attribute.ParseTree, parse.tree);
-
 				// get chunks
 				String[] chunks = ChunkWrapper.getChunker().chunk(tokens,
 						posTags);
 				sent.put(Sent_Attribute.CHUNKS, chunks);
 
-				// parse chunk tags into structure
-				List<List<Object>> chunk_structure = new ArrayList<List<Object>>();
-				List<Integer> phrase = null;
-				for (int i = 0; i < chunks.length; i++)
+				// get parse/deps tree, sentences that are too long or over the time budget
+				// fall back to a structure from the chunks
+				ParseResult parse = ParserWrapper.getParserWrapper()
+						.getParseResult(tokens, posTags, chunks);
+				// the dependency graph representation, in order to faciliate graph manupulation
+				sent.put(Sentence.Sent_Attribute.DepGraph, parse.graph);
+				sent.put(Sent_Attribute.ParseTree, parse.tree);
+				if (ParserWrapper.TimedOut.equals(parse.degraded))
 				{
-					if (chunks[i].equals("O"))
-					{
-						phrase = null;
-						continue;
-					}
-					if (chunks[i].startsWith("B"))
-					{
-						phrase = new ArrayList<Integer>();
-						phrase.add(i);
-						String type = chunks[i].substring(2);
-						List<Object> new_entry = new ArrayList<Object>();
-						new_entry.add(type);
-						new_entry.add(phrase);
-						chunk_structure.add(new_entry);
-					}
-					else if (phrase != null)
-					{
-						phrase.add(i);
-					}
+					// depends on the machine load, so don't cache it
+					complete = false;
 				}
-				sent.put(Sent_Attribute.ChunkStructure, chunk_structure);
 
-				List<Map<Class<?>, Object>> tokenFeatureMaps = new ArrayList<Map<Class<?>, Object>>();
+				// parse chunk tags into structure
+				sent.put(Sent_Attribute.ChunkStructure,
+						getChunkStructure(chunks));
+
+				TokenTable tokenFeatureMaps = new TokenTable(doc.getStrings(), tokenSpans.length);
 				sent.put(Sent_Attribute.Token_FEATURE_MAPs, tokenFeatureMaps);
 				for (int idx = 0; idx < tokenSpans.length; idx++)
 				{
-					HashMap<Class<?>, Object> map = new HashMap<Class<?>, Object>();
+					Map<Class<?>, Object> map = tokenFeatureMaps.addToken();
 					// change the first token in each sentence to lowercase
 					if (idx == 0 && tokens[0] != null
 							&& Character.isUpperCase(tokens[0].charAt(0)))
@@ -239,8 +233,6 @@ public class TextFeatureGenerator
 									comlexBase);
 						}
 					}
-
-					tokenFeatureMaps.add(map);
 				}
 				// fill in ace annotations such as event/relation/entity mentions
 				sent.fillAceAnnotaions();
@@ -248,8 +240,49 @@ public class TextFeatureGenerator
 			catch (IOException e)
 			{
 				e.printStackTrace();
+				complete = false;
 			}
 		}
+
+		// save the preprocessed document for the next runs
+		if (complete && doc.getCacheKey() != null)
+		{
+			DocumentCache.getSingleton().save(doc, doc.getCacheKey());
+		}
+	}
+
+	/**
+	 * parse chunk tags (e.g. B-NP I-NP O) into structure: a list of (type, token indices)
+	 * @param chunks
+	 * @return
+	 */
+	static List<List<Object>> getChunkStructure(String[] chunks)
+	{
+		List<List<Object>> chunk_structure = new ArrayList<List<Object>>();
+		List<Integer> phrase = null;
+		for (int i = 0; i < chunks.length; i++)
+		{
+			if (chunks[i].equals("O"))
+			{
+				phrase = null;
+				continue;
+			}
+			if (chunks[i].startsWith("B"))
+			{
+				phrase = new ArrayList<Integer>();
+				phrase.add(i);
+				String type = chunks[i].substring(2);
+				List<Object> new_entry = new ArrayList<Object>();
+				new_entry.add(type);
+				new_entry.add(phrase);
+				chunk_structure.add(new_entry);
+			}
+			else if (phrase != null)
+			{
+				phrase.add(i);
+			}
+		}
+		return chunk_structure;
 	}
 
 	protected static void fillClauseNumber(Document doc)
@@ -505,7 +538,7 @@ public class TextFeatureGenerator
 					index = edge.getDependent();
 					label = "Dep";
 				}
-				Vector<String> dep_features = (Vector<String>) current_token
+				List<String> dep_features = (List<String>) current_token
 						.get(TokenAnnotations.DependencyAnnotation.class);
 				if (dep_features == null)
 				{
@@ -558,47 +591,6 @@ public class TextFeatureGenerator
 		}
 	}
 
-	protected static Vector<String> getConjuctionFeatureSingleVector(
-			List<Map<Class<?>, Object>> sent, int i, Class<?> featureType,
-			String featureName, int position)
-	{
-		Vector<String> ret = new Vector<String>();
-
-		if (i >= sent.size() || i < 0)
-		{
-			return null;
-		}
-		position = (position + i);
-
-		// hit margins of a sentence, then pick up Padding to feed the feature
-		if (position >= sent.size())
-		{
-			return ret;
-		}
-		else if (position < 0)
-		{
-			return ret;
-		}
-		else
-		{
-			Vector<String> temp = (Vector<String>) sent.get(position).get(
-					featureType);
-			if (temp == null)
-			{
-				return ret;
-			}
-			else
-			{
-				for (String value : temp)
-				{
-					ret.add(featureName + "=" + value);
-				}
-			}
-
-		}
-		return ret;
-	}
-
 	/**
 	 * fill in features for a Document doc
 	 * this is only API provided by this class, derived class should Override this method
@@ -607,20 +599,37 @@ public class TextFeatureGenerator
 	 */
 	public void fillTextFeatures(Document doc) throws IOException
 	{
+		final String stage = "TextFeatureGenerator";
+		long start = FeatureProfiler.start();
 		/* 预处理提取pos, lemma, 句法，依存，chunk, Nomlex */
 		doPreprocess(doc);
+		FeatureProfiler.record(stage, "doPreprocess", start, 0);
+		start = FeatureProfiler.start();
 		/* 局部特征：第一个上位词； 最常见意思的同义词表；brown聚类；Frame */
 		fillFeatures_local(doc);
+		FeatureProfiler.record(stage, "fillFeatures_local", start, 0);
+		start = FeatureProfiler.start();
 		/* 实体特征：1.entity；2.value；3.timex；4.title，是保存在doc中sent的token中*/
 		fillEntityInformation(doc);
+		FeatureProfiler.record(stage, "fillEntityInformation", start, 0);
+		start = FeatureProfiler.start();
 		/* 提取基本的依存特征，仅考虑依存节点的词形、词性、实体 */
 		fillDependencyFeatures(doc);
+		FeatureProfiler.record(stage, "fillDependencyFeatures", start, 0);
+		start = FeatureProfiler.start();
 		/* 最近实体特征：1.依存句法上最近；2.物理距离上 */
 		fillNearestEntityInformation(doc);
+		FeatureProfiler.record(stage, "fillNearestEntityInformation", start, 0);
+		start = FeatureProfiler.start();
 		/* 在同一子句特征的序号  */
 		fillClauseNumber(doc);
+		FeatureProfiler.record(stage, "fillClauseNumber", start, 0);
+		start = FeatureProfiler.start();
 		/* 获得句子聚类中高置信度的事件类型 */
 		fillFeaturesFromSentCluster(doc);
+		FeatureProfiler.record(stage, "fillFeaturesFromSentCluster", start, 0);
+		/* all features are in, move the token annotations into compact columns */
+		TokenTable.compact(doc);
 	}
 
 	/**
@@ -815,102 +824,101 @@ public class TextFeatureGenerator
 	 */
 	static List<String> getPotentialEventTypes(String lemma)
 	{
-		List<String> ret = new ArrayList<String>();
-		for (String eventType : Document.triggerTokensFineGrained.keySet())
-		{
-			if (Document.triggerTokensFineGrained.get(eventType)
-					.contains(lemma))
-			{
-				ret.add(eventType);
-			}
-		}
-
-		return ret;
+		return TriggerLexicon.getSingleton().getSubTypes(lemma,
+				TriggerLexicon.THRESHOLD_ALL);
 	}
 
 	static List<String> getPotentialEventTypesHighConf(String lemma)
 	{
-		List<String> ret = new ArrayList<String>();
-		for (String eventType : Document.triggerTokensHighQuality.keySet())
-		{
-			if (Document.triggerTokensHighQuality.get(eventType)
-					.contains(lemma))
-			{
-				ret.add(eventType);
-			}
-		}
-
-		return ret;
+		return TriggerLexicon.getSingleton().getSubTypes(lemma,
+				TriggerLexicon.THRESHOLD_HIGH_QUALITY);
 	}
 
 	/**
-	 * get a list of features based on the cluster of sents
+	 * get a list of features based on the cluster of sents: for a token that can trigger a subtype,
+	 * the pairs "highConfSubtype#subtype" where highConfSubtype is triggered with high confidence
+	 * by another sent of the cluster and has the same coarse type
+	 *
+	 * the high confidence subtypes of each sent are a BitSet, so the subtypes of the other sents
+	 * are a union of BitSets (from prefix/suffix unions), and the features are their intersections
+	 * with the subtypes of the token, instead of comparing the token with every token of the cluster
 	 * @return
 	 */
 	protected void fillFeaturesFromSentCluster(Document doc)
 	{
 		// set the cluster in advance
 		doc.setSentenceClustersByTokens();
+		TriggerLexicon lexicon = TriggerLexicon.getSingleton();
 
 		for (List<Sentence> cluster : doc.getSentenceClusters())
 		{
-			for (int sent_id = 0; sent_id < cluster.size(); sent_id++)
+			int size = cluster.size();
+			TokenTable[] tables = new TokenTable[size];
+			BitSet[] highConf = new BitSet[size];
+			for (int sent_id = 0; sent_id < size; sent_id++)
 			{
-				Sentence sent = cluster.get(sent_id);
-				List<Map<Class<?>, Object>> tokens = (List<Map<Class<?>, Object>>) sent
-						.get(Sent_Attribute.Token_FEATURE_MAPs);
-
-				for (int token_id = 0; token_id < tokens.size(); token_id++)
+				tables[sent_id] = TokenTable.of((List<Map<Class<?>, Object>>) cluster
+						.get(sent_id).get(Sent_Attribute.Token_FEATURE_MAPs));
+				highConf[sent_id] = new BitSet(lexicon.numSubTypes());
+				for (int j = 0; j < tables[sent_id].size(); j++)
 				{
-					String lemma = (String) tokens.get(token_id).get(
+					String lemma = tables[sent_id].getString(j,
 							TokenAnnotations.LemmaAnnotation.class);
-					List<String> eventTypes = getPotentialEventTypes(lemma);
+					highConf[sent_id].or(lexicon.getSubTypeIds(lemma,
+							TriggerLexicon.THRESHOLD_HIGH_QUALITY));
+				}
+			}
+			// suffix[i] is the union of highConf[i...]
+			BitSet[] suffix = new BitSet[size + 1];
+			suffix[size] = new BitSet(lexicon.numSubTypes());
+			for (int sent_id = size - 1; sent_id >= 0; sent_id--)
+			{
+				suffix[sent_id] = (BitSet) suffix[sent_id + 1].clone();
+				suffix[sent_id].or(highConf[sent_id]);
+			}
+
+			BitSet prefix = new BitSet(lexicon.numSubTypes());
+			for (int sent_id = 0; sent_id < size; sent_id++)
+			{
+				// high confidence subtypes of the other sents
+				BitSet others = (BitSet) prefix.clone();
+				others.or(suffix[sent_id + 1]);
+				prefix.or(highConf[sent_id]);
 
+				TokenTable tokens = tables[sent_id];
+				for (int token_id = 0; token_id < tokens.size(); token_id++)
+				{
 					List<String> features = new ArrayList<String>();
-					tokens.get(token_id)
-							.put(TokenAnnotations.HighConfidenceTriggerInCluster.class,
-									features);
+					tokens.put(token_id,
+							TokenAnnotations.HighConfidenceTriggerInCluster.class,
+							features);
 
+					String lemma = tokens.getString(token_id,
+							TokenAnnotations.LemmaAnnotation.class);
+					BitSet eventTypes = lexicon.getSubTypeIds(lemma,
+							TriggerLexicon.THRESHOLD_ALL);
 					// skip if doesn't match event types
-					if (eventTypes.size() == 0)
+					if (eventTypes.isEmpty() || others.isEmpty())
 					{
 						continue;
 					}
 
-					for (int i = 0; i < cluster.size(); i++)
+					for (int pre = others.nextSetBit(0); pre >= 0; pre = others
+							.nextSetBit(pre + 1))
 					{
-						if (i != sent_id)
+						int type = lexicon.getTypeIdOfSubType(pre);
+						if (type < 0)
+						{
+							continue;
+						}
+						// subtypes of the token with the same coarse type
+						BitSet matched = (BitSet) eventTypes.clone();
+						matched.and(lexicon.getSubTypeIdsOfType(type));
+						for (int eventType = matched.nextSetBit(0); eventType >= 0; eventType = matched
+								.nextSetBit(eventType + 1))
 						{
-							Sentence anotherSent = cluster.get(i);
-							List<Map<Class<?>, Object>> pre_tokens = (List<Map<Class<?>, Object>>) anotherSent
-									.get(Sent_Attribute.Token_FEATURE_MAPs);
-							for (int j = 0; j < pre_tokens.size(); j++)
-							{
-								String pre_lemma = (String) pre_tokens
-										.get(j)
-										.get(TokenAnnotations.LemmaAnnotation.class);
-								List<String> pre_eventTypes = getPotentialEventTypesHighConf(pre_lemma);
-								for (String pre_eventType : pre_eventTypes)
-								{
-									String pre_eventSuperType = TypeConstraints.eventTypeMapModified
-											.get(pre_eventType);
-									for (String eventType : eventTypes)
-									{
-										String eventSuperType = TypeConstraints.eventTypeMapModified
-												.get(eventType);
-										if (pre_eventSuperType
-												.equals(eventSuperType))
-										{
-											String feature = pre_eventType
-													+ "#" + eventType;
-											if (!features.contains(feature))
-											{
-												features.add(feature);
-											}
-										}
-									}
-								}
-							}
+							features.add(lexicon.getSubTypeName(pre) + "#"
+									+ lexicon.getSubTypeName(eventType));
 						}
 					}
 				}
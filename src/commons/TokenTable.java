@@ -0,0 +1,889 @@
+package commons;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import util.Span;
+
+/**
+ * the token annotations of a sentence, stored by columns (struct of arrays) instead of one HashMap per token:
+ * String annotations (text, lemma, POS, chunk, Brown cluster ...) are int ids of a string pool,
+ * Span and Integer annotations are int arrays, and collections of Strings (synonyms, frames, dependency features ...)
+ * are offset-indexed id arrays after compact()
+ *
+ * for the existing code, the table is also a List<Map<Class<?>, Object>> (Sent_Attribute.Token_FEATURE_MAPs),
+ * where each Map is a view of one row, so feature generators can move to the typed accessors
+ * (getId, getString, getNumValues, getValueId ...) one at a time
+ *
+ * before compact(), a collection is kept as it was put, so it can be appended to after put (e.g. entity types);
+ * after compact(), Map.get returns a read-only List view of the values, changing it throws an exception
+ *
+ * the string pool is shared by the tables of a document (Document.getStrings()), and it's released with them
+ */
+public class TokenTable extends AbstractList<Map<Class<?>, Object>>
+{
+	// value of an int column where the annotation is absent
+	static public final int None = Integer.MIN_VALUE;
+
+	/**
+	 * the string pool of a document, the ids are stable during the life of the pool
+	 * ids are added under a lock, lookups by id are lock-free
+	 */
+	static public class StringPool
+	{
+		protected ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+		protected volatile String[] strings = new String[1024];
+		protected int size = 0;
+
+		public int id(String value)
+		{
+			Integer id = ids.get(value);
+			if(id != null)
+			{
+				return id;
+			}
+			synchronized(this)
+			{
+				id = ids.get(value);
+				if(id == null)
+				{
+					String[] array = strings;
+					if(size == array.length)
+					{
+						array = Arrays.copyOf(array, size * 2);
+					}
+					array[size] = value;
+					// the volatile write publishes the new entry
+					strings = array;
+					id = size++;
+					ids.put(value, id);
+				}
+				return id;
+			}
+		}
+
+		/**
+		 * @param id
+		 * @return null if the id is negative
+		 */
+		public String get(int id)
+		{
+			return id < 0 ? null : strings[id];
+		}
+
+		public int size()
+		{
+			return ids.size();
+		}
+	}
+
+	/**
+	 * a column of the table, i.e. the values of one annotation for all tokens
+	 */
+	protected static abstract class Column
+	{
+		// the string pool of the table
+		StringPool pool;
+
+		abstract Object get(int i);
+
+		/**
+		 * @param i
+		 * @param value not null
+		 * @return false if the value doesn't fit the type of this column
+		 */
+		abstract boolean set(int i, Object value);
+
+		abstract void remove(int i);
+
+		abstract boolean has(int i);
+
+		abstract void ensureCapacity(int capacity);
+
+		void compact(int size)
+		{
+			;
+		}
+	}
+
+	/**
+	 * String values as ids of the string pool
+	 */
+	protected static class IdColumn extends Column
+	{
+		int[] ids = new int[0];
+
+		Object get(int i)
+		{
+			return pool.get(ids[i]);
+		}
+
+		boolean set(int i, Object value)
+		{
+			if(!(value instanceof String))
+			{
+				return false;
+			}
+			ids[i] = pool.id((String) value);
+			return true;
+		}
+
+		void remove(int i)
+		{
+			ids[i] = -1;
+		}
+
+		boolean has(int i)
+		{
+			return ids[i] >= 0;
+		}
+
+		void ensureCapacity(int capacity)
+		{
+			int old = ids.length;
+			if(capacity > old)
+			{
+				ids = Arrays.copyOf(ids, capacity);
+				Arrays.fill(ids, old, capacity, -1);
+			}
+		}
+
+		void compact(int size)
+		{
+			ids = Arrays.copyOf(ids, size);
+		}
+	}
+
+	/**
+	 * Integer values
+	 */
+	protected static class IntColumn extends Column
+	{
+		int[] values = new int[0];
+
+		Object get(int i)
+		{
+			return values[i] == None ? null : Integer.valueOf(values[i]);
+		}
+
+		boolean set(int i, Object value)
+		{
+			if(!(value instanceof Integer) || (Integer) value == None)
+			{
+				return false;
+			}
+			values[i] = (Integer) value;
+			return true;
+		}
+
+		void remove(int i)
+		{
+			values[i] = None;
+		}
+
+		boolean has(int i)
+		{
+			return values[i] != None;
+		}
+
+		void ensureCapacity(int capacity)
+		{
+			int old = values.length;
+			if(capacity > old)
+			{
+				values = Arrays.copyOf(values, capacity);
+				Arrays.fill(values, old, capacity, None);
+			}
+		}
+
+		void compact(int size)
+		{
+			values = Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * Span values as start/end arrays
+	 */
+	protected static class SpanColumn extends Column
+	{
+		int[] starts = new int[0];
+		int[] ends = new int[0];
+
+		Object get(int i)
+		{
+			return starts[i] == None ? null : new Span(starts[i], ends[i]);
+		}
+
+		boolean set(int i, Object value)
+		{
+			if(!(value instanceof Span) || ((Span) value).start() == None)
+			{
+				return false;
+			}
+			starts[i] = ((Span) value).start();
+			ends[i] = ((Span) value).end();
+			return true;
+		}
+
+		void remove(int i)
+		{
+			starts[i] = None;
+		}
+
+		boolean has(int i)
+		{
+			return starts[i] != None;
+		}
+
+		void ensureCapacity(int capacity)
+		{
+			int old = starts.length;
+			if(capacity > old)
+			{
+				starts = Arrays.copyOf(starts, capacity);
+				ends = Arrays.copyOf(ends, capacity);
+				Arrays.fill(starts, old, capacity, None);
+			}
+		}
+
+		void compact(int size)
+		{
+			starts = Arrays.copyOf(starts, size);
+			ends = Arrays.copyOf(ends, size);
+		}
+	}
+
+	/**
+	 * collections of Strings, the values of token i are ids[offsets[i]] ... ids[offsets[i+1]-1] after compact(),
+	 * the collections that are put before compact() (or after it) are kept as they are in live
+	 */
+	protected static class MultiColumn extends Column
+	{
+		// the collections not yet compacted, null if compacted or absent
+		Object[] live = new Object[0];
+		// compacted values, offsets.length is the number of compacted rows + 1
+		int[] offsets = new int[]{0};
+		int[] ids = new int[0];
+		// whether a compacted row has a value (an empty collection is a value)
+		boolean[] present = new boolean[0];
+
+		Object get(int i)
+		{
+			if(live[i] != null)
+			{
+				return live[i];
+			}
+			if(i + 1 >= offsets.length || !present[i])
+			{
+				return null;
+			}
+			// a view of the compacted values, a change of it would be lost, so it's read-only
+			final int[] values = ids;
+			final int start = offsets[i];
+			final int end = offsets[i+1];
+			return Collections.unmodifiableList(new AbstractList<String>()
+			{
+				@Override
+				public String get(int j)
+				{
+					if(j < 0 || start + j >= end)
+					{
+						throw new IndexOutOfBoundsException("Index: " + j + ", Size: " + (end - start));
+					}
+					return pool.get(values[start + j]);
+				}
+
+				@Override
+				public int size()
+				{
+					return end - start;
+				}
+			});
+		}
+
+		boolean set(int i, Object value)
+		{
+			if(!(value instanceof Collection))
+			{
+				return false;
+			}
+			for(Object val : (Collection<?>) value)
+			{
+				if(val != null && !(val instanceof String))
+				{
+					return false;
+				}
+			}
+			live[i] = value;
+			return true;
+		}
+
+		void remove(int i)
+		{
+			live[i] = null;
+			if(i + 1 < offsets.length)
+			{
+				present[i] = false;
+			}
+		}
+
+		boolean has(int i)
+		{
+			return live[i] != null || (i + 1 < offsets.length && present[i]);
+		}
+
+		int size(int i)
+		{
+			if(live[i] != null)
+			{
+				return ((Collection<?>) live[i]).size();
+			}
+			if(i + 1 >= offsets.length)
+			{
+				return 0;
+			}
+			return offsets[i+1] - offsets[i];
+		}
+
+		int id(int i, int j)
+		{
+			if(live[i] != null)
+			{
+				// live collections are usually Lists
+				Collection<?> values = (Collection<?>) live[i];
+				if(values instanceof List)
+				{
+					return pool.id((String) ((List<?>) values).get(j));
+				}
+				return pool.id((String) values.toArray()[j]);
+			}
+			return ids[offsets[i] + j];
+		}
+
+		void ensureCapacity(int capacity)
+		{
+			if(capacity > live.length)
+			{
+				live = Arrays.copyOf(live, capacity);
+			}
+		}
+
+		/**
+		 * move all values into the offset-indexed arrays
+		 */
+		void compact(int size)
+		{
+			int total = 0;
+			for(int i=0; i<size; i++)
+			{
+				total += size(i);
+			}
+			int[] newOffsets = new int[size + 1];
+			int[] newIds = new int[total];
+			boolean[] newPresent = new boolean[size];
+			int k = 0;
+			for(int i=0; i<size; i++)
+			{
+				newOffsets[i] = k;
+				newPresent[i] = has(i);
+				if(live[i] != null)
+				{
+					for(Object val : (Collection<?>) live[i])
+					{
+						newIds[k++] = val == null ? -1 : pool.id((String) val);
+					}
+				}
+				else if(i + 1 < offsets.length)
+				{
+					for(int j=offsets[i]; j<offsets[i+1]; j++)
+					{
+						newIds[k++] = ids[j];
+					}
+				}
+			}
+			newOffsets[size] = k;
+			offsets = newOffsets;
+			ids = newIds;
+			present = newPresent;
+			live = new Object[size];
+		}
+	}
+
+	/**
+	 * any other values, e.g. the nearest AceMention
+	 */
+	protected static class ObjectColumn extends Column
+	{
+		Object[] values = new Object[0];
+
+		Object get(int i)
+		{
+			return values[i];
+		}
+
+		boolean set(int i, Object value)
+		{
+			values[i] = value;
+			return true;
+		}
+
+		void remove(int i)
+		{
+			values[i] = null;
+		}
+
+		boolean has(int i)
+		{
+			return values[i] != null;
+		}
+
+		void ensureCapacity(int capacity)
+		{
+			if(capacity > values.length)
+			{
+				values = Arrays.copyOf(values, capacity);
+			}
+		}
+
+		void compact(int size)
+		{
+			values = Arrays.copyOf(values, size);
+		}
+	}
+
+	// the string pool of the String values
+	protected StringPool pool;
+	// columns in the order of the first put, there are about a dozen of them
+	protected Map<Class<?>, Column> columns = new LinkedHashMap<Class<?>, Column>();
+	protected int size = 0;
+	protected int capacity = 0;
+	// the Map view of each row, made on first access
+	protected Row[] rows = new Row[0];
+
+	public TokenTable()
+	{
+		this(16);
+	}
+
+	/**
+	 * a table with its own string pool
+	 * @param capacity
+	 */
+	public TokenTable(int capacity)
+	{
+		this(new StringPool(), capacity);
+	}
+
+	/**
+	 * @param pool the string pool that is shared with the other tables of the document
+	 * @param capacity
+	 */
+	public TokenTable(StringPool pool, int capacity)
+	{
+		this.pool = pool;
+		ensureCapacity(capacity);
+	}
+
+	/**
+	 * the table of a list of token maps: the list itself if it is a table, otherwise a copy
+	 * @param tokens
+	 * @return
+	 */
+	static public TokenTable of(List<Map<Class<?>, Object>> tokens)
+	{
+		if(tokens instanceof TokenTable)
+		{
+			return (TokenTable) tokens;
+		}
+		TokenTable table = new TokenTable(tokens.size());
+		table.addAll(tokens);
+		return table;
+	}
+
+	protected void ensureCapacity(int capacity)
+	{
+		if(capacity <= this.capacity)
+		{
+			return;
+		}
+		capacity = Math.max(capacity, this.capacity * 2);
+		for(Column column : columns.values())
+		{
+			column.ensureCapacity(capacity);
+		}
+		rows = Arrays.copyOf(rows, capacity);
+		this.capacity = capacity;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * add a new token with the annotations of map (the map is copied), only at the end of the table
+	 */
+	@Override
+	public void add(int index, Map<Class<?>, Object> map)
+	{
+		if(index != size)
+		{
+			throw new UnsupportedOperationException("tokens can only be added at the end");
+		}
+		ensureCapacity(size + 1);
+		size++;
+		for(Map.Entry<Class<?>, Object> entry : map.entrySet())
+		{
+			put(index, entry.getKey(), entry.getValue());
+		}
+		modCount++;
+	}
+
+	/**
+	 * add an empty token at the end of the table
+	 * @return the Map view of the new token, to put its annotations in
+	 */
+	public Map<Class<?>, Object> addToken()
+	{
+		ensureCapacity(size + 1);
+		size++;
+		modCount++;
+		return get(size - 1);
+	}
+
+	/**
+	 * the Map view of token i
+	 */
+	@Override
+	public Map<Class<?>, Object> get(int i)
+	{
+		checkIndex(i);
+		Row row = rows[i];
+		if(row == null)
+		{
+			row = new Row(i);
+			rows[i] = row;
+		}
+		return row;
+	}
+
+	protected void checkIndex(int i)
+	{
+		if(i < 0 || i >= size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		}
+	}
+
+	/**
+	 * the value of an annotation of token i, as it would be in a HashMap
+	 * @param i
+	 * @param key
+	 * @return
+	 */
+	public Object get(int i, Class<?> key)
+	{
+		checkIndex(i);
+		Column column = columns.get(key);
+		return column == null ? null : column.get(i);
+	}
+
+	public Object put(int i, Class<?> key, Object value)
+	{
+		checkIndex(i);
+		if(value == null)
+		{
+			return remove(i, key);
+		}
+		Column column = columns.get(key);
+		Object old = null;
+		if(column == null)
+		{
+			column = newColumn(value);
+			column.pool = pool;
+			column.ensureCapacity(capacity);
+			columns.put(key, column);
+		}
+		else
+		{
+			old = column.get(i);
+		}
+		if(!column.set(i, value))
+		{
+			// the value doesn't fit the type of the column, keep the column as objects from now on
+			ObjectColumn objects = new ObjectColumn();
+			objects.pool = pool;
+			objects.ensureCapacity(capacity);
+			for(int j=0; j<size; j++)
+			{
+				objects.values[j] = column.get(j);
+			}
+			objects.set(i, value);
+			columns.put(key, objects);
+		}
+		return old;
+	}
+
+	public Object remove(int i, Class<?> key)
+	{
+		checkIndex(i);
+		Column column = columns.get(key);
+		if(column == null)
+		{
+			return null;
+		}
+		Object old = column.get(i);
+		column.remove(i);
+		return old;
+	}
+
+	public boolean has(int i, Class<?> key)
+	{
+		checkIndex(i);
+		Column column = columns.get(key);
+		return column != null && column.has(i);
+	}
+
+	static protected Column newColumn(Object value)
+	{
+		if(value instanceof String)
+		{
+			return new IdColumn();
+		}
+		if(value instanceof Integer)
+		{
+			return new IntColumn();
+		}
+		if(value instanceof Span)
+		{
+			return new SpanColumn();
+		}
+		if(value instanceof Collection)
+		{
+			return new MultiColumn();
+		}
+		return new ObjectColumn();
+	}
+
+	/**
+	 * the string pool of the ids of this table
+	 */
+	public StringPool getPool()
+	{
+		return pool;
+	}
+
+	/**
+	 * string pool id of a String annotation of token i
+	 * @param i
+	 * @param key
+	 * @return -1 if absent (or the annotation is not a String)
+	 */
+	public int getId(int i, Class<?> key)
+	{
+		Column column = columns.get(key);
+		if(column instanceof IdColumn)
+		{
+			return ((IdColumn) column).ids[i];
+		}
+		return -1;
+	}
+
+	/**
+	 * the ids of a String annotation of all tokens (-1 if absent), it's the column itself, don't modify it
+	 * @param key
+	 * @return null if it's not a String annotation
+	 */
+	public int[] getIds(Class<?> key)
+	{
+		Column column = columns.get(key);
+		if(column instanceof IdColumn)
+		{
+			return ((IdColumn) column).ids;
+		}
+		return null;
+	}
+
+	public String getString(int i, Class<?> key)
+	{
+		Column column = columns.get(key);
+		if(column instanceof IdColumn)
+		{
+			return pool.get(((IdColumn) column).ids[i]);
+		}
+		Object value = column == null ? null : column.get(i);
+		return value == null ? null : value.toString();
+	}
+
+	/**
+	 * an Integer annotation of token i (e.g. ClauseAnnotation)
+	 * @return defaultValue if absent
+	 */
+	public int getInt(int i, Class<?> key, int defaultValue)
+	{
+		Column column = columns.get(key);
+		if(column instanceof IntColumn)
+		{
+			int value = ((IntColumn) column).values[i];
+			return value == None ? defaultValue : value;
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * start offset of the Span annotation of token i, None if absent
+	 */
+	public int getStart(int i, Class<?> key)
+	{
+		Column column = columns.get(key);
+		return column instanceof SpanColumn ? ((SpanColumn) column).starts[i] : None;
+	}
+
+	/**
+	 * end offset of the Span annotation of token i, None if absent
+	 */
+	public int getEnd(int i, Class<?> key)
+	{
+		Column column = columns.get(key);
+		return column instanceof SpanColumn && ((SpanColumn) column).starts[i] != None ? ((SpanColumn) column).ends[i] : None;
+	}
+
+	/**
+	 * number of values of a multi-valued annotation of token i (e.g. SynonymsAnnotation), 0 if absent
+	 */
+	public int getNumValues(int i, Class<?> key)
+	{
+		Column column = columns.get(key);
+		if(column instanceof MultiColumn)
+		{
+			return ((MultiColumn) column).size(i);
+		}
+		return column != null && column.has(i) ? 1 : 0;
+	}
+
+	/**
+	 * string pool id of the j-th value of a multi-valued annotation of token i
+	 */
+	public int getValueId(int i, Class<?> key, int j)
+	{
+		Column column = columns.get(key);
+		if(column instanceof MultiColumn)
+		{
+			return ((MultiColumn) column).id(i, j);
+		}
+		return j == 0 ? getId(i, key) : -1;
+	}
+
+	public String getValue(int i, Class<?> key, int j)
+	{
+		Column column = columns.get(key);
+		if(column instanceof MultiColumn || column instanceof IdColumn)
+		{
+			return pool.get(getValueId(i, key, j));
+		}
+		Object value = column == null || j > 0 ? null : column.get(i);
+		return value == null ? null : value.toString();
+	}
+
+	/**
+	 * move the collections into offset-indexed arrays, and trim the columns to the number of tokens
+	 * it's called after the text features are filled
+	 */
+	public void compact()
+	{
+		for(Column column : columns.values())
+		{
+			column.compact(size);
+		}
+		rows = Arrays.copyOf(rows, size);
+		capacity = size;
+	}
+
+	/**
+	 * compact the token tables of the sentences of a document
+	 * @param doc
+	 */
+	static public void compact(Document doc)
+	{
+		for(Sentence sent : doc.getSentences())
+		{
+			Object tokens = sent.get(Sentence.Sent_Attribute.Token_FEATURE_MAPs);
+			if(tokens instanceof TokenTable)
+			{
+				((TokenTable) tokens).compact();
+			}
+		}
+	}
+
+	/**
+	 * the Map view of a token
+	 */
+	protected class Row extends AbstractMap<Class<?>, Object>
+	{
+		int i;
+
+		Row(int i)
+		{
+			this.i = i;
+		}
+
+		@Override
+		public Object get(Object key)
+		{
+			Column column = columns.get(key);
+			return column == null ? null : column.get(i);
+		}
+
+		@Override
+		public boolean containsKey(Object key)
+		{
+			Column column = columns.get(key);
+			return column != null && column.has(i);
+		}
+
+		@Override
+		public Object put(Class<?> key, Object value)
+		{
+			return TokenTable.this.put(i, key, value);
+		}
+
+		@Override
+		public Object remove(Object key)
+		{
+			Column column = columns.get(key);
+			if(column == null)
+			{
+				return null;
+			}
+			Object old = column.get(i);
+			column.remove(i);
+			return old;
+		}
+
+		@Override
+		public Set<Map.Entry<Class<?>, Object>> entrySet()
+		{
+			// a snapshot of the annotations of this token
+			Set<Map.Entry<Class<?>, Object>> entries = new LinkedHashSet<Map.Entry<Class<?>, Object>>();
+			for(Map.Entry<Class<?>, Column> entry : columns.entrySet())
+			{
+				if(entry.getValue().has(i))
+				{
+					entries.add(new AbstractMap.SimpleEntry<Class<?>, Object>(entry.getKey(), entry.getValue().get(i)));
+				}
+			}
+			return entries;
+		}
+	}
+}
@@ -63,27 +63,64 @@ public class FrameNetExpand
 		}
 		br.close();
 
-		FileWriter fw = new FileWriter(result_path);
-
-		int num = 0;
+		// read all events first, so that the similarities of all pairs of words are computed at once
+		ArrayList<String> event_list = new ArrayList<String>();
+		ArrayList<HashSet<String>> event_lus = new ArrayList<HashSet<String>>();
 		br = new BufferedReader(new FileReader(event_path));
 		while ((line = br.readLine()) != null)
 		{
-			++num;
 			String[] strs = line.split(" : ");
-			String event = strs[0];
 			HashSet<String> set = new HashSet<String>();
 			for (int i = 1; i < strs.length; ++i)
 			{
 				set.add(strs[i]);
 			}
+			event_list.add(strs[0]);
+			event_lus.add(set);
+		}
+		br.close();
+
+		// the words of the events (rows) and of the frames (columns) of each pos
+		HashMap<String, HashMap<String, Integer>> row_index = new HashMap<String, HashMap<String, Integer>>();
+		HashMap<String, HashMap<String, Integer>> col_index = new HashMap<String, HashMap<String, Integer>>();
+		for (HashSet<String> set : event_lus)
+		{
+			for (String a : set)
+			{
+				add_word(row_index, a);
+			}
+		}
+		for (HashSet<String> lu_set : frame_map.values())
+		{
+			for (String b : lu_set)
+			{
+				add_word(col_index, b);
+			}
+		}
+
+		// the Lin similarity matrix of each pos
+		HashMap<String, double[][]> matrices = new HashMap<String, double[][]>();
+		for (String pos : row_index.keySet())
+		{
+			if (col_index.containsKey(pos))
+			{
+				matrices.put(pos, cyd.frame.sim.Similarity.getSingleton().get_sim_matrix(
+						new ArrayList<String>(row_index.get(pos).keySet()),
+						new ArrayList<String>(col_index.get(pos).keySet()), pos));
+			}
+		}
+
+		FileWriter fw = new FileWriter(result_path);
+
+		for (int num = 0; num < event_list.size(); ++num)
+		{
+			String event = event_list.get(num);
+			HashSet<String> set = event_lus.get(num);
 
 			HashMap<String, Double> frame_sim_map = new HashMap<String, Double>();
 
-			int index = 0;
 			for (Map.Entry entry : frame_map.entrySet())
 			{
-				++index;
 				String frame = (String) entry.getKey();
 				HashSet<String> lu_set = (HashSet<String>) entry.getValue();
 				if (lu_set.size() == 0)
@@ -96,6 +133,12 @@ public class FrameNetExpand
 				{
 					String a_word = a.substring(0, a.lastIndexOf("."));
 					String a_pos = a.substring(a.lastIndexOf(".") + 1);
+					double[][] matrix = matrices.get(a_pos);
+					if (matrix == null)
+					{
+						continue;
+					}
+					int row = row_index.get(a_pos).get(a_word);
 
 					for (String b : lu_set)
 					{
@@ -103,17 +146,13 @@ public class FrameNetExpand
 						String b_pos = b.substring(b.lastIndexOf(".") + 1);
 						if (b_pos.equals(a_pos))
 						{
-							double sc = cyd.frame.sim.Similarity.getSingleton()
-									.get_sim(a_word, b_word, a_pos);
-							sum += sc;
+							sum += matrix[row][col_index.get(b_pos).get(b_word)];
 						}
 					}
 				}
 
 				double similarity = sum / (set.size() * lu_set.size());
 				frame_sim_map.put(frame, similarity);
-				System.out.println(num + " : " + event + " : " + index + " : "
-						+ frame + " : " + similarity);
 			}
 
 			List<Map.Entry<String, Double>> list = new ArrayList<Map.Entry<String, Double>>(
@@ -138,14 +177,32 @@ public class FrameNetExpand
 			fw.write("\n");
 			if (list.size() > 0)
 			{
-				System.out.println(event + " : " + list.get(0).getKey() + " : "
+				System.out.println((num + 1) + " : " + event + " : " + list.get(0).getKey() + " : "
 						+ list.get(0).getValue());
 			}
 		}
-		br.close();
 		fw.close();
 	}
 
+	/**
+	 * give the word of a lexical unit (word.pos) an index among the words of its pos
+	 */
+	static void add_word(HashMap<String, HashMap<String, Integer>> index, String lu)
+	{
+		String word = lu.substring(0, lu.lastIndexOf("."));
+		String pos = lu.substring(lu.lastIndexOf(".") + 1);
+		HashMap<String, Integer> words = index.get(pos);
+		if (words == null)
+		{
+			words = new LinkedHashMap<String, Integer>();
+			index.put(pos, words);
+		}
+		if (words.containsKey(word) == false)
+		{
+			words.put(word, words.size());
+		}
+	}
+
 	public static void event_map_to_frame_jaccard(String event_path,
 			String frame_path, String result_path) throws Exception
 	{
@@ -2,16 +2,21 @@ package cyd.frame.sim;
 
 import java.io.*;
 import java.util.*;
-import java.text.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import util.EnginePool;
 import edu.sussex.nlp.jws.*;
 
 // 'TestExamples': how to use Java WordNet::Similarity
 // David Hope, 2008
+// the Lin scores are memoized per (pos, word, word) and kept in a cache file (-Dsim.cache=path),
+// and get_sim_matrix computes the missing pairs in parallel (-Dsim.threads=N), each thread with its own Lin
 public class Similarity
 {
 	private static Similarity sim = null;
 	
-	public static Similarity getSingleton() throws Exception
+	public static synchronized Similarity getSingleton() throws Exception
 	{
 		if (sim == null)
 		{
@@ -20,17 +25,217 @@ public class Similarity
 		return sim;
 	}
 	
-	static Lin lin = null;
+	public static final String CacheProperty = "sim.cache";
+	public static final String ThreadsProperty = "sim.threads";
+	
+	// Lin isn't thread-safe, so each thread has its own
+	EnginePool<Lin> lins;
+	
+	// pos \t word \t word --> score, the two words are in alphabetical order
+	ConcurrentHashMap<String, Double> cache = new ConcurrentHashMap<String, Double>();
+	File cache_file;
+	// the scores computed in this run are appended to the cache file
+	PrintWriter cache_writer = null;
+	// the threads are kept, as each of them loads its own Lin
+	ExecutorService executor = null;
+	
+	public Similarity(final String wordnet_path) throws Exception
+	{
+		lins = new EnginePool<Lin>()
+		{
+			protected Lin newEngine()
+			{
+				try
+				{
+					JWS ws = new JWS(wordnet_path, "2.1");
+					return ws.getLin();
+				}
+				catch (Exception e)
+				{
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	
+		cache_file = new File(System.getProperty(CacheProperty, "./cyd/frame/sim/lin_cache.txt"));
+		read_cache();
+	}
+	
+	static String get_key(String a, String b, String pos)
+	{
+		if (a.compareTo(b) > 0)
+		{
+			String tmp = a;
+			a = b;
+			b = tmp;
+		}
+		return pos + "\t" + a + "\t" + b;
+	}
+	
+	void read_cache() throws IOException
+	{
+		if (cache_file.exists() == false)
+		{
+			return;
+		}
+		BufferedReader br = new BufferedReader(new FileReader(cache_file));
+		String line = null;
+		while ((line = br.readLine()) != null)
+		{
+			int pos = line.lastIndexOf("\t");
+			if (pos < 0)
+			{
+				continue;
+			}
+			try
+			{
+				cache.put(line.substring(0, pos), Double.parseDouble(line.substring(pos + 1)));
+			}
+			catch (NumberFormatException e)
+			{
+				// a line that was cut off when the last run was killed
+				System.err.println("skipped: " + line);
+			}
+		}
+		br.close();
+		System.out.println("lin cache: " + cache.size() + " pairs from " + cache_file);
+	}
+	
+	synchronized void write_cache(String key, double score) throws IOException
+	{
+		if (cache_writer == null)
+		{
+			if (cache_file.getParentFile() != null)
+			{
+				cache_file.getParentFile().mkdirs();
+			}
+			cache_writer = new PrintWriter(new BufferedWriter(new FileWriter(cache_file, true)));
+		}
+		cache_writer.println(key + "\t" + score);
+	}
+	
+	/**
+	 * flush the scores computed so far into the cache file
+	 */
+	public synchronized void flush()
+	{
+		if (cache_writer != null)
+		{
+			cache_writer.flush();
+		}
+	}
 	
-	public Similarity(String wordnet_path) throws Exception
+	synchronized ExecutorService get_executor()
 	{
-		JWS ws = new JWS(wordnet_path, "2.1");
-		lin = ws.getLin();
+		if (executor == null)
+		{
+			int threads = Integer.getInteger(ThreadsProperty, Runtime.getRuntime().availableProcessors());
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+			{
+				AtomicInteger count = new AtomicInteger();
+				
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "lin-" + count.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
 	}
 	
 	public double get_sim(String a, String b, String pos) throws Exception
 	{
-		return lin.max(a, b, pos);
+		String key = get_key(a, b, pos);
+		Double score = cache.get(key);
+		if (score == null)
+		{
+			score = lins.get().max(a, b, pos);
+			if (cache.putIfAbsent(key, score) == null)
+			{
+				write_cache(key, score);
+			}
+		}
+		return score;
+	}
+	
+	/**
+	 * the scores of all pairs of words (rows x columns) with the same pos,
+	 * the pairs that are not in the cache are computed in parallel
+	 * @param rows
+	 * @param columns
+	 * @param pos
+	 * @return
+	 * @throws Exception
+	 */
+	public double[][] get_sim_matrix(final List<String> rows, final List<String> columns, final String pos) throws Exception
+	{
+		final double[][] matrix = new double[rows.size()][columns.size()];
+	
+		// the rows that have a pair not in the cache
+		final List<Integer> missing = new ArrayList<Integer>();
+		for (int i = 0; i < rows.size(); ++i)
+		{
+			boolean complete = true;
+			for (int j = 0; j < columns.size(); ++j)
+			{
+				Double score = cache.get(get_key(rows.get(i), columns.get(j), pos));
+				if (score == null)
+				{
+					complete = false;
+				}
+				else
+				{
+					matrix[i][j] = score;
+				}
+			}
+			if (complete == false)
+			{
+				missing.add(i);
+			}
+		}
+		if (missing.size() == 0)
+		{
+			return matrix;
+		}
+	
+		System.out.println("computing " + missing.size() + " x " + columns.size() + " " + pos + " pairs");
+		ExecutorService executor = get_executor();
+		final AtomicInteger done = new AtomicInteger();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (final int i : missing)
+		{
+			futures.add(executor.submit(new Callable<Object>()
+			{
+				public Object call() throws Exception
+				{
+					for (int j = 0; j < columns.size(); ++j)
+					{
+						matrix[i][j] = get_sim(rows.get(i), columns.get(j), pos);
+					}
+					int n = done.incrementAndGet();
+					if (n % 100 == 0)
+					{
+						System.out.println(n + " / " + missing.size() + " rows");
+						flush();
+					}
+					return null;
+				}
+			}));
+		}
+		try
+		{
+			for (Future<?> future : futures)
+			{
+				future.get();
+			}
+		}
+		finally
+		{
+			flush();
+		}
+		return matrix;
 	}
 	
 	public static void main(String[] args) throws Exception
@@ -40,8 +245,9 @@ public class Similarity
 		String pos = "v";
 		double a = Similarity.getSingleton().get_sim(m, n, pos);
 		double b = Similarity.getSingleton().get_sim("work", "strike", "v");
-		
+	
 		System.out.println(a);
 		System.out.println(b);
+		Similarity.getSingleton().flush();
 	}
 }
@@ -18,6 +18,8 @@ import cc.mallet.types.Instance;
 import cc.mallet.types.InstanceList;
 import cc.mallet.types.Labeling;
 
+import classifiers.maxent.FeatureTable;
+
 import cyd.frame.TMP;
 import cyd.frame.prf.PRF;
 
@@ -42,16 +44,32 @@ public class MeDecoder
 		}
 	}
 
-	public PRF decodeOnFeatureTable(String testPath, String resultPath)
-			throws Exception
+	/**
+	 * read a text or binary feature table through the instance pipe of the classifier
+	 * @param testPath
+	 * @return
+	 * @throws Exception
+	 */
+	public InstanceList read_instances(String testPath) throws Exception
 	{
-		
+		if (FeatureTable.isBinary(new File(testPath)))
+		{
+			return new FeatureTable(new File(testPath)).toInstanceList(classifier.getInstancePipe(), null);
+		}
 		CsvIterator reader = new CsvIterator(new FileReader(testPath),
 				"(\\w+)\\s+(\\S+)\\s+(.*)", 3, 2, 1); // (data, label, name) field indices               
 
 		InstanceList testingInstances = new InstanceList(
 				classifier.getInstancePipe());
 		testingInstances.addThruPipe(reader);
+		return testingInstances;
+	}
+
+	public PRF decodeOnFeatureTable(String testPath, String resultPath)
+			throws Exception
+	{
+		
+		InstanceList testingInstances = read_instances(testPath);
 
 		//		ArrayList<Classification> list = classifier.classify(testingInstances);
 		int correct = 0, p = 0, r = 0;
@@ -97,12 +115,7 @@ public class MeDecoder
 			throws Exception
 	{
 		
-		CsvIterator reader = new CsvIterator(new FileReader(testPath),
-				"(\\w+)\\s+(\\S+)\\s+(.*)", 3, 2, 1); // (data, label, name) field indices               
-
-		InstanceList testingInstances = new InstanceList(
-				classifier.getInstancePipe());
-		testingInstances.addThruPipe(reader);
+		InstanceList testingInstances = read_instances(testPath);
 
 		int correct = 0, p = 0, r = 0;
 		FileWriter fw = new FileWriter(resultPath);
@@ -146,12 +159,7 @@ public class MeDecoder
 			throws Exception
 	{
 		
-		CsvIterator reader = new CsvIterator(new FileReader(testPath),
-				"(\\w+)\\s+(\\S+)\\s+(.*)", 3, 2, 1); // (data, label, name) field indices               
-
-		InstanceList testingInstances = new InstanceList(
-				classifier.getInstancePipe());
-		testingInstances.addThruPipe(reader);
+		InstanceList testingInstances = read_instances(testPath);
 
 		int correct = 0, p = 0, r = 0;
 		FileWriter fw = new FileWriter(resultPath);
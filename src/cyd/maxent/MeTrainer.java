@@ -8,12 +8,14 @@ import java.util.regex.*;
 import cc.mallet.classify.Classifier;
 import cc.mallet.classify.ClassifierTrainer;
 import cc.mallet.classify.MaxEnt;
-import cc.mallet.classify.MaxEntTrainer;
 import cc.mallet.pipe.*;
 import cc.mallet.pipe.iterator.*;
 import cc.mallet.types.*;
 import cc.mallet.util.FileUtils;
 
+import classifiers.maxent.FeatureTable;
+import classifiers.maxent.ParallelMaxEntTrainer;
+
 public class MeTrainer
 {
 
@@ -59,11 +61,19 @@ public class MeTrainer
 		pipe.setTargetProcessing(true);
 
 		// read data
-		InstanceList trainingInstances = new InstanceList(pipe);
-		FileReader training_file_reader = new FileReader(trainPath);
-		CsvIterator reader = new CsvIterator(training_file_reader, "(\\w+)\\s+(\\S+)\\s+(.*)", 3, 2, 1); // (data, label, name) field indices    
-		trainingInstances.addThruPipe(reader);
-		training_file_reader.close();
+		InstanceList trainingInstances;
+		if (FeatureTable.isBinary(new File(trainPath)))
+		{
+			trainingInstances = new FeatureTable(new File(trainPath)).toInstanceList(pipe, null);
+		}
+		else
+		{
+			trainingInstances = new InstanceList(pipe);
+			FileReader training_file_reader = new FileReader(trainPath);
+			CsvIterator reader = new CsvIterator(training_file_reader, "(\\w+)\\s+(\\S+)\\s+(.*)", 3, 2, 1); // (data, label, name) field indices    
+			trainingInstances.addThruPipe(reader);
+			training_file_reader.close();
+		}
 
 		// prune by info gain
 //		pruneByInfoGain(trainingInstances);
@@ -73,7 +83,8 @@ public class MeTrainer
 		
 		long startTime = System.currentTimeMillis();
 		// train a Maxent classifier (could be other classifiers)
-		ClassifierTrainer trainer = new MaxEntTrainer(0.9);
+		// multi-threaded (-Dmaxent.threads)
+		ClassifierTrainer trainer = new ParallelMaxEntTrainer(0.9);
 		Classifier classifier = trainer.train(trainingInstances);
 		// calculate running time
 		long endTime = System.currentTimeMillis();
@@ -92,41 +103,37 @@ public class MeTrainer
 
 	public static void feature_table(String trainFileList, String featDir, String featPath) throws IOException
 	{
-		HashSet<String> trainFileSet = new HashSet<String>();
+		// the feature files of the training documents, in the order of the file list
+		// (featDir/[base name of the document], as FeatureTableGenerator writes them)
+		LinkedHashSet<String> trainFileSet = new LinkedHashSet<String>();
 		
 		BufferedReader br = new BufferedReader(new FileReader(trainFileList));
 		String line = null;
 		while ( (line = br.readLine()) != null )
 		{
-			line = line.substring(line.lastIndexOf("/")+1);
-			trainFileSet.add(line);
+			line = line.trim();
+			if (line.length() > 0)
+			{
+				trainFileSet.add(line.substring(line.lastIndexOf("/")+1));
+			}
 		}
 		br.close();
 		
-		File dir = new File(featDir);
-		File[] files = dir.listFiles();
-		
-		FileWriter fw = new FileWriter(featPath);
-		for (File file : files)
+		// the files are copied into the table as they are (FileChannel.transferTo), not line by line,
+		// or as binary blocks (-DfeatureTable=binary)
+		FeatureTable.BlockMerger merger = new FeatureTable.BlockMerger(new File(featPath));
+		for (String name : trainFileSet)
 		{
-			if (trainFileSet.contains(file.getName()) == false)
-			{
-				continue;
-			}
-			br = new BufferedReader(new FileReader(file));
-			while ( (line = br.readLine()) != null )
+			File file = new File(featDir, name);
+			// a document of the file list without features would be missing from the table
+			if (file.exists() == false)
 			{
-				String[] strs = line.split(" ");
-				int len = strs.length;
-				for (int i = 0; i < len-1; ++i)
-				{
-					fw.write(strs[i] + " ");	
-				}
-				fw.write(strs[len-1] + "\n");
+				merger.close();
+				throw new FileNotFoundException("no feature file of " + name + " in " + featDir);
 			}
-			br.close();
+			merger.append(name, file);
 		}
-		fw.close();
+		merger.close();
 	}
 	
 	public static void printFeatureWeights(MaxEnt maxEnt, PrintStream out)
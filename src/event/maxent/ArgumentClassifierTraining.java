@@ -3,21 +3,12 @@ package event.maxent;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.io.PrintWriter;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
-
-import org.dom4j.DocumentException;
 
 import cc.mallet.classify.Classifier;
 import cc.mallet.classify.MaxEnt;
-import ace.acetypes.AceMention;
-import commons.Alphabets;
-import event.perceptron.featureGenerator.EdgeFeatureGenerator;
 import util.Controller;
-import event.types.SentenceAssignment;
-import event.types.SentenceInstance;
+import util.FeatureProfiler;
 
 public class ArgumentClassifierTraining extends TriggerClassifierTraining
 {
@@ -29,65 +20,18 @@ public class ArgumentClassifierTraining extends TriggerClassifierTraining
 	
 	protected void printFeatureTableToFile(File srcDir, File trainingFileList, Controller controller)
 	{
-		Alphabets alphabets = new Alphabets();
-		
 		try
 		{
-			List<SentenceInstance> trainInstanceList = readInstanceList(srcDir, trainingFileList, alphabets, controller, true);
-			
-			PrintWriter writer = new PrintWriter(new File(featTableFileName));
-			for(SentenceInstance inst : trainInstanceList)
-			{
-				SentenceAssignment target = (SentenceAssignment) inst.target;
-				Map<Integer, Map<Integer, Integer>> edgeAssn = target.getEdgeAssignment();
-				for(int i=0; i<inst.size(); i++)
-				{
-					String triggerLabel = target.getLabelAtToken(i);
-					// this is a trigger
-					if(!triggerLabel.equals(SentenceAssignment.Default_Trigger_Label))
-					{
-						Map<Integer, Integer> edgeAssnTrigger = null;
-						if(edgeAssn != null)
-						{
-							edgeAssnTrigger = edgeAssn.get(i);
-						}
-						// print feature table for each argument
-						for(int k=0; k<inst.eventArgCandidates.size(); k++)
-						{
-							String argRole = SentenceAssignment.Default_Argument_Label;
-							if(edgeAssnTrigger != null && edgeAssnTrigger.get(k) != null)
-							{
-								argRole = (String) inst.alphabets.edgeTargetAlphabet.lookupObject(edgeAssnTrigger.get(k));
-							}
-							
-							String argName = "Arg" + "#" + i + "#" + k;
-							writer.print(argName);
-							writer.print(" ");
-							writer.print(argRole);
-							
-							// output features for one argument candidate
-							AceMention mention = inst.eventArgCandidates.get(k);
-							List<String> features = EdgeFeatureGenerator.get_edge_text_features(inst, i, mention);
-							for(String feature : features)
-							{
-								writer.print(" ");
-								writer.print(feature + ":1");
-							}
-							writer.println();
-						}
-					}
-				}
-			}
-			writer.close();
+			// the rows of each document are written into its file in argDir by the preprocessing threads,
+			// the table is the files appended in the order of the file list
+			FeatureTableGenerator generator = new FeatureTableGenerator(srcDir, new File(argDir), 
+					getArgumentFeaturizer(controller, true));
+			generator.generate(trainingFileList, new File(featTableFileName));
 		} 
 		catch (IOException e)
 		{
 			e.printStackTrace();
 		} 
-		catch (DocumentException e)
-		{
-			e.printStackTrace();
-		}	
 	}
 	
 	static public void main(String[] args) throws IOException
@@ -118,6 +62,9 @@ public class ArgumentClassifierTraining extends TriggerClassifierTraining
 		// train model
 		ArgumentClassifierTraining trainer = new ArgumentClassifierTraining(); 
 		Classifier model = trainer.trainClassifier(srcDir, trainingFileList, modelFile, controller);
+
+		// dump feature extraction counters if profiling is enabled
+		FeatureProfiler.dump();
 		
 		// print out weights or any other detail
 		PrintStream out = new PrintStream(modelFile.getAbsoluteFile() + ".weights");
@@ -1,21 +1,23 @@
 package event.maxent;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import org.dom4j.DocumentException;
 
 import util.Controller;
+import util.FeatureProfiler;
+import util.ResourceRegistry;
+import util.WordNetWrapper;
 
 import commons.Alphabets;
 import commons.Document;
-import commons.TextFeatureGenerator;
+import commons.DocumentPreprocessor;
 
 import classifiers.maxent.MaxEntDecoder;
 
@@ -47,23 +49,14 @@ public class Decoder extends event.perceptron.core.Decoder
 					inst.controller);
 			ret.add(assn);
 
-			// skip tokens with forbidden POS later
+			// predict trigger types of all tokens in one batch, skip tokens with forbidden POS later
+			String[] triggerLabels = triggerClassifier
+					.decodeBatch("trigger", SentenceAssignment.Default_Trigger_Label,
+							(List<List<String>>) inst
+							.get(InstanceAnnotations.NodeTextFeatureVectors));
 			for (int i = 0; i < inst.size(); i++)
 			{
-				// get feature vector for the trigger candidate
-				StringBuilder featureVector = new StringBuilder("trigger" + " "
-						+ SentenceAssignment.Default_Trigger_Label);
-				List<String> features = ((List<List<String>>) inst
-						.get(InstanceAnnotations.NodeTextFeatureVectors))
-						.get(i);
-				for (String feature : features)
-				{
-					featureVector.append(" ");
-					featureVector.append(feature + ":1");
-				}
-				// predict trigger type
-				String triggerLabel = triggerClassifier
-						.decodeOnFeatureVector(featureVector.toString());
+				String triggerLabel = triggerLabels[i];
 				// set trigger type in assn
 				assn.incrementState();
 				assn.setCurrentNodeLabel(triggerLabel);
@@ -71,32 +64,20 @@ public class Decoder extends event.perceptron.core.Decoder
 				if (!triggerLabel
 						.equals(SentenceAssignment.Default_Trigger_Label))
 				{
+					// predict argument roles of all candidates of the trigger in one batch
+					List<List<String>> candidates = new ArrayList<List<String>>();
 					for (int k = 0; k < inst.eventArgCandidates.size(); k++)
 					{
 						AceMention mention = inst.eventArgCandidates.get(k);
-						// predict argument type
-						featureVector = new StringBuilder("arg" + " "
-								+ SentenceAssignment.Default_Argument_Label);
-						features = EdgeFeatureGenerator.get_edge_text_features(
-								inst, i, mention);
-						for (String feature : features)
-						{
-							featureVector.append(" ");
-							featureVector.append(feature + ":1");
-						}
-						// predict argument role
-//						try
-//						{
-							String argRole = argClassifier
-									.decodeOnFeatureVector(featureVector
-											.toString());
-							// set arg role in assn
-							assn.setCurrentEdgeLabel(k, argRole);
-//						}
-//						catch (IllegalArgumentException ee)
-//						{
-//							continue;
-//						}
+						candidates.add(EdgeFeatureGenerator.get_edge_text_features(
+								inst, i, mention));
+					}
+					String[] argRoles = argClassifier.decodeBatch("arg",
+							SentenceAssignment.Default_Argument_Label, candidates);
+					for (int k = 0; k < argRoles.length; k++)
+					{
+						// set arg role in assn
+						assn.setCurrentEdgeLabel(k, argRoles[k]);
 					}
 				}
 			}
@@ -104,6 +85,13 @@ public class Decoder extends event.perceptron.core.Decoder
 		return ret;
 	}
 
+	/**
+	 * the documents are preprocessed by -DpreprocessThreads=N threads (default: the number of processors),
+	 * -DpreprocessThreads=1 preprocesses them in the main thread
+	 * @param args
+	 * @throws IOException
+	 * @throws DocumentException
+	 */
 	static public void main(String[] args) throws IOException,
 			DocumentException
 	{
@@ -115,9 +103,13 @@ public class Decoder extends event.perceptron.core.Decoder
 			System.out.println("args[2]: src dir");
 			System.out.println("args[3]: file list");
 			System.out.println("args[4]: output dir");
+			System.out.println("-DpreprocessThreads=N: number of preprocessing threads (default: number of processors)");
 			System.exit(-1);
 		}
 
+		// load the resources in parallel while reading the models
+		ResourceRegistry.getSingleton().warmUp();
+
 		// read Classifier models
 		MaxEntDecoder triggerClassifier = new MaxEntDecoder(new File(args[0]),
 				"TriggerClassifier");
@@ -133,21 +125,21 @@ public class Decoder extends event.perceptron.core.Decoder
 			outDir.mkdirs();
 		}
 
-		BufferedReader reader = new BufferedReader(new FileReader(fileList));
-		String line = "";
-		TextFeatureGenerator featGen = new TextFeatureGenerator();
-		// decode for each document
-		while ((line = reader.readLine()) != null)
+		// decode for each document, documents are preprocessed in parallel
+		DocumentPreprocessor preprocessor = new DocumentPreprocessor(srcDir, true);
+		Iterator<DocumentPreprocessor.Result> results = preprocessor
+				.process(DocumentPreprocessor.readFileList(fileList));
+		while (results.hasNext())
 		{
+			DocumentPreprocessor.Result result = results.next();
 			List<SentenceInstance> localInstanceList = null;
-			boolean monoCase = line.contains("bn/") ? true : false;
-			String fileName = srcDir + File.separator + line;
-			System.out.println(fileName);
-			Document doc = null;
-
-			doc = new Document(fileName, true, monoCase);
-			// fill in text feature vector for each token
-			featGen.fillTextFeatures(doc);
+			String line = result.line;
+			System.out.println(result.fileName);
+			if (!preprocessor.check(result))
+			{
+				continue;
+			}
+			Document doc = result.doc;
 
 			Alphabets alphabets = new Alphabets();
 			Controller controller = new Controller();
@@ -185,6 +177,12 @@ public class Decoder extends event.perceptron.core.Decoder
 			writeEntities(out, doc.getAceAnnotations(), eventsInDoc);
 			out.close();
 		}
+		preprocessor.shutdown();
+		ResourceRegistry.getSingleton().printStatistics(System.out);
+		WordNetWrapper.printStatistics(System.out);
+
+		// dump feature extraction counters if profiling is enabled
+		FeatureProfiler.dump();
 
 		// get score
 		File outputFile = new File(outDir + File.separator + "Score");
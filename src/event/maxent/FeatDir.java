@@ -5,7 +5,6 @@ import java.io.File;
 import java.io.*;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -13,12 +12,13 @@ import java.util.List;
 import org.dom4j.DocumentException;
 
 import util.Controller;
+import util.FeatureProfiler;
 
 import commons.Alphabets;
 import commons.Document;
 import commons.Sentence;
-import commons.TextFeatureGenerator;
 
+import classifiers.maxent.FeatureTable;
 import classifiers.maxent.MaxentTrainer;
 
 import cc.mallet.classify.Classifier;
@@ -56,12 +56,10 @@ public class FeatDir
 	protected void printFeatureTableToFile(File srcDir, File trainingFileList,
 			Controller controller)
 	{
-		Alphabets alphabets = new Alphabets();
-
 		try
 		{
 			List<SentenceInstance> trainInstanceList = readInstanceList(srcDir,
-					trainingFileList, alphabets, controller, true);
+					trainingFileList, controller, true);
 
 			/* 改写为写入到具体文件中 */
 		}
@@ -77,19 +75,18 @@ public class FeatDir
 
 	/**
 	 * give a file list and home dir, get an instance list
+	 * each document has its own alphabets, since the documents are featurized by several threads
 	 * @param srcDir
 	 * @param file_list
 	 * @throws IOException
 	 * @throws DocumentException
 	 */
 	public static List<SentenceInstance> readInstanceList(File srcDir,
-			File file_list, Alphabets alphabets, Controller controller,
-			boolean learnable) throws IOException, DocumentException
+			File file_list, final Controller controller,
+			final boolean learnable) throws IOException, DocumentException
 	{
 		System.out.println("Reading training instance ...");
 
-		PrintWriter writer = new PrintWriter(new File(featTableFileName));
-
 		File feat_dir = new File(featDir);
 		if (feat_dir.exists())
 		{
@@ -97,73 +94,45 @@ public class FeatDir
 		}
 		feat_dir.mkdir();
 
-		List<SentenceInstance> instancelist = new ArrayList<SentenceInstance>();
-		BufferedReader reader = new BufferedReader(new FileReader(file_list));
-		String line = "";
-		TextFeatureGenerator featGen = new TextFeatureGenerator();
-		while ((line = reader.readLine()) != null)
-		{
-			boolean monoCase = line.contains("bn/") ? true : false;
-			String fileName = srcDir + File.separator + line;
-
-			FileWriter fw = new FileWriter(featDir
-					+ fileName.substring(fileName.lastIndexOf("/") + 1));
-			System.out.println(fileName);
-
-			/* Document已经提供ACE各种文本的信息, 已经过POS, chunking和切句子和分词等 */
-			Document doc = new Document(fileName, true, monoCase);
-
-			// fill in text feature vector for each token
-			/* 特征生成好之后 是往doc中存储 */
-			featGen.fillTextFeatures(doc);
-
-			for (int sent_id = 0; sent_id < doc.getSentences().size(); sent_id++)
-			{
-				Sentence sent = doc.getSentences().get(sent_id);
-				// during learning, skip instances that do not have event mentions
-				/* 训练过程中，跳过没有event mention的句子 */
-
-				SentenceInstance inst = new SentenceInstance(sent, alphabets,
-						controller, learnable);
-				instancelist.add(inst);
-
-				SentenceAssignment target = (SentenceAssignment) inst.target;
-				for (int i = 0; i < inst.size(); i++)
+		// documents are preprocessed and featurized in parallel, the rows of each document are in its
+		// file in the feat dir, and they are appended to the feature table in the order of the file list
+		FeatureTableGenerator generator = new FeatureTableGenerator(srcDir,
+				feat_dir, new FeatureTableGenerator.Featurizer()
 				{
-					String instanceName = "Trigger" + i;
-					String triggerLabel = target.getLabelAtToken(i);
-					writer.print(instanceName);
-					writer.print(" ");
-					writer.print(triggerLabel);
-
-					fw.write(instanceName);
-					fw.write(" ");
-					fw.write(triggerLabel);
-
-					// output features for one trigger candidate
-					List<String> features = ((List<List<String>>) inst
-							.get(InstanceAnnotations.NodeTextFeatureVectors))
-							.get(i);
-					for (String feature : features)
+					public List<SentenceInstance> featurize(Document doc,
+							FeatureTable.Writer writer) throws IOException
 					{
-						writer.print(" ");
-						writer.print(feature + ":1");
-
-						fw.write(" ");
-						fw.write(feature + ":1");
+						List<SentenceInstance> instancelist = new ArrayList<SentenceInstance>();
+						Alphabets alphabets = new Alphabets();
+
+						/* Document已经提供ACE各种文本的信息, 已经过POS, chunking和切句子和分词等 */
+						/* 特征生成好之后 是往doc中存储 */
+						for (int sent_id = 0; sent_id < doc.getSentences().size(); sent_id++)
+						{
+							Sentence sent = doc.getSentences().get(sent_id);
+
+							SentenceInstance inst = new SentenceInstance(sent,
+									alphabets, controller, learnable);
+							instancelist.add(inst);
+
+							SentenceAssignment target = (SentenceAssignment) inst.target;
+							for (int i = 0; i < inst.size(); i++)
+							{
+								String instanceName = "Trigger" + i;
+								String triggerLabel = target.getLabelAtToken(i);
+
+								// output features for one trigger candidate
+								List<String> features = ((List<List<String>>) inst
+										.get(InstanceAnnotations.NodeTextFeatureVectors))
+										.get(i);
+								writer.addRow(instanceName, triggerLabel, features);
+							}
+						}
+						return instancelist;
 					}
-
-					writer.println();
-
-					fw.write("\n");
-				}
-
-			}
-
-			fw.close();
-		}
-
-		writer.close();
+				});
+		List<SentenceInstance> instancelist = generator.generate(file_list,
+				new File(featTableFileName));
 
 		System.out.println("done");
 		return instancelist;
@@ -214,6 +183,9 @@ public class FeatDir
 		Classifier model = trainer.trainClassifier(srcDir, trainingFileList,
 				modelFile, controller);
 
+		// dump feature extraction counters if profiling is enabled
+		FeatureProfiler.dump();
+
 		// print out weights or any other detail
 		//		PrintStream out = new PrintStream(modelFile.getAbsoluteFile() + ".weights");
 		//		printFeatureWeights((MaxEnt) model, out);
@@ -0,0 +1,157 @@
+package event.maxent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import classifiers.maxent.FeatureTable;
+
+import commons.Document;
+import commons.DocumentPreprocessor;
+
+import event.types.SentenceInstance;
+
+/**
+ * makes the maxent feature table of a file list in parallel: each document is preprocessed and featurized
+ * by the preprocessing threads (-DpreprocessThreads), and its rows are written into its own block file
+ * in the block dir (a text or a binary table, see FeatureTable.newBlockWriter). The blocks are appended
+ * to the table in the order of the file list, as they are consumed, without parsing the rows again
+ * (see FeatureTable.BlockMerger)
+ */
+public class FeatureTableGenerator extends DocumentPreprocessor
+{
+	/**
+	 * makes the rows of one document, it's called by several threads at the same time
+	 */
+	static public interface Featurizer
+	{
+		/**
+		 * @param doc
+		 * @param writer the block of the document
+		 * @return the instances to be returned by generate(), or null
+		 * @throws Exception
+		 */
+		List<SentenceInstance> featurize(Document doc, FeatureTable.Writer writer) throws Exception;
+	}
+
+	protected File blockDir;
+	protected Featurizer featurizer;
+	// the instances of the documents that are featurized but not consumed yet
+	protected Map<Document, List<SentenceInstance>> instances = Collections
+			.synchronizedMap(new IdentityHashMap<Document, List<SentenceInstance>>());
+
+	/**
+	 * @param srcDir source dir of the file list
+	 * @param blockDir the block of a document is blockDir/[base name of the document]
+	 * @param featurizer
+	 */
+	public FeatureTableGenerator(File srcDir, File blockDir, Featurizer featurizer)
+	{
+		super(srcDir, true);
+		this.blockDir = blockDir;
+		this.featurizer = featurizer;
+	}
+
+	/**
+	 * the block of a document, it's named by the base name of the document like the other readers
+	 * of the feature dir expect (featDir/x for bn/x)
+	 * @param line
+	 * @return
+	 */
+	public File getBlockFile(String line)
+	{
+		line = line.trim();
+		return new File(blockDir, line.substring(line.lastIndexOf("/") + 1));
+	}
+
+	@Override
+	protected Document preprocess(String line) throws Exception
+	{
+		Document doc = super.preprocess(line);
+		File block = getBlockFile(line);
+		FeatureTable.Writer writer = FeatureTable.newBlockWriter(block);
+		boolean done = false;
+		try
+		{
+			List<SentenceInstance> list = featurizer.featurize(doc, writer);
+			if(list != null)
+			{
+				instances.put(doc, list);
+			}
+			done = true;
+		}
+		finally
+		{
+			writer.close();
+			// a document that fails is not in the table
+			if(!done)
+			{
+				block.delete();
+			}
+		}
+		return doc;
+	}
+
+	/**
+	 * featurize the documents of a file list, and append their blocks to the table in the order of the file list
+	 * @param fileList
+	 * @param table null if only the blocks are written
+	 * @return the instances that the featurizer returned, in the order of the file list
+	 * @throws IOException also if a document fails, unless failed documents are skipped (see check),
+	 * or if two documents of the file list have the same base name
+	 */
+	public List<SentenceInstance> generate(File fileList, File table) throws IOException
+	{
+		List<String> lines = readFileList(fileList);
+		// the documents are written at the same time, so a block must not be shared
+		Set<File> blocks = new HashSet<File>();
+		for(String line : lines)
+		{
+			if(!blocks.add(getBlockFile(line)))
+			{
+				throw new IOException("two documents of " + fileList + " have the block " + getBlockFile(line));
+			}
+		}
+		blockDir.mkdirs();
+		List<SentenceInstance> ret = new ArrayList<SentenceInstance>();
+		FeatureTable.BlockMerger merger = table == null ? null : new FeatureTable.BlockMerger(table);
+		try
+		{
+			Iterator<Result> results = process(lines);
+			while(results.hasNext())
+			{
+				Result result = results.next();
+				System.out.println(result.fileName);
+				if(!check(result))
+				{
+					continue;
+				}
+				List<SentenceInstance> list = instances.remove(result.doc);
+				if(list != null)
+				{
+					ret.addAll(list);
+				}
+				if(merger != null)
+				{
+					merger.append(result.fileName, getBlockFile(result.line));
+				}
+			}
+		}
+		finally
+		{
+			shutdown();
+			if(merger != null)
+			{
+				merger.close();
+			}
+		}
+		return ret;
+	}
+}
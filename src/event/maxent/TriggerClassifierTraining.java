@@ -11,12 +11,13 @@ import org.dom4j.DocumentException;
 import ace.acetypes.AceMention;
 
 import util.Controller;
+import util.FeatureProfiler;
 
 import commons.Alphabets;
 import commons.Document;
 import commons.Sentence;
-import commons.TextFeatureGenerator;
 
+import classifiers.maxent.FeatureTable;
 import classifiers.maxent.MaxentTrainer;
 
 import cc.mallet.classify.Classifier;
@@ -29,6 +30,8 @@ import event.types.SentenceInstance.InstanceAnnotations;
 public class TriggerClassifierTraining
 {
 	public static String featTableFileName = "Temp/FeatureTableEvent";
+	// the argument rows of each document
+	public static String argDir = ArgumentFeature.arg_dir_path;
 
 	public Classifier trainClassifier(File srcDir, File trainingFileList,
 			File modelFile, Controller controller)
@@ -41,14 +44,12 @@ public class TriggerClassifierTraining
 	protected void printFeatureTableToFile(File srcDir, File trainingFileList,
 			Controller controller)
 	{
-		Alphabets alphabets = new Alphabets();
-
 		try
 		{
 			List<SentenceInstance> trainInstanceList = readInstanceList(srcDir,
-					trainingFileList, alphabets, controller, true);
+					trainingFileList, controller, true);
 
-			PrintWriter writer = new PrintWriter(new File(featTableFileName));
+			FeatureTable.Writer writer = FeatureTable.newWriter(new File(featTableFileName));
 			for (SentenceInstance inst : trainInstanceList)
 			{
 				SentenceAssignment target = (SentenceAssignment) inst.target;
@@ -56,21 +57,12 @@ public class TriggerClassifierTraining
 				{
 					String instanceName = "Trigger" + i;
 					String triggerLabel = target.getLabelAtToken(i);
-					writer.print(instanceName);
-					writer.print(" ");
-					writer.print(triggerLabel);
 
 					// output features for one trigger candidate
 					List<String> features = ((List<List<String>>) inst
 							.get(InstanceAnnotations.NodeTextFeatureVectors))
 							.get(i);
-					for (String feature : features)
-					{
-						writer.print(" ");
-						writer.print(feature + ":1");
-					}
-
-					writer.println();
+					writer.addRow(instanceName, triggerLabel, features);
 				}
 			}
 			writer.close();
@@ -86,104 +78,109 @@ public class TriggerClassifierTraining
 	}
 
 	/**
-	 * give a file list and home dir, get an instance list
-	 * @param srcDir
-	 * @param file_list
-	 * @throws IOException
-	 * @throws DocumentException
+	 * the argument rows of the triggers of a document, one block per document in arg_dir_path
+	 * each document has its own alphabets, since the documents are featurized by several threads
+	 * @param controller
+	 * @param learnable
+	 * @return
 	 */
-	public static List<SentenceInstance> readInstanceList(File srcDir,
-			File file_list, Alphabets alphabets, Controller controller,
-			boolean learnable) throws IOException, DocumentException
+	protected static FeatureTableGenerator.Featurizer getArgumentFeaturizer(
+			final Controller controller, final boolean learnable)
 	{
-		System.out.println("Reading training instance ...");
-
-		List<SentenceInstance> instancelist = new ArrayList<SentenceInstance>();
-		BufferedReader reader = new BufferedReader(new FileReader(file_list));
-		String line = "";
-		TextFeatureGenerator featGen = new TextFeatureGenerator();
-		while ((line = reader.readLine()) != null)
+		return new FeatureTableGenerator.Featurizer()
 		{
-			boolean monoCase = line.contains("bn/") ? true : false;
-			String fileName = srcDir + File.separator + line;
-
-			//cyd start 
-			PrintWriter writer = new PrintWriter(
-					new File(ArgumentFeature.arg_dir_path
-							+ fileName.substring(fileName.lastIndexOf("/") + 1)));
-			//cyd end
-
-			System.out.println(fileName);
-
-			Document doc = new Document(fileName, true, monoCase);
-			// fill in text feature vector for each token
-			featGen.fillTextFeatures(doc);
-			for (int sent_id = 0; sent_id < doc.getSentences().size(); sent_id++)
+			public List<SentenceInstance> featurize(Document doc,
+					FeatureTable.Writer writer) throws IOException
 			{
-				Sentence sent = doc.getSentences().get(sent_id);
-				// during learning, skip instances that do not have event mentions 
-				if (learnable && controller.skipNonEventSent)
+				Alphabets alphabets = new Alphabets();
+				for (int sent_id = 0; sent_id < doc.getSentences().size(); sent_id++)
 				{
-					if (sent.eventMentions != null
-							&& sent.eventMentions.size() > 0)
+					Sentence sent = doc.getSentences().get(sent_id);
+					// during learning, skip instances that do not have event mentions 
+					if (learnable && controller.skipNonEventSent)
 					{
-						SentenceInstance inst = new SentenceInstance(sent,
-								alphabets, controller, learnable);
-						
-						SentenceAssignment target = (SentenceAssignment) inst.target;
-						Map<Integer, Map<Integer, Integer>> edgeAssn = target
-								.getEdgeAssignment();
-						for (int i = 0; i < inst.size(); i++)
+						if (sent.eventMentions != null
+								&& sent.eventMentions.size() > 0)
 						{
-							String triggerLabel = target.getLabelAtToken(i);
-							// this is a trigger
-							if (!triggerLabel
-									.equals(SentenceAssignment.Default_Trigger_Label))
-							{
-								Map<Integer, Integer> edgeAssnTrigger = null;
-								if (edgeAssn != null)
-								{
-									edgeAssnTrigger = edgeAssn.get(i);
-								}
-								// print feature table for each argument
-								for (int k = 0; k < inst.eventArgCandidates
-										.size(); k++)
-								{
-									String argRole = SentenceAssignment.Default_Argument_Label;
-									if (edgeAssnTrigger != null
-											&& edgeAssnTrigger.get(k) != null)
-									{
-										argRole = (String) inst.alphabets.edgeTargetAlphabet
-												.lookupObject(edgeAssnTrigger
-														.get(k));
-									}
-
-									String argName = "Arg" + "#" + i + "#" + k;
-									writer.print(argName);
-									writer.print(" ");
-									writer.print(argRole);
-
-									// output features for one argument candidate
-									AceMention mention = inst.eventArgCandidates
-											.get(k);
-									List<String> features = EdgeFeatureGenerator
-											.get_edge_text_features(inst, i,
-													mention);
-									for (String feature : features)
-									{
-										writer.print(" ");
-										writer.print(feature + ":1");
-									}
-									writer.println();
-								}
-							}
+							SentenceInstance inst = new SentenceInstance(sent,
+									alphabets, controller, learnable);
+							printArgumentRows(inst, writer);
 						}
 					}
 				}
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * print the rows of the argument candidates of each trigger in the instance
+	 * @param inst
+	 * @param writer
+	 * @throws IOException
+	 */
+	protected static void printArgumentRows(SentenceInstance inst,
+			FeatureTable.Writer writer) throws IOException
+	{
+		SentenceAssignment target = (SentenceAssignment) inst.target;
+		Map<Integer, Map<Integer, Integer>> edgeAssn = target
+				.getEdgeAssignment();
+		for (int i = 0; i < inst.size(); i++)
+		{
+			String triggerLabel = target.getLabelAtToken(i);
+			// this is a trigger
+			if (!triggerLabel
+					.equals(SentenceAssignment.Default_Trigger_Label))
+			{
+				Map<Integer, Integer> edgeAssnTrigger = null;
+				if (edgeAssn != null)
+				{
+					edgeAssnTrigger = edgeAssn.get(i);
+				}
+				// print feature table for each argument
+				for (int k = 0; k < inst.eventArgCandidates.size(); k++)
+				{
+					String argRole = SentenceAssignment.Default_Argument_Label;
+					if (edgeAssnTrigger != null
+							&& edgeAssnTrigger.get(k) != null)
+					{
+						argRole = (String) inst.alphabets.edgeTargetAlphabet
+								.lookupObject(edgeAssnTrigger.get(k));
+					}
+
+					String argName = "Arg" + "#" + i + "#" + k;
 
+					// output features for one argument candidate
+					AceMention mention = inst.eventArgCandidates.get(k);
+					List<String> features = EdgeFeatureGenerator
+							.get_edge_text_features(inst, i, mention);
+					writer.addRow(argName, argRole, features);
+				}
 			}
-			writer.close();
 		}
+	}
+
+	/**
+	 * give a file list and home dir, get an instance list
+	 * the documents are preprocessed and featurized in parallel, and the argument rows of each document
+	 * are written into its file in arg_dir_path
+	 * @param srcDir
+	 * @param file_list
+	 * @throws IOException
+	 * @throws DocumentException
+	 */
+	public static List<SentenceInstance> readInstanceList(File srcDir,
+			File file_list, Controller controller,
+			boolean learnable) throws IOException, DocumentException
+	{
+		System.out.println("Reading training instance ...");
+
+		List<SentenceInstance> instancelist = new ArrayList<SentenceInstance>();
+		//cyd start 
+		FeatureTableGenerator generator = new FeatureTableGenerator(srcDir,
+				new File(argDir), getArgumentFeaturizer(controller, learnable));
+		generator.generate(file_list, null);
+		//cyd end
 
 		System.out.println("done");
 		return instancelist;
@@ -234,6 +231,9 @@ public class TriggerClassifierTraining
 		Classifier model = trainer.trainClassifier(srcDir, trainingFileList,
 				modelFile, controller);
 
+		// dump feature extraction counters if profiling is enabled
+		FeatureProfiler.dump();
+
 		// print out weights or any other detail
 		PrintStream out = new PrintStream(modelFile.getAbsoluteFile()
 				+ ".weights");
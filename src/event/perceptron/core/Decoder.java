@@ -1,17 +1,25 @@
 package event.perceptron.core;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
+import org.apache.commons.io.FileUtils;
 import org.dom4j.DocumentException;
 
+import util.FeatureProfiler;
+import util.ParserWrapper;
+import util.Pipeline;
+import util.ResourceRegistry;
+import util.WordNetWrapper;
+
 import commons.Alphabets;
 import commons.Document;
+import commons.DocumentPreprocessor;
 import commons.TextFeatureGenerator;
 
 import classifiers.perceptron.AbstractAssignment;
@@ -31,6 +39,9 @@ import event.types.SentenceInstance;
 
 public class Decoder
 {
+	// -DrawText=true: the files of the file list are plain text without APF annotations
+	static public final String RawTextProperty = "rawText";
+	
 	static public void writeEntities (PrintWriter w, AceDocument aceDoc, List<AceEvent> events) {
 		w.println ("<?xml version=\"1.0\"?>");
 		w.println ("<!DOCTYPE source_file SYSTEM \"apf.v5.1.1.dtd\">");
@@ -62,6 +73,103 @@ public class Decoder
 		w.close();
 	}
 	
+	/**
+	 * write the predicted events of a document that has no APF annotations (e.g. raw text)
+	 * @param w
+	 * @param docID
+	 * @param events
+	 */
+	static public void writeEvents (PrintWriter w, String docID, List<AceEvent> events) {
+		w.println ("<?xml version=\"1.0\"?>");
+		w.println ("<!DOCTYPE source_file SYSTEM \"apf.v5.1.1.dtd\">");
+		w.println ("<source_file URI=\"" + docID + "\" SOURCE=\"text\" TYPE=\"text\">");
+		w.println ("<document DOCID=\"" + docID + "\">");
+		for (int i=0; i<events.size(); i++) {
+			AceEvent event = (AceEvent) events.get(i);
+			event.write(w);
+		}
+		w.println ("</document>");
+		w.println ("</source_file>");
+		w.close();
+	}
+	
+	/**
+	 * a document that goes through the stages of the decoding pipeline
+	 */
+	static class DocumentTask
+	{
+		// the line in the file list
+		String line;
+		String fileName;
+		Document doc;
+		List<SentenceInstance> instances;
+		List<AbstractAssignment> results;
+		
+		DocumentTask(String line, String fileName)
+		{
+			this.line = line;
+			this.fileName = fileName;
+		}
+		
+		public String toString()
+		{
+			return fileName;
+		}
+	}
+	
+	/**
+	 * write the entities and predicted events of a decoded document in APF format
+	 * @param perceptron
+	 * @param task
+	 * @param outDir
+	 * @throws IOException
+	 */
+	static protected void writeDocument(Perceptron perceptron, DocumentTask task, File outDir) throws IOException
+	{
+		Document doc = task.doc;
+		File outputFile = new File(outDir + File.separator + task.line);
+		if(!outputFile.getParentFile().exists())
+		{
+			outputFile.getParentFile().mkdirs();
+		}
+		String docID = doc.docID.substring(doc.docID.lastIndexOf(File.separator) + 1);
+		String id_prefix = docID + "-" + "EV";
+		PrintWriter out = new PrintWriter(outputFile);
+		
+		// output entities and predicted events from doc
+		List<AceEvent> eventsInDoc = new ArrayList<AceEvent>();
+		List<? extends AbstractInstance> canonicalList = perceptron.getCanonicalInstanceList(task.instances);
+		for(int inst_id=0; inst_id < canonicalList.size(); inst_id++)
+		{
+			SentenceAssignment assn = (SentenceAssignment) task.results.get(inst_id);
+			SentenceInstance inst = (SentenceInstance) canonicalList.get(inst_id);
+			String id = id_prefix + inst_id;
+			// each event only contains one single event mention
+			List<AceEvent> events = inst.getEvents(assn, id, doc.allText);
+			eventsInDoc.addAll(events);
+		}
+		if(doc.getAceAnnotations() == null)
+		{
+			writeEvents(out, docID, eventsInDoc);
+		}
+		else
+		{
+			writeEntities(out, doc.getAceAnnotations(), eventsInDoc);
+		}
+		out.close();
+	}
+	
+	/**
+	 * the documents go through a pipeline of stages: read --> parse --> features --> decode --> write
+	 * the number of threads of each stage is given by -Dpipeline.read/parse/features/decode/write=N,
+	 * parse defaults to -DpreprocessThreads=N (default: the number of processors),
+	 * and the capacity of the queues between stages by -Dpipeline.capacity=N
+	 * a document that fails stops the decoding, unless failed documents are skipped by -DpreprocessSkipErrors=true
+	 * with -DrawText=true, the files are read as plain text (no .sgm/.apf.xml), and only triggers are decoded
+	 * @param args
+	 * @throws IOException
+	 * @throws DocumentException
+	 */
 	static public void main(String[] args) throws IOException, DocumentException
 	{
 		if(args.length < 3)
@@ -74,72 +182,128 @@ public class Decoder
 			System.exit(-1);
 		}
 		
+		// load the resources in parallel while reading the model
+		ResourceRegistry.getSingleton().warmUp();
+		
 		// Perceptron read model from the serialized file
-		Perceptron perceptron = Perceptron.deserializeObject(new File(args[0]));
-		Alphabets alphabets = new Alphabets();
+		final Perceptron perceptron = Perceptron.deserializeObject(new File(args[0]));
 		
-		File srcDir = new File(args[1]);
+		final File srcDir = new File(args[1]);
 		File fileList = new File(args[2]);
-		File outDir = new File(args[3]);
+		final File outDir = new File(args[3]);
 		if(!outDir.exists())
 		{
 			outDir.mkdirs();
 		}
 		
-		BufferedReader reader = new BufferedReader(new FileReader(fileList));
-		String line = "";
-		TextFeatureGenerator featGen = new TextFeatureGenerator();
-		while((line = reader.readLine()) != null)
-		{
-			List<SentenceInstance> localInstanceList = null;
-			boolean monoCase = line.contains("bn/") ? true : false;
-			String fileName = srcDir + File.separator + line;
-			System.out.println(fileName);
-			Document doc = null;
-			if(perceptron.controller.crossSent)
+		final boolean rawText = Boolean.getBoolean(RawTextProperty);
+		final TextFeatureGenerator featGen = new TextFeatureGenerator();
+		Pipeline<DocumentTask> pipeline = new Pipeline<DocumentTask>(Pipeline.getParallelism("capacity", 4));
+		pipeline.setSkipErrors(Boolean.getBoolean(DocumentPreprocessor.SkipErrorsProperty));
+		// read the APF annotations and text, split sentences and tokenize
+		pipeline.add(new Pipeline.Stage<DocumentTask>("read", Pipeline.getParallelism("read", 2))
+		{
+			protected boolean process(DocumentTask task) throws Exception
 			{
-				;	
+				System.out.println(task.fileName);
+				boolean monoCase = task.line.contains("bn/") ? true : false;
+				if(rawText)
+				{
+					String text = FileUtils.readFileToString(new File(task.fileName), "UTF-8");
+					task.doc = Document.fromText(task.fileName, text, monoCase);
+				}
+				else
+				{
+					task.doc = new Document(task.fileName, true, monoCase);
+				}
+				return true;
 			}
-			else
+		});
+		// POS tagging, parsing and text features
+		pipeline.add(new Pipeline.Stage<DocumentTask>("parse", Pipeline.getParallelism("parse", DocumentPreprocessor.getDefaultThreads()))
+		{
+			protected boolean process(DocumentTask task) throws Exception
 			{
-				doc = new Document(fileName, true, monoCase);
 				// fill in text feature vector for each token
-				featGen.fillTextFeatures(doc);
+				featGen.fillTextFeatures(task.doc);
+				return true;
 			}
-			localInstanceList = doc.getInstanceList(alphabets, 
-					perceptron.controller, true);
-			
-			// docoding
-			List<AbstractAssignment> localResults = perceptron.decoding(localInstanceList);
-			
-			// print to docs
-			File outputFile = new File(outDir + File.separator + line);
-			if(!outputFile.getParentFile().exists())
+		});
+		pipeline.add(new Pipeline.Stage<DocumentTask>("features", Pipeline.getParallelism("features", 1))
+		{
+			protected boolean process(DocumentTask task) throws Exception
 			{
-				outputFile.getParentFile().mkdirs();
+				// each document has its own alphabets (as in the maxent decoder), so that the documents
+				// can be featurized by several threads (-Dpipeline.features=N)
+				task.instances = task.doc.getInstanceList(new Alphabets(), perceptron.controller, true);
+				return true;
 			}
-			String docID = doc.docID.substring(doc.docID.lastIndexOf(File.separator) + 1);
-			String id_prefix = docID + "-" + "EV";
-			PrintWriter out = new PrintWriter(outputFile);
-			
-			// output entities and predicted events from doc
-			List<AceEvent> eventsInDoc = new ArrayList<AceEvent>();
-			List<? extends AbstractInstance> canonicalList = perceptron.getCanonicalInstanceList(localInstanceList);
-			for(int inst_id=0; inst_id < canonicalList.size(); inst_id++)
+		});
+		pipeline.add(new Pipeline.Stage<DocumentTask>("decode", Pipeline.getParallelism("decode", 1))
+		{
+			protected boolean process(DocumentTask task) throws Exception
 			{
-				SentenceAssignment assn = (SentenceAssignment) localResults.get(inst_id);
-				SentenceInstance inst = (SentenceInstance) canonicalList.get(inst_id);
-				String id = id_prefix + inst_id;
-				// each event only contains one single event mention
-				List<AceEvent> events = inst.getEvents(assn, id, doc.allText);
-				eventsInDoc.addAll(events);
+				task.results = perceptron.decoding(task.instances);
+				return true;
 			}
-			writeEntities(out, doc.getAceAnnotations(), eventsInDoc);
-			out.close();
+		});
+		pipeline.add(new Pipeline.Stage<DocumentTask>("write", Pipeline.getParallelism("write", 1))
+		{
+			protected boolean process(DocumentTask task) throws Exception
+			{
+				writeDocument(perceptron, task, outDir);
+				// release the document
+				task.doc = null;
+				task.instances = null;
+				task.results = null;
+				return true;
+			}
+		});
+		
+		final Iterator<String> lines = DocumentPreprocessor.readFileList(fileList).iterator();
+		try
+		{
+			pipeline.run(new Iterator<DocumentTask>()
+			{
+				public boolean hasNext()
+				{
+					return lines.hasNext();
+				}
+				
+				public DocumentTask next()
+				{
+					String line = lines.next();
+					return new DocumentTask(line, srcDir + File.separator + line);
+				}
+				
+				public void remove()
+				{
+					throw new UnsupportedOperationException();
+				}
+			});
 		}
-		reader.close();
+		catch(InterruptedException e)
+		{
+			e.printStackTrace();
+		}
+		catch(ExecutionException e)
+		{
+			pipeline.printStatistics(System.out);
+			throw new IOException(e.getMessage(), e.getCause());
+		}
+		pipeline.printStatistics(System.out);
+		ParserWrapper.printStatistics(System.out);
+		WordNetWrapper.printStatistics(System.out);
+		ResourceRegistry.getSingleton().printStatistics(System.out);
 		
-		// get score
+		// dump feature extraction counters if profiling is enabled
+		FeatureProfiler.dump();
+		
+		// get score, there is no gold standard for raw text
+		if(rawText)
+		{
+			return;
+		}
 		File outputFile = new File(outDir + File.separator + "Score");
 		EventScorer.main(new String[]{args[1], args[3], args[2], outputFile.getAbsolutePath()});
 	}
@@ -0,0 +1,627 @@
+package event.perceptron.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import util.ParserWrapper;
+import util.ResourceRegistry;
+import util.WordNetWrapper;
+
+import commons.Alphabets;
+import commons.Document;
+import commons.TextFeatureGenerator;
+
+import classifiers.perceptron.AbstractAssignment;
+import classifiers.perceptron.AbstractBeamSearch;
+import classifiers.perceptron.Perceptron;
+
+import ace.acetypes.AceEvent;
+import ace.acetypes.AceEventMention;
+import ace.acetypes.AceEventMentionArgument;
+
+import event.types.SentenceAssignment;
+import event.types.SentenceInstance;
+
+/**
+ * a resident decoding service on localhost, which loads the model and the resources once
+ * and decodes the documents that are posted to it
+ *
+ * POST /decode?id=ID&format=apf|json&monoCase=true  the body is the plain text of a document,
+ *                                                     up to -Dservice.maxBody=BYTES
+ * GET|POST /decode?file=PATH&format=apf|json          an ACE document (PATH.sgm, PATH.apf.xml) under the dir
+ *                                                     -Dservice.fileDir=DIR, it's disabled if that's not given
+ * GET /metrics                                        number of requests, latency, queue depth and batches
+ *
+ * the requests are handled concurrently (-Dservice.threads=N) up to the features of the sentences,
+ * then the sentences of all requests are put in one queue, and the decoder threads (-Dservice.decoders=N),
+ * each with its own beam searcher, take them in batches of up to -Dservice.batch=N sentences,
+ * waiting at most -Dservice.batchDelay=MS for a batch to fill
+ */
+public class DecoderServer
+{
+	static public final int BatchSize = Integer.getInteger("service.batch", 32);
+	static public final long BatchDelay = Long.getLong("service.batchDelay", 5);
+	static public final int QueueCapacity = Integer.getInteger("service.queue", 4096);
+	static public final int Decoders = Integer.getInteger("service.decoders", Runtime.getRuntime().availableProcessors());
+	static public final int MaxBodySize = Integer.getInteger("service.maxBody", 1 << 20);
+	static public final String FileDir = System.getProperty("service.fileDir");
+
+	/**
+	 * the sentences of a request, which are decoded by the decoder threads
+	 */
+	static class DecodeRequest
+	{
+		List<SentenceInstance> instances;
+		AbstractAssignment[] results;
+		CountDownLatch done;
+		volatile Throwable error;
+
+		DecodeRequest(List<SentenceInstance> instances)
+		{
+			this.instances = instances;
+			this.results = new AbstractAssignment[instances.size()];
+			this.done = new CountDownLatch(instances.size());
+		}
+	}
+
+	/**
+	 * a sentence in the queue of the decoder
+	 */
+	static class SentenceTask
+	{
+		DecodeRequest request;
+		int index;
+
+		SentenceTask(DecodeRequest request, int index)
+		{
+			this.request = request;
+			this.index = index;
+		}
+	}
+
+	protected Perceptron perceptron;
+	protected TextFeatureGenerator featGen = new TextFeatureGenerator();
+	protected BlockingQueue<SentenceTask> queue = new LinkedBlockingQueue<SentenceTask>(QueueCapacity);
+
+	// statistics
+	protected AtomicLong numRequests = new AtomicLong();
+	protected AtomicLong numFailed = new AtomicLong();
+	protected AtomicLong latencyNanos = new AtomicLong();
+	protected AtomicLong maxLatencyNanos = new AtomicLong();
+	protected AtomicInteger inFlight = new AtomicInteger();
+	protected AtomicInteger maxQueueDepth = new AtomicInteger();
+	protected AtomicLong numBatches = new AtomicLong();
+	protected AtomicLong numSentences = new AtomicLong();
+	protected AtomicLong decodeNanos = new AtomicLong();
+	protected AtomicInteger docCounter = new AtomicInteger();
+
+	public DecoderServer(Perceptron perceptron)
+	{
+		this.perceptron = perceptron;
+		for(int i=0; i<Math.max(1, Decoders); i++)
+		{
+			final AbstractBeamSearch beamSearcher = perceptron.newBeamSearcher();
+			Thread decoder = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					decodeLoop(beamSearcher);
+				}
+			}, "decoder-" + i);
+			decoder.setDaemon(true);
+			decoder.start();
+		}
+	}
+
+	/**
+	 * take the sentences from the queue in batches and decode them, it runs on each decoder thread
+	 * @param beamSearcher the beam searcher of the thread
+	 */
+	protected void decodeLoop(AbstractBeamSearch beamSearcher)
+	{
+		List<SentenceTask> batch = new ArrayList<SentenceTask>(BatchSize);
+		List<SentenceInstance> instances = new ArrayList<SentenceInstance>(BatchSize);
+		while(true)
+		{
+			try
+			{
+				batch.add(queue.take());
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BatchDelay);
+				while(batch.size() < BatchSize)
+				{
+					queue.drainTo(batch, BatchSize - batch.size());
+					long wait = deadline - System.nanoTime();
+					if(batch.size() >= BatchSize || wait <= 0)
+					{
+						break;
+					}
+					SentenceTask task = queue.poll(wait, TimeUnit.NANOSECONDS);
+					if(task == null)
+					{
+						break;
+					}
+					batch.add(task);
+				}
+			}
+			catch(InterruptedException e)
+			{
+				e.printStackTrace();
+				return;
+			}
+
+			for(SentenceTask task : batch)
+			{
+				instances.add(task.request.instances.get(task.index));
+			}
+			long start = System.nanoTime();
+			try
+			{
+				List<AbstractAssignment> results = perceptron.decoding(instances, beamSearcher);
+				for(int i=0; i<batch.size(); i++)
+				{
+					SentenceTask task = batch.get(i);
+					task.request.results[task.index] = results.get(i);
+				}
+			}
+			catch(Throwable e)
+			{
+				// decode the sentences one by one, so that only the requests of the sentences that fail get the error
+				for(SentenceTask task : batch)
+				{
+					try
+					{
+						task.request.results[task.index] = perceptron.decoding(task.request.instances.get(task.index), beamSearcher);
+					}
+					catch(Throwable err)
+					{
+						err.printStackTrace();
+						task.request.error = err;
+					}
+				}
+			}
+			decodeNanos.addAndGet(System.nanoTime() - start);
+			numBatches.incrementAndGet();
+			numSentences.addAndGet(batch.size());
+			for(SentenceTask task : batch)
+			{
+				task.request.done.countDown();
+			}
+			batch.clear();
+			instances.clear();
+		}
+	}
+
+	/**
+	 * preprocess a document, decode its sentences in the shared queue and get the predicted events
+	 * @param doc
+	 * @return
+	 * @throws Exception
+	 */
+	public List<AceEvent> decode(Document doc) throws Exception
+	{
+		// fill in text feature vector for each token
+		featGen.fillTextFeatures(doc);
+		// each document has its own alphabets, as in Decoder, so the features of the requests are not kept
+		// and the requests are featurized at the same time without sharing them
+		List<SentenceInstance> instances = doc.getInstanceList(new Alphabets(), perceptron.controller, true);
+
+		DecodeRequest request = new DecodeRequest(instances);
+		for(int i=0; i<instances.size(); i++)
+		{
+			queue.put(new SentenceTask(request, i));
+			updateMax(maxQueueDepth, queue.size());
+		}
+		request.done.await();
+		if(request.error != null)
+		{
+			throw new RuntimeException("failed to decode " + doc.docID, request.error);
+		}
+
+		String docID = doc.docID.substring(doc.docID.lastIndexOf(File.separator) + 1);
+		String id_prefix = docID + "-" + "EV";
+		List<AceEvent> eventsInDoc = new ArrayList<AceEvent>();
+		for(int inst_id=0; inst_id < instances.size(); inst_id++)
+		{
+			SentenceAssignment assn = (SentenceAssignment) request.results[inst_id];
+			SentenceInstance inst = instances.get(inst_id);
+			String id = id_prefix + inst_id;
+			eventsInDoc.addAll(inst.getEvents(assn, id, doc.allText));
+		}
+		return eventsInDoc;
+	}
+
+	static private void updateMax(AtomicInteger max, int value)
+	{
+		int current;
+		while(value > (current = max.get()) && !max.compareAndSet(current, value));
+	}
+
+	static private void updateMax(AtomicLong max, long value)
+	{
+		long current;
+		while(value > (current = max.get()) && !max.compareAndSet(current, value));
+	}
+
+	/**
+	 * write the events in json
+	 * @param docID
+	 * @param events
+	 * @return
+	 */
+	static public String toJson(String docID, List<AceEvent> events)
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"docID\":").append(quote(docID)).append(",\"events\":[");
+		for(int i=0; i<events.size(); i++)
+		{
+			AceEvent event = events.get(i);
+			if(i > 0)
+			{
+				sb.append(",");
+			}
+			sb.append("{\"id\":").append(quote(event.id));
+			sb.append(",\"type\":").append(quote(event.type));
+			sb.append(",\"subtype\":").append(quote(event.subtype));
+			sb.append(",\"mentions\":[");
+			for(int j=0; j<event.mentions.size(); j++)
+			{
+				AceEventMention mention = event.mentions.get(j);
+				if(j > 0)
+				{
+					sb.append(",");
+				}
+				sb.append("{\"id\":").append(quote(mention.id));
+				sb.append(",\"anchor\":").append(quote(mention.anchorText));
+				if(mention.anchorExtent != null)
+				{
+					sb.append(",\"start\":").append(mention.anchorExtent.start());
+					sb.append(",\"end\":").append(mention.anchorExtent.end());
+				}
+				sb.append(",\"confidence\":").append(mention.confidence);
+				sb.append(",\"arguments\":[");
+				for(int k=0; k<mention.arguments.size(); k++)
+				{
+					AceEventMentionArgument argument = mention.arguments.get(k);
+					if(k > 0)
+					{
+						sb.append(",");
+					}
+					sb.append("{\"role\":").append(quote(argument.role));
+					sb.append(",\"text\":").append(quote(argument.value.text));
+					sb.append(",\"start\":").append(argument.value.extent.start());
+					sb.append(",\"end\":").append(argument.value.extent.end());
+					sb.append("}");
+				}
+				sb.append("]}");
+			}
+			sb.append("]}");
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	static private String quote(String str)
+	{
+		if(str == null)
+		{
+			return "null";
+		}
+		StringBuilder sb = new StringBuilder("\"");
+		for(int i=0; i<str.length(); i++)
+		{
+			char c = str.charAt(i);
+			switch(c)
+			{
+			case '"': sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\t': sb.append("\\t"); break;
+			default:
+				if(c < 0x20)
+				{
+					sb.append(String.format("\\u%04x", (int) c));
+				}
+				else
+				{
+					sb.append(c);
+				}
+			}
+		}
+		return sb.append("\"").toString();
+	}
+
+	static protected Map<String, String> parseQuery(String query) throws UnsupportedEncodingException
+	{
+		Map<String, String> params = new HashMap<String, String>();
+		if(query == null)
+		{
+			return params;
+		}
+		for(String pair : query.split("&"))
+		{
+			int pos = pair.indexOf('=');
+			if(pos < 0)
+			{
+				params.put(URLDecoder.decode(pair, "UTF-8"), "");
+			}
+			else
+			{
+				params.put(URLDecoder.decode(pair.substring(0, pos), "UTF-8"), URLDecoder.decode(pair.substring(pos + 1), "UTF-8"));
+			}
+		}
+		return params;
+	}
+
+	static protected void respond(HttpExchange exchange, int code, String contentType, String body) throws IOException
+	{
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=UTF-8");
+		exchange.sendResponseHeaders(code, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	/**
+	 * read the body of a request in UTF-8
+	 * @param exchange
+	 * @return null if it's larger than MaxBodySize
+	 * @throws IOException
+	 */
+	static protected String readBody(HttpExchange exchange) throws IOException
+	{
+		String length = exchange.getRequestHeaders().getFirst("Content-Length");
+		if(length != null && Long.parseLong(length.trim()) > MaxBodySize)
+		{
+			return null;
+		}
+		// the length may be absent (chunked), so read one byte more than the limit at most
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		long num = IOUtils.copyLarge(in, bytes, 0, MaxBodySize + 1L);
+		if(num > MaxBodySize)
+		{
+			return null;
+		}
+		return bytes.toString("UTF-8");
+	}
+
+	/**
+	 * the path of an ACE document under FileDir
+	 * @param path relative to FileDir
+	 * @return null if FileDir is not given, or the path is not under it
+	 * @throws IOException
+	 */
+	static protected File getDocumentFile(String path) throws IOException
+	{
+		if(FileDir == null)
+		{
+			return null;
+		}
+		String dir = new File(FileDir).getCanonicalPath() + File.separator;
+		File file = new File(dir, path).getCanonicalFile();
+		return file.getPath().startsWith(dir) ? file : null;
+	}
+
+	/**
+	 * handle a request of /decode
+	 * @param exchange
+	 * @throws IOException
+	 */
+	protected void handleDecode(HttpExchange exchange) throws IOException
+	{
+		long start = System.nanoTime();
+		numRequests.incrementAndGet();
+		inFlight.incrementAndGet();
+		try
+		{
+			Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+			String format = params.containsKey("format") ? params.get("format") : "apf";
+			boolean monoCase = Boolean.parseBoolean(params.get("monoCase"));
+			Document doc;
+			if(params.containsKey("file"))
+			{
+				File file = getDocumentFile(params.get("file"));
+				if(file == null)
+				{
+					numFailed.incrementAndGet();
+					respond(exchange, 403, "text/plain", "?file=PATH is only allowed under -Dservice.fileDir\n");
+					return;
+				}
+				doc = new Document(file.getPath(), true, monoCase);
+			}
+			else if(exchange.getRequestMethod().equalsIgnoreCase("POST"))
+			{
+				String docID = params.containsKey("id") ? params.get("id") : "doc" + docCounter.incrementAndGet();
+				String text = readBody(exchange);
+				if(text == null)
+				{
+					numFailed.incrementAndGet();
+					respond(exchange, 413, "text/plain", "the document is larger than " + MaxBodySize + " bytes\n");
+					return;
+				}
+				doc = Document.fromText(docID, text, monoCase);
+			}
+			else
+			{
+				numFailed.incrementAndGet();
+				respond(exchange, 400, "text/plain", "POST the text of a document, or give ?file=PATH\n");
+				return;
+			}
+
+			List<AceEvent> events = decode(doc);
+			String docID = doc.docID.substring(doc.docID.lastIndexOf(File.separator) + 1);
+			if(format.equalsIgnoreCase("json"))
+			{
+				respond(exchange, 200, "application/json", toJson(docID, events));
+			}
+			else
+			{
+				StringWriter str = new StringWriter();
+				if(doc.getAceAnnotations() == null)
+				{
+					Decoder.writeEvents(new PrintWriter(str), docID, events);
+				}
+				else
+				{
+					Decoder.writeEntities(new PrintWriter(str), doc.getAceAnnotations(), events);
+				}
+				respond(exchange, 200, "application/xml", str.toString());
+			}
+		}
+		catch(Throwable e)
+		{
+			e.printStackTrace();
+			numFailed.incrementAndGet();
+			respond(exchange, 500, "text/plain", e + "\n");
+		}
+		finally
+		{
+			inFlight.decrementAndGet();
+			long nanos = System.nanoTime() - start;
+			latencyNanos.addAndGet(nanos);
+			updateMax(maxLatencyNanos, nanos);
+		}
+	}
+
+	/**
+	 * print the number of requests, the latency, the queue depth and the batches
+	 * @param out
+	 */
+	public void printStatistics(PrintStream out)
+	{
+		long requests = numRequests.get();
+		long batches = numBatches.get();
+		out.println("requests=" + requests);
+		out.println("failed=" + numFailed.get());
+		out.println("inFlight=" + inFlight.get());
+		out.println(String.format("latencyAvgMs=%.1f", requests == 0 ? 0 : latencyNanos.get() / 1e6 / requests));
+		out.println(String.format("latencyMaxMs=%.1f", maxLatencyNanos.get() / 1e6));
+		out.println("queueDepth=" + queue.size());
+		out.println("queueDepthMax=" + maxQueueDepth.get());
+		out.println("batches=" + batches);
+		out.println("sentences=" + numSentences.get());
+		out.println(String.format("batchSizeAvg=%.1f", batches == 0 ? 0 : (double) numSentences.get() / batches));
+		out.println(String.format("decodeBusy=%.1fs", decodeNanos.get() / 1e9));
+		ParserWrapper.printStatistics(out);
+		WordNetWrapper.printStatistics(out);
+	}
+
+	/**
+	 * start the http server on localhost
+	 * @param port
+	 * @param threads number of requests that are handled concurrently
+	 * @return
+	 * @throws IOException
+	 */
+	public HttpServer start(int port, int threads) throws IOException
+	{
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/decode", new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				handleDecode(exchange);
+			}
+		});
+		server.createContext("/metrics", new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				PrintStream out = new PrintStream(bytes, true, "UTF-8");
+				printStatistics(out);
+				respond(exchange, 200, "text/plain", bytes.toString("UTF-8"));
+			}
+		});
+		server.setExecutor(Executors.newFixedThreadPool(Math.max(1, threads)));
+		server.start();
+		return server;
+	}
+
+	/**
+	 * decode a short document, so that the parser, WordNet and the other resources are loaded
+	 * before the first request
+	 */
+	public void warmUp()
+	{
+		try
+		{
+			long start = System.currentTimeMillis();
+			decode(Document.fromText("warmup", "The soldiers attacked the city on Monday.", false));
+			System.out.println("warmed up in " + (System.currentTimeMillis() - start) + "ms");
+		}
+		catch(Exception e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * the settings are given by -Dservice.threads/decoders/batch/batchDelay/queue/maxBody=N
+	 * and -Dservice.fileDir=DIR
+	 * @param args
+	 * @throws IOException
+	 */
+	static public void main(String[] args) throws IOException
+	{
+		if(args.length < 1)
+		{
+			System.out.println("Usage:");
+			System.out.println("args[0]: model");
+			System.out.println("args[1]: port (default 8080)");
+			System.exit(-1);
+		}
+
+		// load the resources in parallel while reading the model
+		ResourceRegistry.getSingleton().warmUp();
+
+		// Perceptron read model from the serialized file
+		Perceptron perceptron = Perceptron.deserializeObject(new File(args[0]));
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+		int threads = Integer.getInteger("service.threads", Runtime.getRuntime().availableProcessors());
+
+		final DecoderServer service = new DecoderServer(perceptron);
+		ResourceRegistry.getSingleton().awaitAll();
+		ResourceRegistry.getSingleton().printStatistics(System.out);
+		service.warmUp();
+		service.start(port, threads);
+		System.out.println("listening on localhost:" + port + ", threads=" + threads + ", decoders=" + Decoders + ", batch=" + BatchSize
+				+ ", batchDelay=" + BatchDelay + "ms");
+		Runtime.getRuntime().addShutdownHook(new Thread()
+		{
+			public void run()
+			{
+				service.printStatistics(System.out);
+			}
+		});
+	}
+}
@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 
+import util.FeatureProfiler;
 import util.Span;
 import util.TokenAnnotations;
 import util.graph.DependencyGraph;
@@ -31,6 +32,9 @@ import event.types.SentenceInstance.InstanceAnnotations;
  */
 public class EdgeFeatureGenerator
 {
+	// the stage name in FeatureProfiler
+	static public final String ProfileStage = "EdgeFeatureGenerator";
+	
 	/**
 	 * @param edgeLabel
 	 * @param problem
@@ -41,6 +45,7 @@ public class EdgeFeatureGenerator
 	 */
 	public static List<String> get_edge_text_features(SentenceInstance sent, int i, AceMention mention)
 	{
+		long start = FeatureProfiler.start();
 		List<Map<Class<?>, Object>> tokens = (List<Map<Class<?>, Object>>) sent.get(SentenceInstance.InstanceAnnotations.Token_FEATURE_MAPs);
 		Map<Class<?>, Object> token_trigger = tokens.get(i);
 		Vector<Integer> headIndices = mention.getHeadIndices();
@@ -167,7 +172,7 @@ public class EdgeFeatureGenerator
 		for(Integer index : headIndices)
 		{
 			Map<Class<?>, Object> token_head = tokens.get(index);
-			Vector<String> dep_features = (Vector<String>) token_head.get(TokenAnnotations.DependencyAnnotation.class);
+			List<String> dep_features = (List<String>) token_head.get(TokenAnnotations.DependencyAnnotation.class);
 			if(dep_features != null)
 			{
 				featureLine.addAll(dep_features);
@@ -299,6 +304,8 @@ public class EdgeFeatureGenerator
 			featureLine.add(feature);
 		}
 		
+		FeatureProfiler.recordCall(ProfileStage, "*", start);
+		FeatureProfiler.recordEmitted(ProfileStage, featureLine);
 		return featureLine;
 	}
 	
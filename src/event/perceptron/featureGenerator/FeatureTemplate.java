@@ -0,0 +1,478 @@
+package event.perceptron.featureGenerator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import util.TokenAnnotations;
+
+import commons.TokenTable;
+
+/**
+ * a compiled conjunction feature template, e.g. "W[-1]#W[0]" or "Lem[-1]#Lem[0]#POS[+1]"
+ * the template is parsed once, and then extracted on a columnar view of the sentence (one array per annotation),
+ * so that the extraction needs no Map lookup and no reflection on annotation classes
+ *
+ * the features are still emitted as strings: the feature vectors and the weights of the perceptron are keyed by
+ * the feature strings, and the text features of a sentence only get ids (of the document's string pool)
+ * when the instance is compacted, see SentenceInstance.compact
+ */
+public abstract class FeatureTemplate
+{
+	// the delimiter between parts of a conjunction feature
+	static public final String Delimiter = "#";
+
+	// column keys that can be used in templates
+	static protected Map<String, Class<?>> columnKeys = new HashMap<String, Class<?>>();
+	// columns whose values are collections, e.g. synonyms
+	static protected Set<Class<?>> multiValuedColumns = new HashSet<Class<?>>();
+	static
+	{
+		registerColumn("W", TokenAnnotations.TextAnnotation.class, false);
+		registerColumn("Lem", TokenAnnotations.LemmaAnnotation.class, false);
+		registerColumn("POS", TokenAnnotations.PartOfSpeechAnnotation.class, false);
+		registerColumn("Chunk", TokenAnnotations.ChunkingAnnotation.class, false);
+		registerColumn("Brown", TokenAnnotations.BrownClusterAnnotation.class, false);
+		registerColumn("Nomlex", TokenAnnotations.NomlexbaseAnnotation.class, false);
+		registerColumn("Synonym", TokenAnnotations.SynonymsAnnotation.class, true);
+		registerColumn("Dict", TokenAnnotations.DictionaryAnnotation.class, true);
+		registerColumn("Dep", TokenAnnotations.DependencyAnnotation.class, true);
+	}
+
+	/**
+	 * register a new column key that can be used in templates
+	 * @param key
+	 * @param annotation
+	 * @param multiValued if the values of the annotation are collections
+	 */
+	static public void registerColumn(String key, Class<?> annotation, boolean multiValued)
+	{
+		columnKeys.put(key, annotation);
+		if(multiValued)
+		{
+			multiValuedColumns.add(annotation);
+		}
+	}
+
+	/**
+	 * columnar view of the token feature maps of a sentence
+	 * each column is built at most once for the sentence, values are interned
+	 */
+	public static class Columns
+	{
+		protected List<Map<Class<?>, Object>> tokens;
+		protected Map<Class<?>, String[]> columns = new HashMap<Class<?>, String[]>();
+		protected Map<Class<?>, String[][]> multiColumns = new HashMap<Class<?>, String[][]>();
+		// the first entity type of each token (null if not in an entity), used to normalize Text/Lemma
+		protected String[] entityTypes;
+
+		// the columnar store of the tokens if they are in one, null otherwise
+		protected TokenTable table;
+
+		public Columns(List<Map<Class<?>, Object>> tokens)
+		{
+			this.tokens = tokens;
+			if(tokens instanceof TokenTable)
+			{
+				this.table = (TokenTable) tokens;
+			}
+		}
+
+		public int size()
+		{
+			return tokens.size();
+		}
+
+		public String[] getColumn(Class<?> annotation)
+		{
+			String[] column = columns.get(annotation);
+			if(column == null)
+			{
+				column = new String[tokens.size()];
+				int[] ids = table == null ? null : table.getIds(annotation);
+				for(int i=0; i<column.length; i++)
+				{
+					if(ids != null)
+					{
+						// the values of the string pool are unique already
+						column[i] = table.getPool().get(ids[i]);
+						continue;
+					}
+					Object value = tokens.get(i).get(annotation);
+					if(value != null)
+					{
+						column[i] = value.toString().intern();
+					}
+				}
+				columns.put(annotation, column);
+			}
+			return column;
+		}
+
+		/**
+		 * column of a multi-valued (Collection) annotation, e.g. synonyms
+		 * @param annotation
+		 * @return
+		 */
+		public String[][] getMultiColumn(Class<?> annotation)
+		{
+			String[][] column = multiColumns.get(annotation);
+			if(column == null)
+			{
+				column = new String[tokens.size()][];
+				for(int i=0; i<column.length; i++)
+				{
+					if(table != null)
+					{
+						// no copy of the collections
+						if(table.has(i, annotation))
+						{
+							column[i] = new String[table.getNumValues(i, annotation)];
+							for(int j=0; j<column[i].length; j++)
+							{
+								column[i][j] = table.getValue(i, annotation, j);
+							}
+						}
+						continue;
+					}
+					Object value = tokens.get(i).get(annotation);
+					if(value instanceof Collection)
+					{
+						Collection<?> values = (Collection<?>) value;
+						column[i] = new String[values.size()];
+						int j = 0;
+						for(Object val : values)
+						{
+							column[i][j++] = val.toString().intern();
+						}
+					}
+					else if(value != null)
+					{
+						column[i] = new String[]{value.toString().intern()};
+					}
+				}
+				multiColumns.put(annotation, column);
+			}
+			return column;
+		}
+
+		public String[] getEntityTypes()
+		{
+			if(entityTypes == null)
+			{
+				entityTypes = new String[tokens.size()];
+				for(int i=0; i<entityTypes.length; i++)
+				{
+					List<String> entityInfo = (List<String>) tokens.get(i).get(TokenAnnotations.EntityAnnotation.class);
+					if(entityInfo != null)
+					{
+						entityTypes[i] = entityInfo.get(0);
+					}
+				}
+			}
+			return entityTypes;
+		}
+	}
+
+	// name of the feature, i.e. the prefix before "="
+	protected String name;
+	// feature name + "="
+	protected String prefix;
+	// the source template
+	protected String template;
+
+	protected FeatureTemplate(String name, String template)
+	{
+		this.name = name;
+		this.prefix = name + "=";
+		this.template = template;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public String getTemplate()
+	{
+		return template;
+	}
+
+	/**
+	 * extract the feature of the i-th token, null if any part of the template is not available
+	 * (e.g. out of sentence margins, or missing annotation)
+	 * @param sent
+	 * @param i
+	 * @return
+	 */
+	public abstract String extract(Columns sent, int i);
+
+	/**
+	 * extract features of the i-th token into featureLine, the default is a single valued feature
+	 * @param sent
+	 * @param i
+	 * @param featureLine
+	 */
+	public void extract(Columns sent, int i, List<String> featureLine)
+	{
+		String feature = extract(sent, i);
+		if(feature != null)
+		{
+			featureLine.add(feature);
+		}
+	}
+
+	/**
+	 * compile a template with the template string as feature name
+	 * @param template
+	 * @return
+	 */
+	public static FeatureTemplate compile(String template)
+	{
+		return compile(template, template, false);
+	}
+
+	/**
+	 * compile a template like "W[-1]#W[0]", each part is Key[offset] where Key is a registered column
+	 * @param name the feature name
+	 * @param template
+	 * @param normalize use entity type to normalize Text and Lemma
+	 * @return
+	 */
+	public static FeatureTemplate compile(String name, String template, boolean normalize)
+	{
+		String[] parts = template.split(Delimiter);
+		Class<?>[] annotations = new Class<?>[parts.length];
+		int[] offsets = new int[parts.length];
+		boolean[] normalized = new boolean[parts.length];
+		for(int j=0; j<parts.length; j++)
+		{
+			String part = parts[j].trim();
+			int open = part.indexOf('[');
+			if(open < 0 || !part.endsWith("]"))
+			{
+				throw new IllegalArgumentException("illegal feature template: " + template);
+			}
+			String key = part.substring(0, open);
+			annotations[j] = columnKeys.get(key);
+			if(annotations[j] == null)
+			{
+				throw new IllegalArgumentException("unknown column " + key + " in feature template: " + template);
+			}
+			String offset = part.substring(open + 1, part.length() - 1).trim();
+			if(offset.startsWith("+"))
+			{
+				offset = offset.substring(1);
+			}
+			offsets[j] = Integer.parseInt(offset);
+			normalized[j] = normalize && (annotations[j].equals(TokenAnnotations.LemmaAnnotation.class)
+					|| annotations[j].equals(TokenAnnotations.TextAnnotation.class));
+		}
+
+		if(parts.length == 1 && multiValuedColumns.contains(annotations[0]))
+		{
+			return new MultiValued(name, template, annotations[0], offsets[0]);
+		}
+		if(parts.length == 1)
+		{
+			return new Unigram(name, template, annotations[0], offsets[0], normalized[0]);
+		}
+		if(parts.length == 2)
+		{
+			return new Bigram(name, template, annotations, offsets, normalized);
+		}
+		return new Conjunction(name, template, annotations, offsets, normalized);
+	}
+
+	/**
+	 * value of one part of the template, null if not available
+	 */
+	protected static String value(Columns sent, Class<?> annotation, int position, boolean normalize)
+	{
+		if(position < 0 || position >= sent.size())
+		{
+			return null;
+		}
+		String value = sent.getColumn(annotation)[position];
+		if(value != null && normalize)
+		{
+			String entityType = sent.getEntityTypes()[position];
+			if(entityType != null)
+			{
+				return entityType;
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * single annotation at one offset, e.g. W[-1]
+	 */
+	static class Unigram extends FeatureTemplate
+	{
+		Class<?> annotation;
+		int offset;
+		boolean normalize;
+
+		Unigram(String name, String template, Class<?> annotation, int offset, boolean normalize)
+		{
+			super(name, template);
+			this.annotation = annotation;
+			this.offset = offset;
+			this.normalize = normalize;
+		}
+
+		@Override
+		public String extract(Columns sent, int i)
+		{
+			if(i < 0 || i >= sent.size())
+			{
+				return null;
+			}
+			String value = value(sent, annotation, i + offset, normalize);
+			if(value == null)
+			{
+				return null;
+			}
+			return prefix.concat(value);
+		}
+	}
+
+	/**
+	 * two annotations, e.g. POS[-1]#POS[0]
+	 */
+	static class Bigram extends FeatureTemplate
+	{
+		Class<?> annotation1;
+		Class<?> annotation2;
+		int offset1;
+		int offset2;
+		boolean normalize1;
+		boolean normalize2;
+
+		Bigram(String name, String template, Class<?>[] annotations, int[] offsets, boolean[] normalize)
+		{
+			super(name, template);
+			this.annotation1 = annotations[0];
+			this.annotation2 = annotations[1];
+			this.offset1 = offsets[0];
+			this.offset2 = offsets[1];
+			this.normalize1 = normalize[0];
+			this.normalize2 = normalize[1];
+		}
+
+		@Override
+		public String extract(Columns sent, int i)
+		{
+			if(i < 0 || i >= sent.size())
+			{
+				return null;
+			}
+			String value1 = value(sent, annotation1, i + offset1, normalize1);
+			if(value1 == null)
+			{
+				return null;
+			}
+			String value2 = value(sent, annotation2, i + offset2, normalize2);
+			if(value2 == null)
+			{
+				return null;
+			}
+			StringBuilder builder = new StringBuilder(prefix.length() + value1.length() + value2.length() + 1);
+			builder.append(prefix).append(value1).append(Delimiter).append(value2);
+			return builder.toString();
+		}
+	}
+
+	/**
+	 * any number of annotations
+	 */
+	static class Conjunction extends FeatureTemplate
+	{
+		Class<?>[] annotations;
+		int[] offsets;
+		boolean[] normalize;
+
+		Conjunction(String name, String template, Class<?>[] annotations, int[] offsets, boolean[] normalize)
+		{
+			super(name, template);
+			this.annotations = annotations;
+			this.offsets = offsets;
+			this.normalize = normalize;
+		}
+
+		@Override
+		public String extract(Columns sent, int i)
+		{
+			if(i < 0 || i >= sent.size())
+			{
+				return null;
+			}
+			StringBuilder builder = new StringBuilder(prefix);
+			for(int j=0; j<annotations.length; j++)
+			{
+				String value = value(sent, annotations[j], i + offsets[j], normalize[j]);
+				if(value == null)
+				{
+					return null;
+				}
+				if(j > 0)
+				{
+					builder.append(Delimiter);
+				}
+				builder.append(value);
+			}
+			return builder.toString();
+		}
+	}
+
+	/**
+	 * a multi-valued annotation at one offset, e.g. Synonym[0], emits one feature per value
+	 */
+	static class MultiValued extends FeatureTemplate
+	{
+		Class<?> annotation;
+		int offset;
+
+		MultiValued(String name, String template, Class<?> annotation, int offset)
+		{
+			super(name, template);
+			this.annotation = annotation;
+			this.offset = offset;
+		}
+
+		/**
+		 * the first value only
+		 */
+		@Override
+		public String extract(Columns sent, int i)
+		{
+			List<String> ret = new ArrayList<String>();
+			extract(sent, i, ret);
+			return ret.size() > 0 ? ret.get(0) : null;
+		}
+
+		@Override
+		public void extract(Columns sent, int i, List<String> featureLine)
+		{
+			int position = i + offset;
+			if(i < 0 || i >= sent.size() || position < 0 || position >= sent.size())
+			{
+				return;
+			}
+			String[] values = sent.getMultiColumn(annotation)[position];
+			if(values == null)
+			{
+				return;
+			}
+			for(String value : values)
+			{
+				featureLine.add(prefix.concat(value));
+			}
+		}
+	}
+}
@@ -1,15 +1,14 @@
 package event.perceptron.featureGenerator;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 
+import util.FeatureProfiler;
 import util.TokenAnnotations;
+import util.TriggerLexicon;
 
 import ace.acetypes.AceEntityMention;
 import ace.acetypes.AceMention;
@@ -29,63 +28,16 @@ public class NodeFeatureGenerator
 {
 	// the delimiter of token features for feature table
 	static public final String Feature_Delimiter = " ";
+	
+	// the stage name in FeatureProfiler
+	static public final String ProfileStage = "NodeFeatureGenerator";
 
 	// Event subtype --> trigger token with high confidence value
-	public static Map<String, List<String>> triggerTokensHighQuality = new HashMap<String, List<String>>();
-	static
-	{
-		// initialize priorityQueueEntities
-		try
-		{
-			// initialize dict of triggerTokens
-			BufferedReader reader = new BufferedReader(new FileReader("data/triggerTokens"));
-			String line = "";
-			while((line = reader.readLine()) != null)
-			{
-				if(line.length() == 0)
-				{
-					continue;
-				}
-				String[] fields = line.split("\\t");
-				String eventSubType = fields[0];
-				String triggerToken = fields[1];
-				Double confidence = Double.parseDouble(fields[2]);
-				
-				if(confidence >= 0.80)
-				{
-					List<String> triggers = triggerTokensHighQuality.get(eventSubType);
-					if(triggers == null)
-					{
-						triggers = new ArrayList<String>();
-						triggerTokensHighQuality.put(eventSubType, triggers);
-					}
-					if(!triggers.contains(triggerToken))
-					{
-						triggers.add(triggerToken);
-					}
-				}
-			}
-			reader.close();
-		} 
-		catch (IOException e)
-		{
-			e.printStackTrace();
-		}
-	}
+	public static Map<String, List<String>> triggerTokensHighQuality = TriggerLexicon.getSingleton().getTriggersBySubType(TriggerLexicon.THRESHOLD_NODE_FEATURE);
 	
 	static List<String> getPossibleEventTypes(String lemma)
 	{
-		List<String> ret = new ArrayList<String>();
-		for(String key : triggerTokensHighQuality.keySet())
-		{
-			List<String> tokens = triggerTokensHighQuality.get(key);
-			if(tokens.contains(lemma))
-			{
-				ret.add(key);
-				continue;
-			}
-		}
-		return ret;
+		return TriggerLexicon.getSingleton().getSubTypes(lemma, TriggerLexicon.THRESHOLD_NODE_FEATURE);
 	}
 	
 	public NodeFeatureGenerator() 
@@ -134,68 +86,25 @@ public class NodeFeatureGenerator
 		return false;
 	}
 	
-	/**
-	 * get a conjunction feature of i-th time step in sentence sent
-	 * given Class<NECoreAnnotation>[] for features and int[] for time steps. 
-	 * E.g. given a sent, an index i of current time step, featureName, and two arrays [Text, Text, Text], [-1,0,1]
-	 * this method should return a conjunction of text annotation of -1, current, +1 time steps 
-	 * @param sent
-	 * @param normalize use entity information to normalize
-	 * @return
-	 */
-	protected static String getConjuctionFeature(List<Map<Class<?>, Object>> sent, int i, String featureName, Class<?>[] features, int[] positions,
-			boolean normalize)
+	// conjunction features about text (window 2, left+right, bigram, unigram), each pair is raw and normalized by entity type
+	static final FeatureTemplate[][] textConjunctionTemplates = new FeatureTemplate[][]
 	{
-		final String delimiter = "#";
-		
-		if(i >= sent.size() || i<0)
-		{
-			return null; 
-		}
-		String ret = featureName + "=";
-		for(int j=0; j<features.length && j<positions.length; j++)
-		{
-			Class<?> featureType = features[j];
-			int position = (positions[j] + i);
-			String partialFeature = "";
-			
-			// hit margins of a sentence, then pick up Padding to feed the feature
-			if(position >= sent.size() || position < 0)
-			{
-				return null;
-			}
-			else
-			{
-				Object temp = sent.get(position).get(featureType);
-				if(temp == null)
-				{
-					return null;
-				}
-				else
-				{
-					partialFeature = sent.get(position).get(featureType).toString();
-					// use entity information to normalize Text or Lemma
-					if(normalize && 
-							(featureType.equals(TokenAnnotations.LemmaAnnotation.class) || featureType.equals(TokenAnnotations.TextAnnotation.class)))
-					{
-						List<String> entityInfo = (List<String>) sent.get(position).get(TokenAnnotations.EntityAnnotation.class);
-						if(entityInfo != null)
-						{
-							String entityType = entityInfo.get(0);
-							partialFeature = entityType;
-						}
-					}
-				}
-			}
-			ret += partialFeature;
-			
-			if(j<features.length-1)
-			{
-				ret += delimiter;
-			}
-		}
-		return ret;	
-	}
+		{FeatureTemplate.compile("W-1W0", "W[-1]#W[0]", false), FeatureTemplate.compile("W-1W0", "W[-1]#W[0]", true)},
+		{FeatureTemplate.compile("W0W1", "W[0]#W[+1]", false), FeatureTemplate.compile("W0W1", "W[0]#W[+1]", true)},
+		{FeatureTemplate.compile("W-1", "W[-1]", false), FeatureTemplate.compile("W-1", "W[-1]", true)},
+		{FeatureTemplate.compile("W1", "W[+1]", false), FeatureTemplate.compile("W1", "W[+1]", true)},
+		{FeatureTemplate.compile("W-2", "W[-2]", false), FeatureTemplate.compile("W-2", "W[-2]", true)},
+		{FeatureTemplate.compile("W2", "W[+2]", false), FeatureTemplate.compile("W2", "W[+2]", true)},
+	};
+	
+	// conjunction feature about POS
+	static final FeatureTemplate[] posConjunctionTemplates = new FeatureTemplate[]
+	{
+		FeatureTemplate.compile("POS-1", "POS[-1]", false),
+		FeatureTemplate.compile("POS1", "POS[+1]", false),
+		FeatureTemplate.compile("POS-1POS0", "POS[-1]#POS[0]", false),
+		FeatureTemplate.compile("POS0POS1", "POS[0]#POS[+1]", false),
+	};
 	
 	/**
 	 * get text feature vector for the whole sentence
@@ -205,9 +114,11 @@ public class NodeFeatureGenerator
 	public static List<List<String>> get_node_text_features(SentenceInstance sent)
 	{
 		List<List<String>> ret = new ArrayList<List<String>>();
+		// build the columnar view once for the whole sentence
+		FeatureTemplate.Columns columns = new FeatureTemplate.Columns(sent.getTokenFeatureMaps());
 		for(int i=0; i<sent.size(); i++)
 		{
-			List<String> vector = get_node_text_features(sent, i);
+			List<String> vector = get_node_text_features(sent, i, columns);
 			ret.add(vector);
 		}
 		return ret;
@@ -223,6 +134,20 @@ public class NodeFeatureGenerator
 	 */
 	public static List<String> get_node_text_features(SentenceInstance inst, int i)
 	{
+		List<Map<Class<?>, Object>> sent = (List<Map<Class<?>, Object>>) inst.get(InstanceAnnotations.Token_FEATURE_MAPs);
+		return get_node_text_features(inst, i, new FeatureTemplate.Columns(sent));
+	}
+	
+	/**
+	 * same as get_node_text_features(inst, i), with a columnar view of the sentence that can be shared by tokens
+	 * @param inst
+	 * @param i
+	 * @param columns
+	 * @return
+	 */
+	public static List<String> get_node_text_features(SentenceInstance inst, int i, FeatureTemplate.Columns columns)
+	{
+		long start = FeatureProfiler.start();
 		List<Map<Class<?>, Object>> sent = (List<Map<Class<?>, Object>>) inst.get(InstanceAnnotations.Token_FEATURE_MAPs);
 		Map<Class<?>, Object> token = sent.get(i);
 		List<String> featureLine = new ArrayList<String>();
@@ -285,7 +210,7 @@ public class NodeFeatureGenerator
 		}
 		
 		// get dependency features
-		Vector<String> dep_features = (Vector<String>) token.get(TokenAnnotations.DependencyAnnotation.class);
+		List<String> dep_features = (List<String>) token.get(TokenAnnotations.DependencyAnnotation.class);
 		if(dep_features != null)
 		{
 			for(String dep_feature : dep_features)
@@ -361,7 +286,7 @@ public class NodeFeatureGenerator
 		}
 		
 		// conjunction features
-		addConjuctionFeatures(sent, i, featureLine);
+		addConjuctionFeatures(columns, i, featureLine);
 		
 		// add features from clusters
 		List<String> highConfTriggersInCluster = (List<String>) token.get(TokenAnnotations.HighConfidenceTriggerInCluster.class);
@@ -374,6 +299,8 @@ public class NodeFeatureGenerator
 			}
 		}
 		
+		FeatureProfiler.recordCall(ProfileStage, "*", start);
+		FeatureProfiler.recordEmitted(ProfileStage, featureLine);
 		return featureLine;
 	}
 
@@ -430,130 +357,28 @@ public class NodeFeatureGenerator
 		return false;
 	}
 
-	protected static Vector<String> getConjuctionFeatureSingleVector(List<Map<Class<?>, Object>> sent, int i, Class<?> featureType, String featureName, int position)
-	{
-		Vector<String> ret = new Vector<String>();
-		
-		if(i>=sent.size() || i<0)
-		{
-			return null; 
-		}
-		position = (position + i);
-		
-		// hit margins of a sentence, then pick up Padding to feed the feature
-		if(position >= sent.size())
-		{
-			return ret;
-		}
-		else if(position < 0)
-		{
-			return ret;
-		}
-		else
-		{
-			Vector<String> temp = (Vector<String>) sent.get(position).get(featureType);
-			if(temp == null)
-			{
-				return ret;
-			}
-			else
-			{
-				for(String value : temp)
-				{
-					ret.add(featureName + "=" + value);
-				}
-			}
-			
-		}	
-		return ret;	
-	}
-	
 	/**
 	 * add conjunction features for feature line that to be printed
 	 * @param sent
 	 * @param i
 	 * @param featureLine
 	 */
-	private static void addConjuctionFeatures(List<Map<Class<?>, Object>> sent, int i, List<String> featureLine) 
+	private static void addConjuctionFeatures(FeatureTemplate.Columns sent, int i, List<String> featureLine) 
 	{
-		// conjunction features about text (window 4, left+right, bigram, unigram
-		///////////////////////////////////////
-		Class<?>[] features = new Class<?>[]{TokenAnnotations.TextAnnotation.class, TokenAnnotations.TextAnnotation.class};
-		int[] positions = new int[]{-1,0};
-		String conjunction_feature = getConjuctionFeature(sent, i, "W-1W0", features, positions, false);
-		if(conjunction_feature != null) featureLine.add(conjunction_feature);
-		
-		String normalized_conjunction_feature = getConjuctionFeature(sent, i, "W-1W0", features, positions, true);
-		if(normalized_conjunction_feature != null && !normalized_conjunction_feature.equals(conjunction_feature)) 
-			featureLine.add(normalized_conjunction_feature);
-		
-		features = new Class<?>[]{TokenAnnotations.TextAnnotation.class, TokenAnnotations.TextAnnotation.class};
-		positions = new int[]{0,1};
-		conjunction_feature = getConjuctionFeature(sent, i, "W0W1", features, positions, false);
-		if(conjunction_feature != null) featureLine.add(conjunction_feature);
-		
-		normalized_conjunction_feature = getConjuctionFeature(sent, i, "W0W1", features, positions, true);
-		if(normalized_conjunction_feature != null && !normalized_conjunction_feature.equals(conjunction_feature)) 
-			featureLine.add(normalized_conjunction_feature);
-		
-		features = new Class<?>[]{TokenAnnotations.TextAnnotation.class};
-		positions = new int[]{-1};
-		conjunction_feature = getConjuctionFeature(sent, i, "W-1", features, positions, false);
-		if(conjunction_feature != null) featureLine.add(conjunction_feature);
-		
-		normalized_conjunction_feature = getConjuctionFeature(sent, i, "W-1", features, positions, true);
-		if(normalized_conjunction_feature != null && !normalized_conjunction_feature.equals(conjunction_feature)) 
-			featureLine.add(normalized_conjunction_feature);
-		
-		features = new Class<?>[]{TokenAnnotations.TextAnnotation.class};
-		positions = new int[]{1};
-		conjunction_feature = getConjuctionFeature(sent, i, "W1", features, positions, false);
-		if(conjunction_feature != null) featureLine.add(conjunction_feature);
-		
-		normalized_conjunction_feature = getConjuctionFeature(sent, i, "W1", features, positions, true);
-		if(normalized_conjunction_feature != null && !normalized_conjunction_feature.equals(conjunction_feature)) 
-			featureLine.add(normalized_conjunction_feature);
-		
-		features = new Class<?>[]{TokenAnnotations.TextAnnotation.class};
-		positions = new int[]{-2};
-		conjunction_feature = getConjuctionFeature(sent, i, "W-2", features, positions, false);
-		if(conjunction_feature != null) featureLine.add(conjunction_feature);
-		
-		normalized_conjunction_feature = getConjuctionFeature(sent, i, "W-2", features, positions, true);
-		if(normalized_conjunction_feature != null && !normalized_conjunction_feature.equals(conjunction_feature)) 
-			featureLine.add(normalized_conjunction_feature);
-		
-		features = new Class<?>[]{TokenAnnotations.TextAnnotation.class};
-		positions = new int[]{2};
-		conjunction_feature = getConjuctionFeature(sent, i, "W2", features, positions, false);
-		if(conjunction_feature != null) featureLine.add(conjunction_feature);
-
-		normalized_conjunction_feature = getConjuctionFeature(sent, i, "W2", features, positions, true);
-		if(normalized_conjunction_feature != null && !normalized_conjunction_feature.equals(conjunction_feature)) 
-			featureLine.add(normalized_conjunction_feature);
-		
-		/////////////////////////////
-		// conjunction feature about POS
-		//////////////////////////////
-		features = new Class<?>[]{TokenAnnotations.PartOfSpeechAnnotation.class};
-		positions = new int[]{-1};
-		conjunction_feature = getConjuctionFeature(sent, i, "POS-1", features, positions, false);
-		if(conjunction_feature != null) featureLine.add(conjunction_feature);
-		
-		features = new Class<?>[]{TokenAnnotations.PartOfSpeechAnnotation.class};
-		positions = new int[]{1};
-		conjunction_feature = getConjuctionFeature(sent, i, "POS1", features, positions, false);
-		if(conjunction_feature != null) featureLine.add(conjunction_feature);
+		for(FeatureTemplate[] templates : textConjunctionTemplates)
+		{
+			String conjunction_feature = templates[0].extract(sent, i);
+			if(conjunction_feature != null) featureLine.add(conjunction_feature);
 			
-		features = new Class<?>[]{TokenAnnotations.PartOfSpeechAnnotation.class, TokenAnnotations.PartOfSpeechAnnotation.class};
-		positions = new int[]{-1,0};
-		conjunction_feature = getConjuctionFeature(sent, i, "POS-1POS0", features, positions, false);
-		if(conjunction_feature != null) featureLine.add(conjunction_feature);
+			String normalized_conjunction_feature = templates[1].extract(sent, i);
+			if(normalized_conjunction_feature != null && !normalized_conjunction_feature.equals(conjunction_feature)) 
+				featureLine.add(normalized_conjunction_feature);
+		}
 		
-		features = new Class<?>[]{TokenAnnotations.PartOfSpeechAnnotation.class, TokenAnnotations.PartOfSpeechAnnotation.class};
-		positions = new int[]{0,1};
-		conjunction_feature = getConjuctionFeature(sent, i, "POS0POS1", features, positions, false);
-		if(conjunction_feature != null) featureLine.add(conjunction_feature);	
+		for(FeatureTemplate template : posConjunctionTemplates)
+		{
+			template.extract(sent, i, featureLine);
+		}
 	}
 	
 	public static void main(String[] args) throws IOException
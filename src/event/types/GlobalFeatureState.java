@@ -0,0 +1,151 @@
+package event.types;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ace.acetypes.AceEventArgumentValue;
+import ace.acetypes.AceMention;
+
+/**
+ * incrementally maintained summary of the finished part of a SentenceAssignment (the triggers and the entities
+ * of their arguments), read by GlobalFeatureGenerator
+ * tokens before the frontier are folded in one by one. Each trigger is kept as an immutable node that links to
+ * the previous trigger, so an assignment and its clones in the beam share the same history
+ */
+public class GlobalFeatureState
+{
+	/**
+	 * a trigger that has been folded into the state, with its (final) arguments
+	 */
+	public static class TriggerNode
+	{
+		// token index of the trigger
+		public final int position;
+		public final String label;
+		// entity index --> role index, null if the trigger has no edge assignment
+		public final Map<Integer, Integer> edges;
+		// entity --> (entity index, role index) of its mentions that are arguments of this trigger
+		public final Map<AceEventArgumentValue, List<int[]>> entityRoles;
+		// the previous trigger in the sentence
+		public final TriggerNode previous;
+
+		TriggerNode(int position, String label, Map<Integer, Integer> edges,
+				Map<AceEventArgumentValue, List<int[]>> entityRoles, TriggerNode previous)
+		{
+			this.position = position;
+			this.label = label;
+			this.edges = edges;
+			this.entityRoles = entityRoles;
+			this.previous = previous;
+		}
+	}
+
+	// the last trigger folded so far
+	protected TriggerNode last = null;
+
+	// tokens [0, frontier) have been folded
+	protected int frontier = 0;
+
+	public GlobalFeatureState()
+	{
+		;
+	}
+
+	/**
+	 * the history is immutable, so the copy only shares the last node
+	 * @return
+	 */
+	public GlobalFeatureState copy()
+	{
+		GlobalFeatureState ret = new GlobalFeatureState();
+		ret.last = this.last;
+		ret.frontier = this.frontier;
+		return ret;
+	}
+
+	/**
+	 * fold tokens [frontier, upTo) of the assignment into the state
+	 * these tokens should be finished, i.e. neither node nor edge labels will change
+	 * @param assn
+	 * @param inst
+	 * @param upTo
+	 */
+	public void advance(SentenceAssignment assn, SentenceInstance inst, int upTo)
+	{
+		for(; frontier < upTo; frontier++)
+		{
+			String label = assn.getLabelAtToken(frontier);
+			if(label.equals(SentenceAssignment.Default_Trigger_Label))
+			{
+				continue;
+			}
+			Map<Integer, Integer> edges = assn.getEdgeAssignment().get(frontier);
+			Map<AceEventArgumentValue, List<int[]>> entityRoles = Collections.emptyMap();
+			if(edges != null)
+			{
+				entityRoles = getEntityRoles(edges, inst);
+			}
+			last = new TriggerNode(frontier, label, edges, entityRoles, last);
+		}
+	}
+
+	/**
+	 * the folded triggers before position (exclusive), in sentence order
+	 * @param position
+	 * @return
+	 */
+	public List<TriggerNode> getTriggersBefore(int position)
+	{
+		List<TriggerNode> ret = new ArrayList<TriggerNode>();
+		for(TriggerNode node = last; node != null; node = node.previous)
+		{
+			if(node.position < position)
+			{
+				ret.add(node);
+			}
+		}
+		Collections.reverse(ret);
+		return ret;
+	}
+
+	/**
+	 * group the (non-NON) arguments of a trigger by their entity, in the order of entity index
+	 * @param edgeAssn
+	 * @param inst
+	 * @return
+	 */
+	private static Map<AceEventArgumentValue, List<int[]>> getEntityRoles(Map<Integer, Integer> edgeAssn, SentenceInstance inst)
+	{
+		Map<AceEventArgumentValue, List<int[]>> ret = new HashMap<AceEventArgumentValue, List<int[]>>();
+		for(int j=0; j<inst.eventArgCandidates.size(); j++)
+		{
+			Integer role_index = edgeAssn.get(j);
+			if(role_index == null)
+			{
+				continue;
+			}
+			String role = (String) inst.alphabets.edgeTargetAlphabet.lookupObject(role_index);
+			if(role.equals(SentenceAssignment.Default_Argument_Label))
+			{
+				continue;
+			}
+			AceMention mention = inst.eventArgCandidates.get(j);
+			AceEventArgumentValue parent = mention.getParent();
+			if(parent == null)
+			{
+				continue;
+			}
+			List<int[]> roles = ret.get(parent);
+			if(roles == null)
+			{
+				roles = new ArrayList<int[]>();
+				ret.put(parent, roles);
+			}
+			roles.add(new int[]{j, role_index});
+		}
+		return ret;
+	}
+}
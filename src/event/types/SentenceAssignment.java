@@ -7,6 +7,7 @@ import java.util.Map;
 import java.util.Vector;
 
 import util.Controller;
+import util.FeatureProfiler;
 import util.TypeConstraints;
 
 import commons.Alphabet;
@@ -41,6 +42,9 @@ public class SentenceAssignment extends AbstractAssignment
 	public static final String Default_Trigger_Label = "O";
 	public static final String Default_Argument_Label = "NON";
 
+	// the stage name of global features in FeatureProfiler
+	public static final String GlobalFeatureProfileStage = "GlobalFeatureGenerator";
+
 	/**
 	 * as the search processed, increament the state for next token
 	 * creat a new featurevector for this state
@@ -69,6 +73,30 @@ public class SentenceAssignment extends AbstractAssignment
 	 */
 	protected Map<Integer, Map<Integer, Integer>> edgeAssignment;
 
+	/**
+	 * incremental summary of the finished tokens (triggers, entity-to-role usage) for global features
+	 */
+	protected GlobalFeatureState globalFeatureState;
+
+	/**
+	 * get the global feature state with all tokens before index folded in
+	 * @param inst
+	 * @param index
+	 * @return
+	 */
+	public GlobalFeatureState getGlobalFeatureState(SentenceInstance inst, int index)
+	{
+		globalFeatureState.advance(this, inst, index);
+		return globalFeatureState;
+	}
+
+	@Override
+	public void retSetState()
+	{
+		super.retSetState();
+		globalFeatureState = new GlobalFeatureState();
+	}
+
 	/**
 	 * deep copy an assignment
 	 */
@@ -100,6 +128,9 @@ public class SentenceAssignment extends AbstractAssignment
 			}
 		}
 
+		// the history of global feature state is immutable, share it
+		assn.globalFeatureState = this.globalFeatureState.copy();
+
 		// deep copy the feature vector sequence for the last element
 		assn.featVecSequence = this.featVecSequence.clone2();
 
@@ -259,6 +290,7 @@ public class SentenceAssignment extends AbstractAssignment
 		this.alphabets = alphabets;
 		nodeAssignment = new Vector<Integer>();
 		edgeAssignment = new HashMap<Integer, Map<Integer, Integer>>();
+		globalFeatureState = new GlobalFeatureState();
 
 		featVecSequence = new FeatureVectorSequence();
 		partial_scores = new ArrayList<Double>();
@@ -332,6 +364,40 @@ public class SentenceAssignment extends AbstractAssignment
 		}
 	}
 
+	/**
+	 * an assignment with known labels, e.g. the target (prefix) of an instance that is read back from an InstanceStore
+	 * @param inst
+	 * @param nodeLabels the label index of each token of the assignment, from the first one
+	 * @param edgeLabels trigger index --> (candidate index --> role index)
+	 * @param featVecSequence the feature vectors of the labels, or null to create them
+	 */
+	public SentenceAssignment(SentenceInstance inst, List<Integer> nodeLabels, Map<Integer, Map<Integer, Integer>> edgeLabels, 
+			FeatureVectorSequence featVecSequence)
+	{
+		this(inst.alphabets, inst.controller);
+
+		for (Integer label : nodeLabels)
+		{
+			this.nodeAssignment.add(label);
+			this.incrementState();
+		}
+		for (Integer trigger_index : edgeLabels.keySet())
+		{
+			this.edgeAssignment.put(trigger_index, new HashMap<Integer, Integer>(edgeLabels.get(trigger_index)));
+		}
+
+		if (featVecSequence != null)
+		{
+			this.featVecSequence = featVecSequence;
+			return;
+		}
+		// create featureVectorSequence
+		for (int i = 0; i <= state; i++)
+		{
+			makeAllFeatureForSingleState(inst, i, inst.learnable, inst.learnable);
+		}
+	}
+
 	private void makeAllFeatureForSingleState(SentenceInstance problem, int i, boolean addIfNotPresent, boolean useIfNotPresent)
 	{
 		// make basic bigram features for event trigger
@@ -446,7 +512,10 @@ public class SentenceAssignment extends AbstractAssignment
 	public void makeGlobalFeaturesTrigger(SentenceInstance problem, int index, boolean addIfNotPresent, boolean useIfNotPresent)
 	{
 		FeatureVector fv = this.getFV(index);
+		long start = FeatureProfiler.start();
 		List<String> featureStrs = GlobalFeatureGenerator.get_global_features_triggers(problem, index, this);
+		FeatureProfiler.recordCall(GlobalFeatureProfileStage, "get_global_features_triggers", start);
+		FeatureProfiler.recordEmitted(GlobalFeatureProfileStage, featureStrs);
 		for (String feature : featureStrs)
 		{
 			String featureStr = "TriggerLevelGlobalFeature:\t" + feature;
@@ -463,7 +532,10 @@ public class SentenceAssignment extends AbstractAssignment
 	public void makeGlobalFeaturesComplete(SentenceInstance problem, int index, boolean addIfNotPresent, boolean useIfNotPresent)
 	{
 		FeatureVector fv = this.getFV(index);
+		long start = FeatureProfiler.start();
 		List<String> featureStrs = GlobalFeatureGenerator.get_global_features_node_level_omplete(problem, index, this);
+		FeatureProfiler.recordCall(GlobalFeatureProfileStage, "get_global_features_node_level_omplete", start);
+		FeatureProfiler.recordEmitted(GlobalFeatureProfileStage, featureStrs);
 		for (String feature : featureStrs)
 		{
 			String featureStr = "NodeLevelGlobalFeature:\t" + feature;
@@ -481,13 +553,19 @@ public class SentenceAssignment extends AbstractAssignment
 	public void makeGlobalFeaturesProgress(SentenceInstance problem, int index, int entityIndex, boolean addIfNotPresent, boolean useIfNotPresent)
 	{
 		FeatureVector fv = this.getFV(index);
+		long start = FeatureProfiler.start();
 		List<String> featureStrs = GlobalFeatureGenerator.get_global_features_node_level(problem, index, this, entityIndex);
+		FeatureProfiler.recordCall(GlobalFeatureProfileStage, "get_global_features_node_level", start);
+		FeatureProfiler.recordEmitted(GlobalFeatureProfileStage, featureStrs);
 		for (String feature : featureStrs)
 		{
 			String featureStr = "NodeLevelGlobalFeature:\t" + feature;
 			makeFeature(featureStr, fv, addIfNotPresent, useIfNotPresent);
 		}
+		start = FeatureProfiler.start();
 		featureStrs = GlobalFeatureGenerator.get_global_features_sent_level(problem, index, this, entityIndex);
+		FeatureProfiler.recordCall(GlobalFeatureProfileStage, "get_global_features_sent_level", start);
+		FeatureProfiler.recordEmitted(GlobalFeatureProfileStage, featureStrs);
 		for (String feature : featureStrs)
 		{
 			String featureStr = "SentLevelGlobalFeature:\t" + feature;
@@ -578,6 +656,11 @@ public class SentenceAssignment extends AbstractAssignment
 		// lookup the feature table to create an assignment with the new feature
 		if (!use_if_not_present || add_if_not_present)
 		{
+			// count the feature if this call adds it to the alphabet
+			if (FeatureProfiler.enabled && add_if_not_present && this.alphabets.featureAlphabet.add(featureStr) != -1)
+			{
+				FeatureProfiler.recordAdded(featureStr);
+			}
 			int feat_index = lookupFeatures(this.alphabets.featureAlphabet, featureStr, add_if_not_present);
 			if (feat_index != -1)
 			{
@@ -1,6 +1,8 @@
 package event.types;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -9,17 +11,20 @@ import java.util.Map;
 
 import util.Controller;
 import util.Span;
+import util.TokenAnnotations;
 import util.TypeConstraints;
 import util.graph.DependencyGraph;
 
 import commons.Alphabets;
 import commons.Sentence;
+import commons.TokenTable;
 import commons.Sentence.Sent_Attribute;
 
 import classifiers.perceptron.AbstractInstance;
 
 import ace.acetypes.*;
 
+import event.perceptron.featureGenerator.EdgeFeatureGenerator;
 import event.perceptron.featureGenerator.NodeFeatureGenerator;
 
 /**
@@ -72,6 +77,95 @@ public class SentenceInstance extends AbstractInstance
 	 */
 	Map<InstanceAnnotations, Object> textFeaturesMap = new HashMap<InstanceAnnotations, Object>();
 
+	/**
+	 * -DcompactInstances=true: Document.getInstanceList compacts each instance after its features are extracted
+	 */
+	static public final String CompactProperty = "compactInstances";
+
+	// the token annotations that are used by the global features after compact()
+	static final Class<?>[] GlobalFeatureAnnotations = {TokenAnnotations.TextAnnotation.class,
+			TokenAnnotations.PartOfSpeechAnnotation.class, TokenAnnotations.SynonymsAnnotation.class,
+			TokenAnnotations.ClauseAnnotation.class};
+
+	boolean compacted = false;
+
+	/**
+	 * feature vectors that are int ids of a string pool (the pool of the token table of the instance),
+	 * all vectors are in one array, vector i is ids[offsets[i], offsets[i+1]), it's read-only
+	 */
+	static class EncodedFeatureVectors extends AbstractList<List<String>>
+	{
+		TokenTable.StringPool pool;
+		int[] offsets;
+		int[] ids;
+
+		/**
+		 * @param vectors null vectors are encoded as empty ones
+		 */
+		EncodedFeatureVectors(TokenTable.StringPool pool, List<List<String>> vectors)
+		{
+			this.pool = pool;
+			offsets = new int[vectors.size() + 1];
+			int num = 0;
+			for (List<String> vector : vectors)
+			{
+				num += vector == null ? 0 : vector.size();
+			}
+			ids = new int[num];
+			num = 0;
+			for (int i = 0; i < vectors.size(); i++)
+			{
+				offsets[i] = num;
+				if (vectors.get(i) != null)
+				{
+					for (String feature : vectors.get(i))
+					{
+						ids[num++] = pool.id(feature);
+					}
+				}
+			}
+			offsets[vectors.size()] = num;
+		}
+
+		EncodedFeatureVectors(TokenTable.StringPool pool, int[] offsets, int[] ids)
+		{
+			this.pool = pool;
+			this.offsets = offsets;
+			this.ids = ids;
+		}
+
+		@Override
+		public List<String> get(final int i)
+		{
+			final int start = offsets[i];
+			final int end = offsets[i + 1];
+			return new AbstractList<String>()
+			{
+				@Override
+				public String get(int j)
+				{
+					if (j < 0 || start + j >= end)
+					{
+						throw new IndexOutOfBoundsException("index " + j + " of " + (end - start));
+					}
+					return pool.get(ids[start + j]);
+				}
+
+				@Override
+				public int size()
+				{
+					return end - start;
+				}
+			};
+		}
+
+		@Override
+		public int size()
+		{
+			return offsets.length - 1;
+		}
+	}
+
 	static public enum InstanceAnnotations
 	{
 		Token_FEATURE_MAPs, // list->map<key,value> token feature maps, each map contains basic text features for a token
@@ -215,6 +309,86 @@ public class SentenceInstance extends AbstractInstance
 		this.target = new SentenceAssignment(this);
 	}
 
+	/**
+	 * release the structures that are only needed to extract the features, it's called after the
+	 * instance is built, and the instance is only used for learning/decoding after that.
+	 * It keeps the label target, the argument candidates, the token spans and POS tags, the dependency graph,
+	 * the token annotations that global features use, and the node/edge text features as int ids; it releases
+	 * the Sentence (and the Document through it), the parse tree, the other token annotations and the feature Strings.
+	 * 
+	 * Edge features can't be made on demand without the parse tree, so they are made here for the tokens that
+	 * can be triggers by POS (the same tokens as in the target), the other tokens have no edge text features
+	 */
+	public void compact()
+	{
+		if (compacted)
+		{
+			return;
+		}
+
+		// the strings are encoded by the pool of the document if the tokens are in its tables
+		List<Map<Class<?>, Object>> tokens = getTokenFeatureMaps();
+		TokenTable.StringPool pool = tokens instanceof TokenTable ? ((TokenTable) tokens).getPool()
+				: new TokenTable.StringPool();
+
+		// fill in the edge features that are not made yet
+		List<List<List<String>>> edgeFeatVectors = (List<List<List<String>>>) this.textFeaturesMap
+				.get(InstanceAnnotations.EdgeTextFeatureVectors);
+		List<List<List<String>>> encodedEdgeFeatVectors = new ArrayList<List<List<String>>>(size());
+		for (int i = 0; i < size(); i++)
+		{
+			List<List<String>> featuresForNode = edgeFeatVectors.get(i);
+			if (TypeConstraints.isPossibleTriggerByPOS(this, i))
+			{
+				for (int j = 0; j < eventArgCandidates.size(); j++)
+				{
+					if (featuresForNode.get(j) == null)
+					{
+						featuresForNode.set(j, EdgeFeatureGenerator.get_edge_text_features(this, i,
+								eventArgCandidates.get(j)));
+					}
+				}
+			}
+			encodedEdgeFeatVectors.add(new EncodedFeatureVectors(pool, featuresForNode));
+		}
+		this.textFeaturesMap.put(InstanceAnnotations.EdgeTextFeatureVectors, encodedEdgeFeatVectors);
+
+		List<List<String>> tokenFeatVectors = (List<List<String>>) this.textFeaturesMap
+				.get(InstanceAnnotations.NodeTextFeatureVectors);
+		this.textFeaturesMap.put(InstanceAnnotations.NodeTextFeatureVectors,
+				new EncodedFeatureVectors(pool, tokenFeatVectors));
+
+		// only keep the token annotations of global features
+		if (tokens != null)
+		{
+			TokenTable table = new TokenTable(pool, tokens.size());
+			for (Map<Class<?>, Object> token : tokens)
+			{
+				Map<Class<?>, Object> row = table.addToken();
+				for (Class<?> key : GlobalFeatureAnnotations)
+				{
+					Object value = token.get(key);
+					if (value != null)
+					{
+						row.put(key, value);
+					}
+				}
+			}
+			table.compact();
+			this.textFeaturesMap.put(InstanceAnnotations.Token_FEATURE_MAPs, table);
+		}
+
+		this.textFeaturesMap.remove(InstanceAnnotations.ParseTree);
+		this.sent = null;
+		this.allText = null;
+		this.compacted = true;
+	}
+
+	public boolean isCompacted()
+	{
+		return compacted;
+	}
+
 	/**
 	 * the size of the sentence
 	 * @return
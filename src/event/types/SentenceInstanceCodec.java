@@ -0,0 +1,399 @@
+package event.types;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import util.Controller;
+import util.Span;
+import util.TokenAnnotations;
+import util.graph.DependencyGraph;
+import util.graph.GraphEdge;
+import util.graph.GraphNode;
+
+import commons.Alphabets;
+import commons.DocumentCache;
+import commons.FeatureVector;
+import commons.FeatureVectorSequence;
+import commons.TokenTable;
+
+import ace.acetypes.AceEventMention;
+import ace.acetypes.AceMentionCodec;
+
+import classifiers.perceptron.InstanceStore;
+
+import event.types.SentenceInstance.EncodedFeatureVectors;
+import event.types.SentenceInstance.InstanceAnnotations;
+
+/**
+ * the binary form of a compacted SentenceInstance in an InstanceStore:
+ * token spans, POS tags, the token annotations of global features, the dependency graph,
+ * the node/edge text features as ids of a string pool, the argument candidates, and the target and target prefix
+ * assignments (labels and feature vectors).
+ * The strings are written as ids of the pool of the codec, which is shared by the instances of the store,
+ * so a store can only be read by the codec that wrote it.
+ *
+ * the gold event mentions are not kept. The feature vectors of the assignments are kept, so they are not made again
+ * in each epoch, and reading an instance doesn't add to the alphabets, e.g. in the prefetch threads of the store
+ */
+public class SentenceInstanceCodec implements InstanceStore.Codec<SentenceInstance>
+{
+	protected Alphabets alphabets;
+	protected Controller controller;
+	protected boolean learnable;
+	// the pool of the string ids in the store
+	protected TokenTable.StringPool pool;
+
+	public SentenceInstanceCodec(Alphabets alphabets, Controller controller, boolean learnable)
+	{
+		this.pool = new TokenTable.StringPool();
+		this.alphabets = alphabets;
+		this.controller = controller;
+		this.learnable = learnable;
+	}
+
+	/**
+	 * write the instance, it's compacted first
+	 */
+	@Override
+	public void write(SentenceInstance inst, DataOutputStream out) throws IOException
+	{
+		inst.compact();
+		DocumentCache.writeString(out, inst.docID);
+
+		Span[] spans = inst.getTokenSpans();
+		DocumentCache.writeVarint(out, spans.length);
+		int last = 0;
+		for (Span span : spans)
+		{
+			DocumentCache.writeVarint(out, DocumentCache.zigzag(span.start() - last));
+			DocumentCache.writeVarint(out, DocumentCache.zigzag(span.end() - span.start()));
+			last = span.start();
+		}
+		String[] posTags = inst.getPosTags();
+		for (String pos : posTags)
+		{
+			writeId(out, pos);
+		}
+
+		// the token annotations of global features
+		List<Map<Class<?>, Object>> tokens = inst.getTokenFeatureMaps();
+		for (Map<Class<?>, Object> token : tokens)
+		{
+			writeId(out, (String) token.get(TokenAnnotations.TextAnnotation.class));
+			writeId(out, (String) token.get(TokenAnnotations.PartOfSpeechAnnotation.class));
+			List<String> synonyms = (List<String>) token.get(TokenAnnotations.SynonymsAnnotation.class);
+			DocumentCache.writeVarint(out, synonyms == null ? 0 : synonyms.size() + 1);
+			if (synonyms != null)
+			{
+				for (String synonym : synonyms)
+				{
+					writeId(out, synonym);
+				}
+			}
+			Integer clause = (Integer) token.get(TokenAnnotations.ClauseAnnotation.class);
+			out.writeBoolean(clause != null);
+			if (clause != null)
+			{
+				DocumentCache.writeVarint(out, DocumentCache.zigzag(clause));
+			}
+		}
+
+		writeGraph(out, (DependencyGraph) inst.get(InstanceAnnotations.DepGraph));
+
+		writeFeatures(out, (EncodedFeatureVectors) inst.get(InstanceAnnotations.NodeTextFeatureVectors));
+		List<List<List<String>>> edgeFeatVectors = (List<List<List<String>>>) inst
+				.get(InstanceAnnotations.EdgeTextFeatureVectors);
+		for (List<List<String>> featuresForNode : edgeFeatVectors)
+		{
+			writeFeatures(out, (EncodedFeatureVectors) featuresForNode);
+		}
+
+		AceMentionCodec.write(out, inst.eventArgCandidates);
+
+		writeAssignment(out, (SentenceAssignment) inst.target);
+		writeAssignment(out, (SentenceAssignment) inst.target_prefix);
+	}
+
+	@Override
+	public SentenceInstance read(DataInputStream in) throws IOException
+	{
+		SentenceInstance inst = new SentenceInstance(alphabets, controller, learnable);
+		inst.docID = DocumentCache.readString(in);
+
+		int length = DocumentCache.readVarint(in);
+		Span[] spans = new Span[length];
+		int last = 0;
+		for (int i = 0; i < length; i++)
+		{
+			int start = last + DocumentCache.unzigzag(DocumentCache.readVarint(in));
+			spans[i] = new Span(start, start + DocumentCache.unzigzag(DocumentCache.readVarint(in)));
+			last = start;
+		}
+		String[] posTags = new String[length];
+		for (int i = 0; i < length; i++)
+		{
+			posTags[i] = readId(in);
+		}
+		inst.textFeaturesMap.put(InstanceAnnotations.TOKEN_SPANS, spans);
+		inst.textFeaturesMap.put(InstanceAnnotations.POSTAGS, posTags);
+
+		TokenTable tokens = new TokenTable(pool, length);
+		for (int i = 0; i < length; i++)
+		{
+			Map<Class<?>, Object> token = tokens.addToken();
+			String text = readId(in);
+			if (text != null)
+			{
+				token.put(TokenAnnotations.TextAnnotation.class, text);
+			}
+			String pos = readId(in);
+			if (pos != null)
+			{
+				token.put(TokenAnnotations.PartOfSpeechAnnotation.class, pos);
+			}
+			int numSynonyms = DocumentCache.readVarint(in);
+			if (numSynonyms > 0)
+			{
+				List<String> synonyms = new ArrayList<String>(numSynonyms - 1);
+				for (int j = 0; j < numSynonyms - 1; j++)
+				{
+					synonyms.add(readId(in));
+				}
+				token.put(TokenAnnotations.SynonymsAnnotation.class, synonyms);
+			}
+			if (in.readBoolean())
+			{
+				token.put(TokenAnnotations.ClauseAnnotation.class, DocumentCache.unzigzag(DocumentCache.readVarint(in)));
+			}
+		}
+		tokens.compact();
+		inst.textFeaturesMap.put(InstanceAnnotations.Token_FEATURE_MAPs, tokens);
+
+		inst.textFeaturesMap.put(InstanceAnnotations.DepGraph, readGraph(in));
+
+		inst.textFeaturesMap.put(InstanceAnnotations.NodeTextFeatureVectors, readFeatures(in));
+		List<List<List<String>>> edgeFeatVectors = new ArrayList<List<List<String>>>(length);
+		for (int i = 0; i < length; i++)
+		{
+			edgeFeatVectors.add(readFeatures(in));
+		}
+		inst.textFeaturesMap.put(InstanceAnnotations.EdgeTextFeatureVectors, edgeFeatVectors);
+
+		inst.eventArgCandidates.addAll(AceMentionCodec.read(in));
+		inst.eventMentions = new ArrayList<AceEventMention>();
+		inst.compacted = true;
+
+		inst.target = readAssignment(in, inst);
+		inst.target_prefix = readAssignment(in, inst);
+		return inst;
+	}
+
+	/**
+	 * a nullable assignment: the node labels, the edge labels, and the feature vectors
+	 */
+	void writeAssignment(DataOutputStream out, SentenceAssignment assn) throws IOException
+	{
+		out.writeBoolean(assn != null);
+		if (assn == null)
+		{
+			return;
+		}
+		DocumentCache.writeVarint(out, assn.getNodeAssignment().size());
+		for (Integer label : assn.getNodeAssignment())
+		{
+			DocumentCache.writeVarint(out, label);
+		}
+		Map<Integer, Map<Integer, Integer>> edgeAssignment = assn.getEdgeAssignment();
+		DocumentCache.writeVarint(out, edgeAssignment.size());
+		for (Map.Entry<Integer, Map<Integer, Integer>> edges : edgeAssignment.entrySet())
+		{
+			DocumentCache.writeVarint(out, edges.getKey());
+			DocumentCache.writeVarint(out, edges.getValue().size());
+			for (Map.Entry<Integer, Integer> edge : edges.getValue().entrySet())
+			{
+				DocumentCache.writeVarint(out, edge.getKey());
+				DocumentCache.writeVarint(out, edge.getValue());
+			}
+		}
+		FeatureVectorSequence fvs = assn.getFeatureVectorSequence();
+		DocumentCache.writeVarint(out, fvs.size());
+		for (FeatureVector fv : fvs.getSequence())
+		{
+			DocumentCache.writeVarint(out, fv.size());
+			for (Map.Entry<Object, Double> feature : fv.getMap().entrySet())
+			{
+				if (!(feature.getKey() instanceof String))
+				{
+					throw new IOException("can't write the feature " + feature.getKey() + " of " + feature.getKey().getClass());
+				}
+				writeId(out, (String) feature.getKey());
+				out.writeDouble(feature.getValue());
+			}
+		}
+	}
+
+	SentenceAssignment readAssignment(DataInputStream in, SentenceInstance inst) throws IOException
+	{
+		if (!in.readBoolean())
+		{
+			return null;
+		}
+		int numNodes = DocumentCache.readVarint(in);
+		List<Integer> nodeLabels = new ArrayList<Integer>(numNodes);
+		for (int i = 0; i < numNodes; i++)
+		{
+			nodeLabels.add(DocumentCache.readVarint(in));
+		}
+		Map<Integer, Map<Integer, Integer>> edgeLabels = new HashMap<Integer, Map<Integer, Integer>>();
+		int numTriggers = DocumentCache.readVarint(in);
+		for (int i = 0; i < numTriggers; i++)
+		{
+			int trigger_index = DocumentCache.readVarint(in);
+			int numEdges = DocumentCache.readVarint(in);
+			Map<Integer, Integer> edges = new HashMap<Integer, Integer>();
+			for (int j = 0; j < numEdges; j++)
+			{
+				int arg_index = DocumentCache.readVarint(in);
+				edges.put(arg_index, DocumentCache.readVarint(in));
+			}
+			edgeLabels.put(trigger_index, edges);
+		}
+		FeatureVectorSequence fvs = new FeatureVectorSequence();
+		int numVectors = DocumentCache.readVarint(in);
+		for (int i = 0; i < numVectors; i++)
+		{
+			int size = DocumentCache.readVarint(in);
+			FeatureVector fv = new FeatureVector(size);
+			for (int j = 0; j < size; j++)
+			{
+				String feature = readId(in);
+				fv.getMap().put(feature, in.readDouble());
+			}
+			fvs.add(fv);
+		}
+		return new SentenceAssignment(inst, nodeLabels, edgeLabels, fvs);
+	}
+
+	/**
+	 * a nullable string as its id in the string pool + 1, 0 for null
+	 */
+	void writeId(DataOutputStream out, String str) throws IOException
+	{
+		DocumentCache.writeVarint(out, str == null ? 0 : pool.id(str) + 1);
+	}
+
+	String readId(DataInputStream in) throws IOException
+	{
+		return pool.get(DocumentCache.readVarint(in) - 1);
+	}
+
+	void writeFeatures(DataOutputStream out, EncodedFeatureVectors vectors) throws IOException
+	{
+		DocumentCache.writeVarint(out, vectors.size());
+		for (int i = 0; i < vectors.size(); i++)
+		{
+			DocumentCache.writeVarint(out, vectors.offsets[i + 1] - vectors.offsets[i]);
+		}
+		for (int id : vectors.ids)
+		{
+			// the vectors may be encoded with another pool
+			DocumentCache.writeVarint(out, vectors.pool == pool ? id : pool.id(vectors.pool.get(id)));
+		}
+	}
+
+	EncodedFeatureVectors readFeatures(DataInputStream in) throws IOException
+	{
+		int size = DocumentCache.readVarint(in);
+		int[] offsets = new int[size + 1];
+		for (int i = 0; i < size; i++)
+		{
+			offsets[i + 1] = offsets[i] + DocumentCache.readVarint(in);
+		}
+		int[] ids = new int[offsets[size]];
+		for (int i = 0; i < ids.length; i++)
+		{
+			ids[i] = DocumentCache.readVarint(in);
+		}
+		return new EncodedFeatureVectors(pool, offsets, ids);
+	}
+
+	/**
+	 * the edges of the graph, and the edges of each vertex by edge ids, as in DocumentCache
+	 */
+	void writeGraph(DataOutputStream out, DependencyGraph graph) throws IOException
+	{
+		out.writeBoolean(graph != null);
+		if (graph == null)
+		{
+			return;
+		}
+		Map<GraphEdge, Integer> edgeIds = new IdentityHashMap<GraphEdge, Integer>();
+		List<GraphEdge> edges = new ArrayList<GraphEdge>();
+		for (GraphNode vertex : graph.getVertices())
+		{
+			for (GraphEdge edge : vertex.getEdges())
+			{
+				if (!edgeIds.containsKey(edge))
+				{
+					edgeIds.put(edge, edges.size());
+					edges.add(edge);
+				}
+			}
+		}
+		DocumentCache.writeVarint(out, DocumentCache.zigzag(graph.getRoot()));
+		DocumentCache.writeVarint(out, edges.size());
+		for (GraphEdge edge : edges)
+		{
+			DocumentCache.writeVarint(out, DocumentCache.zigzag(edge.getGovernor()));
+			DocumentCache.writeVarint(out, DocumentCache.zigzag(edge.getDependent()));
+			writeId(out, edge.getRelation());
+		}
+		Vector<GraphNode> vertices = graph.getVertices();
+		DocumentCache.writeVarint(out, vertices.size());
+		for (GraphNode vertex : vertices)
+		{
+			DocumentCache.writeVarint(out, vertex.getEdges().size());
+			for (GraphEdge edge : vertex.getEdges())
+			{
+				DocumentCache.writeVarint(out, edgeIds.get(edge));
+			}
+		}
+	}
+
+	DependencyGraph readGraph(DataInputStream in) throws IOException
+	{
+		if (!in.readBoolean())
+		{
+			return null;
+		}
+		DependencyGraph graph = new DependencyGraph();
+		graph.setRoot(DocumentCache.unzigzag(DocumentCache.readVarint(in)));
+		GraphEdge[] edges = new GraphEdge[DocumentCache.readVarint(in)];
+		for (int i = 0; i < edges.length; i++)
+		{
+			int governor = DocumentCache.unzigzag(DocumentCache.readVarint(in));
+			int dependent = DocumentCache.unzigzag(DocumentCache.readVarint(in));
+			edges[i] = new GraphEdge(governor, dependent, readId(in));
+		}
+		int numVertices = DocumentCache.readVarint(in);
+		graph.getVertices().setSize(numVertices);
+		for (int i = 0; i < numVertices; i++)
+		{
+			GraphNode vertex = new GraphNode(i);
+			int numEdges = DocumentCache.readVarint(in);
+			for (int j = 0; j < numEdges; j++)
+			{
+				vertex.getEdges().add(edges[DocumentCache.readVarint(in)]);
+			}
+			graph.getVertices().set(i, vertex);
+		}
+		return graph;
+	}
+}
@@ -12,8 +12,14 @@ public class BrownClusterOriginal
 {
 	static private BrownClusterOriginal dict = null;
 	
-	static public BrownClusterOriginal getSingleton()
+	static public synchronized BrownClusterOriginal getSingleton()
 	{
+		LexicalBundle.Table table = LexicalBundle.getTable(LexicalBundle.BrownClusterTable);
+		if(dict == null && table != null)
+		{
+			// read from the compiled bundle given by -DlexicalBundle
+			dict = new BrownClusterOriginal(table);
+		}
 		if(dict == null)
 		{
 			try
@@ -35,11 +41,18 @@ public class BrownClusterOriginal
 	
 	
 	Map<String, String> map = new HashMap<String, String>();
+	// token --> prefix in the mapped bundle, or null if it's read from the text file
+	LexicalBundle.Table table;
 	
 	public BrownClusterOriginal(File dict_path) throws FileNotFoundException,IOException 
 	{
 		initializeDict(dict_path);
 	}
+	
+	protected BrownClusterOriginal(LexicalBundle.Table table)
+	{
+		this.table = table;
+	}
 
 	/**
 	 * read the dictionary to memory data structure
@@ -83,6 +96,10 @@ public class BrownClusterOriginal
 	
 	public String getBrownClusterPrefix(String token)
 	{
+		if(table != null)
+		{
+			return token == null ? null : table.getString(token);
+		}
 		return map.get(token);
 	}
 	
@@ -16,8 +16,14 @@ public class BrownClusters
 
 	static private BrownClusters dict = null;
 	
-	static public BrownClusters getSingleton()
+	static public synchronized BrownClusters getSingleton()
 	{
+		LexicalBundle.Table table = LexicalBundle.getTable(LexicalBundle.BrownPrefixTable);
+		if(dict == null && table != null)
+		{
+			// read from the compiled bundle given by -DlexicalBundle
+			dict = new BrownClusters(table);
+		}
 		if(dict == null)
 		{
 			try
@@ -39,11 +45,18 @@ public class BrownClusters
 	
 	
 	Map<String, List<String>> map = new HashMap<String, List<String>>();
+	// token --> prefixes in the mapped bundle, or null if it's read from the text file
+	LexicalBundle.Table table;
 	
 	public BrownClusters(File dict_path) throws FileNotFoundException,IOException 
 	{
 		initializeDict(dict_path);
 	}
+	
+	protected BrownClusters(LexicalBundle.Table table)
+	{
+		this.table = table;
+	}
 
 	static final Integer[] Prefix_Length = new Integer[]{13, 16, 20};
 	
@@ -105,6 +118,10 @@ public class BrownClusters
 	
 	public List<String> getBrownCluster(String token)
 	{
+		if(table != null)
+		{
+			return token == null ? null : table.getList(token);
+		}
 		return map.get(token);
 	}
 	
@@ -12,7 +12,7 @@ import opennlp.tools.util.InvalidFormatException;
 public class ChunkWrapper {
 public static ChunkWrapper chunkwrapper;
 	
-	public static ChunkWrapper getChunker() throws InvalidFormatException, IOException
+	public static synchronized ChunkWrapper getChunker() throws InvalidFormatException, IOException
 	{
 		if(chunkwrapper == null)
 		{
@@ -21,13 +21,22 @@ public static ChunkWrapper chunkwrapper;
 		return chunkwrapper;
 	}
 	
-	ChunkerME chunker;
+	// the model is shared, each thread has its own ChunkerME
+	ChunkerModel model;
+	EnginePool<ChunkerME> chunkers;
 	
 	ChunkWrapper(File model_File) throws InvalidFormatException, IOException
 	{
 		InputStream modelIn = new FileInputStream(model_File);
-		ChunkerModel model = new ChunkerModel(modelIn);
-		chunker = new ChunkerME(model);
+		model = new ChunkerModel(modelIn);
+		modelIn.close();
+		chunkers = new EnginePool<ChunkerME>()
+		{
+			protected ChunkerME newEngine()
+			{
+				return new ChunkerME(model);
+			}
+		};
 	}
 	
 	/**
@@ -37,7 +46,7 @@ public static ChunkWrapper chunkwrapper;
 	 */
 	public String[] chunk(String[] sent, String[] pos)
 	{
-		return chunker.chunk(sent, pos);
+		return chunkers.get().chunk(sent, pos);
 	}
 	
 	public static void main(String[] args) throws InvalidFormatException, IOException
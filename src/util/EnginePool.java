@@ -0,0 +1,48 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * a pool of NLP engines (e.g. OpenNLP TokenizerME, a parser query), one per thread
+ * the engines are not thread-safe, but they are light-weight decoders of a model that is
+ * immutable, so the model is loaded once and shared, and each thread creates its own engine
+ * on first use and keeps it. An engine that holds its own model (e.g. Stanford's MaxentTagger)
+ * should not be pooled, as it would load the model once per thread
+ *
+ * @param <T>
+ */
+public abstract class EnginePool<T>
+{
+	// number of engines created, i.e. number of threads that used this pool
+	protected AtomicInteger created = new AtomicInteger();
+
+	private ThreadLocal<T> engines = new ThreadLocal<T>()
+	{
+		@Override
+		protected T initialValue()
+		{
+			created.incrementAndGet();
+			return newEngine();
+		}
+	};
+
+	/**
+	 * create an engine for the current thread
+	 * @return
+	 */
+	protected abstract T newEngine();
+
+	/**
+	 * the engine of the current thread
+	 * @return
+	 */
+	public T get()
+	{
+		return engines.get();
+	}
+
+	public int size()
+	{
+		return created.get();
+	}
+}
@@ -0,0 +1,255 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * counters of feature extraction, per stage (e.g. NodeFeatureGenerator) and per template (e.g. W-1W0):
+ * number of calls, cumulative nanoseconds, features emitted and distinct features added to featureAlphabet
+ *
+ * each count is recorded once: the template "*" of a stage is the number and the time of its calls, which are
+ * recorded around the whole call and not inside its loops, and its features are counted by their templates
+ * (the feature names) when the call returns
+ *
+ * it's enabled by -DfeatureProfile=path/to/profile.json, and the counters are dumped to that file
+ * as JSON at the end of a train/decode run. When disabled, every hook is a check of a static final flag
+ */
+public class FeatureProfiler
+{
+	// the output file of the profile, null if disabled
+	static public final String output = System.getProperty("featureProfile");
+
+	static public final boolean enabled = output != null;
+
+	/**
+	 * counters of one (stage, template)
+	 */
+	public static class Counter
+	{
+		public final String stage;
+		public final String template;
+		public final AtomicLong calls = new AtomicLong();
+		public final AtomicLong nanos = new AtomicLong();
+		public final AtomicLong emitted = new AtomicLong();
+		public final AtomicLong added = new AtomicLong();
+
+		Counter(String stage, String template)
+		{
+			this.stage = stage;
+			this.template = template;
+		}
+	}
+
+	static protected ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+	static public Counter getCounter(String stage, String template)
+	{
+		String key = stage + "\t" + template;
+		Counter counter = counters.get(key);
+		if(counter == null)
+		{
+			counter = new Counter(stage, template);
+			Counter old = counters.putIfAbsent(key, counter);
+			if(old != null)
+			{
+				counter = old;
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * start time of a call, 0 if disabled
+	 * @return
+	 */
+	static public long start()
+	{
+		return enabled ? System.nanoTime() : 0L;
+	}
+
+	/**
+	 * record one call that starts at start (from start()) and emits a number of features
+	 * @param stage
+	 * @param template
+	 * @param start
+	 * @param emitted
+	 */
+	static public void record(String stage, String template, long start, int emitted)
+	{
+		if(!enabled)
+		{
+			return;
+		}
+		long time = System.nanoTime() - start;
+		Counter counter = getCounter(stage, template);
+		counter.calls.incrementAndGet();
+		counter.nanos.addAndGet(time);
+		counter.emitted.addAndGet(emitted);
+	}
+
+	/**
+	 * record one call that starts at start (from start()), its features are counted by their templates
+	 * @param stage
+	 * @param template
+	 * @param start
+	 */
+	static public void recordCall(String stage, String template, long start)
+	{
+		record(stage, template, start, 0);
+	}
+
+	/**
+	 * count the emitted features by their templates (the feature name before "=" or ":")
+	 * @param stage
+	 * @param features
+	 */
+	static public void recordEmitted(String stage, List<String> features)
+	{
+		if(!enabled || features == null)
+		{
+			return;
+		}
+		for(String feature : features)
+		{
+			getCounter(stage, templateOf(feature)).emitted.incrementAndGet();
+		}
+	}
+
+	/**
+	 * record that a feature, e.g. "BigramFeature:\tW=war\t...", is newly added to featureAlphabet
+	 * (see Alphabet.add), the stage is the prefix before ":\t", and the template is the name
+	 * of the text feature
+	 * @param feature
+	 */
+	static public void recordAdded(String feature)
+	{
+		if(!enabled)
+		{
+			return;
+		}
+		String stage = "Alphabet";
+		int sep = feature.indexOf(":\t");
+		if(sep >= 0)
+		{
+			stage = feature.substring(0, sep);
+			feature = feature.substring(sep + 2);
+		}
+		getCounter(stage, templateOf(feature)).added.incrementAndGet();
+	}
+
+	/**
+	 * the template (name) of a feature string, e.g. W-1W0=a#b --> W-1W0
+	 * @param feature
+	 * @return
+	 */
+	static public String templateOf(String feature)
+	{
+		int end = feature.length();
+		for(int i=0; i<feature.length(); i++)
+		{
+			char c = feature.charAt(i);
+			if(c == '=' || c == ':' || c == '\t')
+			{
+				end = i;
+				break;
+			}
+		}
+		return feature.substring(0, end);
+	}
+
+	static public void reset()
+	{
+		counters.clear();
+	}
+
+	/**
+	 * the counters as a JSON array, sorted by stage and template
+	 * @return
+	 */
+	static public String toJSON()
+	{
+		List<String> keys = new ArrayList<String>(counters.keySet());
+		Collections.sort(keys);
+		StringBuilder ret = new StringBuilder();
+		ret.append("[\n");
+		for(int i=0; i<keys.size(); i++)
+		{
+			Counter counter = counters.get(keys.get(i));
+			ret.append("  {\"stage\": ").append(quote(counter.stage));
+			ret.append(", \"template\": ").append(quote(counter.template));
+			ret.append(", \"calls\": ").append(counter.calls.get());
+			ret.append(", \"nanos\": ").append(counter.nanos.get());
+			ret.append(", \"emitted\": ").append(counter.emitted.get());
+			ret.append(", \"added\": ").append(counter.added.get());
+			ret.append("}");
+			if(i < keys.size() - 1)
+			{
+				ret.append(",");
+			}
+			ret.append("\n");
+		}
+		ret.append("]\n");
+		return ret.toString();
+	}
+
+	static private String quote(String str)
+	{
+		StringBuilder ret = new StringBuilder("\"");
+		for(int i=0; i<str.length(); i++)
+		{
+			char c = str.charAt(i);
+			switch(c)
+			{
+			case '"': ret.append("\\\""); break;
+			case '\\': ret.append("\\\\"); break;
+			case '\t': ret.append("\\t"); break;
+			case '\n': ret.append("\\n"); break;
+			case '\r': ret.append("\\r"); break;
+			default:
+				if(c < 0x20)
+				{
+					ret.append(String.format("\\u%04x", (int) c));
+				}
+				else
+				{
+					ret.append(c);
+				}
+			}
+		}
+		ret.append("\"");
+		return ret.toString();
+	}
+
+	/**
+	 * dump the counters to the file given by -DfeatureProfile, do nothing if disabled
+	 */
+	static public void dump()
+	{
+		if(!enabled)
+		{
+			return;
+		}
+		dump(new File(output));
+	}
+
+	static public void dump(File file)
+	{
+		try
+		{
+			PrintWriter out = new PrintWriter(file);
+			out.print(toJSON());
+			out.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+}
@@ -109,8 +109,14 @@ public class FrameNet
 	
 	static private FrameNet frames = null;
 	
-	static public FrameNet getSingleton()
+	static public synchronized FrameNet getSingleton()
 	{
+		LexicalBundle.Table table = LexicalBundle.getTable(LexicalBundle.FrameNetTable);
+		if(frames == null && table != null)
+		{
+			// read from the compiled bundle given by -DlexicalBundle
+			frames = new FrameNet(table);
+		}
 		if(frames == null)
 		{
 			try
@@ -132,11 +138,18 @@ public class FrameNet
 	
 	// lemma#pos --> frames
 	Map<String, List<String>> map = new HashMap<String, List<String>>();
+	// lemma#pos --> frames in the mapped bundle, or null if it's read from the text file
+	LexicalBundle.Table table;
 	
 	public FrameNet(File dict_path) throws FileNotFoundException,IOException 
 	{
 		initializeDict(dict_path);
 	}
+	
+	protected FrameNet(LexicalBundle.Table table)
+	{
+		this.table = table;
+	}
 
 	
 	/**
@@ -190,6 +203,10 @@ public class FrameNet
 	{
 		pos = "" + pos.charAt(0);
 		String key = lemma + "#" + pos;
+		if(table != null)
+		{
+			return table.getList(key);
+		}
 		return map.get(key);
 	}
 	
@@ -0,0 +1,444 @@
+package util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * the lexical resources (Brown clusters, Nomlex, FrameNet frames, trigger tokens) compiled into one binary file,
+ * which is memory-mapped instead of being parsed into HashMaps, so the lookups read the mapped pages, and the
+ * decoders on the same machine share one copy in the page cache
+ *
+ * the file is: magic, number of tables, (name, offset) of each table, then the tables. A table is a sorted
+ * string table: n, the offsets of the n keys and of the n values, then the keys and the values in UTF-8.
+ * The keys are sorted as unsigned bytes and looked up by binary search, a value is a list of strings separated by \0
+ *
+ * java util.LexicalBundle data/lexicon.bundle compiles the text files in data/, and -DlexicalBundle=data/lexicon.bundle
+ * makes BrownClusterOriginal, BrownClusters, Nomlex, FrameNet and TriggerLexicon read from it
+ */
+public class LexicalBundle
+{
+	static public final String FileProperty = "lexicalBundle";
+
+	static final int Magic = 0x4c584231; // "LXB1"
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// table names
+	static public final String BrownClusterTable = "brownCluster";
+	static public final String BrownPrefixTable = "brownPrefixes";
+	static public final String NomlexTable = "nomlex";
+	static public final String NomlexVerbTable = "nomlexVerbs";
+	static public final String FrameNetTable = "frameNet";
+	static public final String TriggerTable = "triggerTokens";
+
+	static private LexicalBundle bundle = null;
+	static private boolean initialized = false;
+
+	/**
+	 * the bundle given by -DlexicalBundle, null if it's not given or can't be read
+	 * @return
+	 */
+	static public synchronized LexicalBundle getSingleton()
+	{
+		if(!initialized)
+		{
+			initialized = true;
+			String path = System.getProperty(FileProperty);
+			if(path != null)
+			{
+				try
+				{
+					bundle = new LexicalBundle(new File(path));
+				}
+				catch(IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+		return bundle;
+	}
+
+	/**
+	 * the table of the bundle, null if there is no bundle or no such table
+	 * @param name
+	 * @return
+	 */
+	static public Table getTable(String name)
+	{
+		LexicalBundle bundle = getSingleton();
+		return bundle == null ? null : bundle.tables.get(name);
+	}
+
+	/**
+	 * a sorted string table in the mapped file
+	 * absolute gets don't change the buffer, so a table can be read by many threads
+	 */
+	static public class Table
+	{
+		protected MappedByteBuffer buffer;
+		protected int size;
+		// positions in the buffer
+		protected int keyOffsets;
+		protected int valueOffsets;
+		protected int keys;
+		protected int values;
+
+		Table(MappedByteBuffer buffer, int offset)
+		{
+			this.buffer = buffer;
+			this.size = buffer.getInt(offset);
+			this.keyOffsets = offset + 4;
+			this.valueOffsets = keyOffsets + 4 * (size + 1);
+			this.keys = valueOffsets + 4 * (size + 1);
+			this.values = keys + buffer.getInt(keyOffsets + 4 * size);
+		}
+
+		public int size()
+		{
+			return size;
+		}
+
+		/**
+		 * the position of the key in the table, or -1
+		 * @param key
+		 * @return
+		 */
+		public int find(String key)
+		{
+			byte[] bytes = key.getBytes(UTF8);
+			int low = 0;
+			int high = size - 1;
+			while(low <= high)
+			{
+				int mid = (low + high) >>> 1;
+				int cmp = compareKey(mid, bytes);
+				if(cmp < 0)
+				{
+					low = mid + 1;
+				}
+				else if(cmp > 0)
+				{
+					high = mid - 1;
+				}
+				else
+				{
+					return mid;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * compare the i-th key with the bytes
+		 */
+		private int compareKey(int i, byte[] bytes)
+		{
+			int start = keys + buffer.getInt(keyOffsets + 4 * i);
+			int length = keys + buffer.getInt(keyOffsets + 4 * (i + 1)) - start;
+			int n = Math.min(length, bytes.length);
+			for(int k=0; k<n; k++)
+			{
+				int b1 = buffer.get(start + k) & 0xff;
+				int b2 = bytes[k] & 0xff;
+				if(b1 != b2)
+				{
+					return b1 - b2;
+				}
+			}
+			return length - bytes.length;
+		}
+
+		public boolean contains(String key)
+		{
+			return find(key) >= 0;
+		}
+
+		public String getKey(int i)
+		{
+			int start = buffer.getInt(keyOffsets + 4 * i);
+			int end = buffer.getInt(keyOffsets + 4 * (i + 1));
+			return decode(keys + start, end - start);
+		}
+
+		/**
+		 * the value at position i, the strings of a list value are separated by \0
+		 * @param i
+		 * @return
+		 */
+		public String getValue(int i)
+		{
+			int start = buffer.getInt(valueOffsets + 4 * i);
+			int end = buffer.getInt(valueOffsets + 4 * (i + 1));
+			return decode(values + start, end - start);
+		}
+
+		public String getString(String key)
+		{
+			int i = find(key);
+			return i < 0 ? null : getValue(i);
+		}
+
+		/**
+		 * the list value of the key, a new list, or null if the key isn't in the table
+		 * @param key
+		 * @return
+		 */
+		public List<String> getList(String key)
+		{
+			int i = find(key);
+			if(i < 0)
+			{
+				return null;
+			}
+			return new ArrayList<String>(Arrays.asList(getValue(i).split("\0", -1)));
+		}
+
+		private String decode(int position, int length)
+		{
+			byte[] bytes = new byte[length];
+			for(int k=0; k<length; k++)
+			{
+				bytes[k] = buffer.get(position + k);
+			}
+			return new String(bytes, UTF8);
+		}
+	}
+
+	protected Map<String, Table> tables = new HashMap<String, Table>();
+
+	public LexicalBundle(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			// the mapping stays valid after the channel is closed
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(buffer.getInt(0) != Magic)
+			{
+				throw new IOException("not a lexical bundle: " + file);
+			}
+			int numTables = buffer.getInt(4);
+			int position = 8;
+			for(int i=0; i<numTables; i++)
+			{
+				int length = buffer.getShort(position) & 0xffff;
+				byte[] name = new byte[length];
+				for(int k=0; k<length; k++)
+				{
+					name[k] = buffer.get(position + 2 + k);
+				}
+				int offset = buffer.getInt(position + 2 + length);
+				tables.put(new String(name, UTF8), new Table(buffer, offset));
+				position += 2 + length + 4;
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * compare strings by their UTF-8 bytes, as the keys are looked up
+	 */
+	static final Comparator<byte[]> ByteOrder = new Comparator<byte[]>()
+	{
+		public int compare(byte[] a, byte[] b)
+		{
+			int n = Math.min(a.length, b.length);
+			for(int k=0; k<n; k++)
+			{
+				int b1 = a[k] & 0xff;
+				int b2 = b[k] & 0xff;
+				if(b1 != b2)
+				{
+					return b1 - b2;
+				}
+			}
+			return a.length - b.length;
+		}
+	};
+
+	/**
+	 * write the tables into a bundle file
+	 * @param file
+	 * @param tables table name --> (key --> strings)
+	 * @throws IOException
+	 */
+	static public void write(File file, Map<String, Map<String, List<String>>> tables) throws IOException
+	{
+		// the directory takes 8 bytes and (2 + name + 4) bytes per table
+		int offset = 8;
+		List<byte[]> names = new ArrayList<byte[]>();
+		for(String name : tables.keySet())
+		{
+			byte[] bytes = name.getBytes(UTF8);
+			names.add(bytes);
+			offset += 2 + bytes.length + 4;
+		}
+
+		// encode the tables
+		List<byte[]> encoded = new ArrayList<byte[]>();
+		for(Map<String, List<String>> table : tables.values())
+		{
+			encoded.add(encodeTable(table));
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try
+		{
+			out.writeInt(Magic);
+			out.writeInt(tables.size());
+			for(int i=0; i<names.size(); i++)
+			{
+				out.writeShort(names.get(i).length);
+				out.write(names.get(i));
+				out.writeInt(offset);
+				offset += encoded.get(i).length;
+			}
+			for(byte[] bytes : encoded)
+			{
+				out.write(bytes);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	static protected byte[] encodeTable(Map<String, List<String>> table) throws IOException
+	{
+		// sort the keys by bytes
+		final Map<byte[], String> keyOf = new HashMap<byte[], String>();
+		List<byte[]> keys = new ArrayList<byte[]>();
+		for(String key : table.keySet())
+		{
+			byte[] bytes = key.getBytes(UTF8);
+			keys.add(bytes);
+			keyOf.put(bytes, key);
+		}
+		Collections.sort(keys, ByteOrder);
+
+		ByteArrayOutputStream keyBytes = new ByteArrayOutputStream();
+		ByteArrayOutputStream valueBytes = new ByteArrayOutputStream();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		int n = keys.size();
+		int[] keyOffsets = new int[n + 1];
+		int[] valueOffsets = new int[n + 1];
+		for(int i=0; i<n; i++)
+		{
+			keyOffsets[i] = keyBytes.size();
+			valueOffsets[i] = valueBytes.size();
+			keyBytes.write(keys.get(i));
+			List<String> value = table.get(keyOf.get(keys.get(i)));
+			for(int k=0; k<value.size(); k++)
+			{
+				if(k > 0)
+				{
+					valueBytes.write(0);
+				}
+				valueBytes.write(value.get(k).getBytes(UTF8));
+			}
+		}
+		keyOffsets[n] = keyBytes.size();
+		valueOffsets[n] = valueBytes.size();
+
+		out.writeInt(n);
+		for(int offset : keyOffsets)
+		{
+			out.writeInt(offset);
+		}
+		for(int offset : valueOffsets)
+		{
+			out.writeInt(offset);
+		}
+		keyBytes.writeTo(out);
+		valueBytes.writeTo(out);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	static private Map<String, List<String>> toTable(Map<String, String> map)
+	{
+		Map<String, List<String>> ret = new HashMap<String, List<String>>();
+		for(Map.Entry<String, String> entry : map.entrySet())
+		{
+			ret.put(entry.getKey(), Collections.singletonList(entry.getValue()));
+		}
+		return ret;
+	}
+
+	/**
+	 * compile the text resources in data/ into a bundle
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length < 1)
+		{
+			System.out.println("Usage:");
+			System.out.println("args[0]: output bundle, e.g. data/lexicon.bundle");
+			System.exit(-1);
+		}
+
+		Map<String, Map<String, List<String>>> tables = new LinkedHashMap<String, Map<String, List<String>>>();
+
+		File brownFile = new File("data/aceAllAndKDD.brownCluster");
+		tables.put(BrownClusterTable, toTable(new BrownClusterOriginal(brownFile).map));
+		tables.put(BrownPrefixTable, new BrownClusters(brownFile).map);
+
+		Nomlex nomlex = new Nomlex();
+		tables.put(NomlexTable, toTable(nomlex.basemap));
+		Map<String, List<String>> verbs = new HashMap<String, List<String>>();
+		for(String verb : nomlex.basemap.values())
+		{
+			verbs.put(verb, Collections.singletonList(""));
+		}
+		tables.put(NomlexVerbTable, verbs);
+
+		tables.put(FrameNetTable, new FrameNet(new File("data/frameDicts")).map);
+
+		// the lines of the trigger lexicon, keyed by line number to keep the order of the file
+		Map<String, List<String>> triggers = new HashMap<String, List<String>>();
+		BufferedReader reader = new BufferedReader(new FileReader("data/triggerTokens"));
+		String line = null;
+		while((line = reader.readLine()) != null)
+		{
+			triggers.put(String.format("%08d", triggers.size()), Collections.singletonList(line));
+		}
+		reader.close();
+		tables.put(TriggerTable, triggers);
+
+		File file = new File(args[0]);
+		write(file, tables);
+		LexicalBundle bundle = new LexicalBundle(file);
+		for(String name : tables.keySet())
+		{
+			System.out.println(name + "\t" + bundle.tables.get(name).size());
+		}
+		System.out.println("written " + file + " (" + file.length() + " bytes)");
+	}
+}
@@ -0,0 +1,139 @@
+package util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a thread-safe cache of bounded size, which evicts the least recently used entries
+ * the entries are split into segments by the hash of the key, each segment is a LinkedHashMap
+ * in access order with its own lock, so the threads that look up different keys seldom wait for each other
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class LruCache<K, V>
+{
+	static private final int NumSegments = 16;
+
+	protected Segment<K, V>[] segments;
+
+	// statistics
+	public final AtomicLong hits = new AtomicLong();
+	public final AtomicLong misses = new AtomicLong();
+	public final AtomicLong evictions = new AtomicLong();
+
+	static class Segment<K, V> extends LinkedHashMap<K, V>
+	{
+		private static final long serialVersionUID = 1L;
+		int capacity;
+		AtomicLong evictions;
+
+		Segment(int capacity, AtomicLong evictions)
+		{
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+			this.evictions = evictions;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+		{
+			if(size() > capacity)
+			{
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * @param capacity the max number of entries
+	 */
+	@SuppressWarnings("unchecked")
+	public LruCache(int capacity)
+	{
+		segments = new Segment[NumSegments];
+		for(int i=0; i<NumSegments; i++)
+		{
+			segments[i] = new Segment<K, V>(Math.max(1, (capacity + NumSegments - 1) / NumSegments), evictions);
+		}
+	}
+
+	protected Segment<K, V> getSegment(Object key)
+	{
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return segments[(hash & 0x7fffffff) % NumSegments];
+	}
+
+	/**
+	 * the value of the key, or null if it's not in the cache
+	 * @param key
+	 * @return
+	 */
+	public V get(K key)
+	{
+		Segment<K, V> segment = getSegment(key);
+		V value;
+		synchronized(segment)
+		{
+			value = segment.get(key);
+		}
+		if(value == null)
+		{
+			misses.incrementAndGet();
+		}
+		else
+		{
+			hits.incrementAndGet();
+		}
+		return value;
+	}
+
+	public void put(K key, V value)
+	{
+		Segment<K, V> segment = getSegment(key);
+		synchronized(segment)
+		{
+			segment.put(key, value);
+		}
+	}
+
+	public int size()
+	{
+		int size = 0;
+		for(Segment<K, V> segment : segments)
+		{
+			synchronized(segment)
+			{
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	public void clear()
+	{
+		for(Segment<K, V> segment : segments)
+		{
+			synchronized(segment)
+			{
+				segment.clear();
+			}
+		}
+	}
+
+	public double getHitRate()
+	{
+		long total = hits.get() + misses.get();
+		return total == 0 ? 0 : (double) hits.get() / total;
+	}
+
+	public String toString()
+	{
+		return String.format("size=%d\thits=%d\tmisses=%d\tevictions=%d\thitRate=%.3f", size(), hits.get(), misses.get(),
+				evictions.get(), getHitRate());
+	}
+}
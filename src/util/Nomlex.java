@@ -15,11 +15,20 @@ public class Nomlex
 	
 	static Nomlex singleton = null;
 	
-	static public Nomlex getSingleTon()
+	static public synchronized Nomlex getSingleTon()
 	{
 		if(singleton == null)
 		{
-			singleton = new Nomlex();
+			LexicalBundle.Table table = LexicalBundle.getTable(LexicalBundle.NomlexTable);
+			if(table != null)
+			{
+				// read from the compiled bundle given by -DlexicalBundle
+				singleton = new Nomlex(table, LexicalBundle.getTable(LexicalBundle.NomlexVerbTable));
+			}
+			else
+			{
+				singleton = new Nomlex();
+			}
 		}
 		return singleton;
 	}
@@ -29,8 +38,17 @@ public class Nomlex
 		readDict();
 	}
 	
+	protected Nomlex(LexicalBundle.Table table, LexicalBundle.Table verbTable)
+	{
+		this.table = table;
+		this.verbTable = verbTable;
+	}
+	
 	// store the map from a word to its base form
 	protected Map<String, String> basemap = new HashMap<String, String>();
+	// the map and the set of verbs in the mapped bundle, or null if it's read from the text file
+	protected LexicalBundle.Table table;
+	protected LexicalBundle.Table verbTable;
 	
 	/**
 	 * check if contains this verb
@@ -39,6 +57,10 @@ public class Nomlex
 	 */
 	public boolean contains(String verb)
 	{
+		if(verbTable != null)
+		{
+			return verb != null && verbTable.contains(verb);
+		}
 		return basemap.values().contains(verb);
 	}
 	
@@ -46,6 +68,10 @@ public class Nomlex
 	// e.g. retirement --> retire
 	public String getBaseForm(String word)
 	{
+		if(table != null)
+		{
+			return word == null ? null : table.getString(word);
+		}
 		String base = basemap.get(word);
 		return base;
 	}
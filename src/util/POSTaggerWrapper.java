@@ -18,7 +18,7 @@ public class POSTaggerWrapper
 {
 	public static POSTaggerWrapper poswrapper;
 	
-	public static POSTaggerWrapper getTagger() throws InvalidFormatException, IOException
+	public static synchronized POSTaggerWrapper getTagger() throws InvalidFormatException, IOException
 	{
 		if(poswrapper == null)
 		{
@@ -27,14 +27,22 @@ public class POSTaggerWrapper
 		return poswrapper;
 	}
 	
-	POSTaggerME tagger;
+	// the model is shared, each thread has its own POSTaggerME
+	POSModel model;
+	EnginePool<POSTaggerME> taggers;
 	
 	POSTaggerWrapper(File model_File) throws InvalidFormatException, IOException
 	{
 		InputStream modelIn = new FileInputStream(model_File);
-		POSModel model = new POSModel(modelIn);
-		tagger = new POSTaggerME(model);
-		
+		model = new POSModel(modelIn);
+		modelIn.close();
+		taggers = new EnginePool<POSTaggerME>()
+		{
+			protected POSTaggerME newEngine()
+			{
+				return new POSTaggerME(model);
+			}
+		};
 	}
 	
 	/**
@@ -44,7 +52,7 @@ public class POSTaggerWrapper
 	 */
 	public String[] poSTag(String[] sent)
 	{
-		return tagger.tag(sent);
+		return taggers.get().tag(sent);
 	}
 	
 	public static void main(String[] args) throws InvalidFormatException, IOException
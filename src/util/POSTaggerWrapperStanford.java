@@ -25,14 +25,23 @@ public class POSTaggerWrapperStanford
 		taggerModelPath = "data" + File.separator + "left3words-wsj-0-18.tagger";
 	}
 		
+	// the tagger holds its model, so it's loaded once and shared by the threads,
+	// but it keeps state of the sentence being tagged, so tagSentence is serialized on it
 	private MaxentTagger tagger;
 	
-	private PTBEscapingProcessor<HasWord, ?, ?> escaper;
+	// each thread has its own escaper
+	private EnginePool<PTBEscapingProcessor<HasWord, ?, ?>> escapers = new EnginePool<PTBEscapingProcessor<HasWord, ?, ?>>()
+	{
+		protected PTBEscapingProcessor<HasWord, ?, ?> newEngine()
+		{
+			return new PTBEscapingProcessor();
+		}
+	};
 	
 	// singleton for tagger
 	static protected POSTaggerWrapperStanford taggerWrapper = null;
 
-	static public POSTaggerWrapperStanford getPosTagger() throws IOException
+	static public synchronized POSTaggerWrapperStanford getPosTagger() throws IOException
 	{
 		if(taggerWrapper == null)
 		{
@@ -68,7 +77,12 @@ public class POSTaggerWrapperStanford
 			tokens[i] = sentence.get(i).word();
 		}
 		
-		ArrayList<TaggedWord> tSentence = getTagger().tagSentence(sentence);
+		MaxentTagger tagger = getTagger();
+		ArrayList<TaggedWord> tSentence;
+		synchronized(tagger)
+		{
+			tSentence = tagger.tagSentence(sentence);
+		}
 		String[] postags = new String[tokens.length];
 		for(int i=0; i<tSentence.size(); i++)
 		{
@@ -84,19 +98,19 @@ public class POSTaggerWrapperStanford
 	 */
 	protected PTBEscapingProcessor<HasWord, ?, ?> getEscaper()
 	{
-		if(escaper == null)
-		{
-			escaper = new PTBEscapingProcessor();
-		}
-		return escaper;
+		return escapers.get();
 	}
 	
-	protected void setTagger(MaxentTagger tagger) 
+	protected synchronized void setTagger(MaxentTagger tagger) 
 	{
 		this.tagger = tagger;
 	}
 
-	protected MaxentTagger getTagger() 
+	/**
+	 * the shared tagger, it's loaded on first use
+	 * @return
+	 */
+	protected synchronized MaxentTagger getTagger() 
 	{
 		if(tagger == null)
 		{
@@ -5,6 +5,19 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import util.graph.DependencyGraph;
+import util.graph.GraphEdge;
 
 import opennlp.tools.util.InvalidFormatException;
 
@@ -12,11 +25,14 @@ import edu.stanford.nlp.ling.HasWord;
 import edu.stanford.nlp.ling.TaggedWord;
 import edu.stanford.nlp.ling.Word;
 import edu.stanford.nlp.parser.lexparser.LexicalizedParser;
+import edu.stanford.nlp.parser.lexparser.LexicalizedParserQuery;
 import edu.stanford.nlp.process.Morphology;
 import edu.stanford.nlp.trees.GrammaticalStructure;
 import edu.stanford.nlp.trees.GrammaticalStructureFactory;
+import edu.stanford.nlp.trees.LabeledScoredTreeFactory;
 import edu.stanford.nlp.trees.PennTreebankLanguagePack;
 import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeFactory;
 import edu.stanford.nlp.trees.TreebankLanguagePack;
 import edu.stanford.nlp.trees.TypedDependency;
 
@@ -28,9 +44,51 @@ import edu.stanford.nlp.trees.TypedDependency;
 public class ParserWrapper 
 {
 	static private ParserWrapper parser;
-	static private Morphology morphology = new edu.stanford.nlp.process.Morphology();
+	// Morphology keeps the state of its lexer, so each thread has its own
+	static private EnginePool<Morphology> morphologies = new EnginePool<Morphology>()
+	{
+		protected Morphology newEngine()
+		{
+			return new Morphology();
+		}
+	};
+	
+	// guard rails of the PCFG parser, whose cost is cubic in sentence length:
+	// both limits are off by default, so the parses don't change unless they are set
+	// -Dparser.maxLength=N sentences longer than N tokens are not parsed (0: no limit)
+	// -Dparser.timeout=MS time budget of a sentence in milliseconds (0: no limit)
+	// -Dparser.threads=N threads that run the parses with a time budget (default: number of processors)
+	// -Dparser.tagged=true parse with the given POS tags instead of tagging again
+	static public final int MaxLength = Integer.getInteger("parser.maxLength", 0);
+	static public final long Timeout = Long.getLong("parser.timeout", 0);
+	static public final int Threads = Integer.getInteger("parser.threads", Runtime.getRuntime().availableProcessors());
+	static public final boolean Tagged = Boolean.getBoolean("parser.tagged");
+	
+	// reasons of degradation, see ParseResult.degraded
+	static public final String TooLong = "tooLong";
+	static public final String TimedOut = "timeout";
+	static public final String Failed = "failed";
+	
+	// number of sentences that are parsed, and that fall back to the chunk/POS structure
+	static public final AtomicLong numParsed = new AtomicLong();
+	static public final AtomicLong numTooLong = new AtomicLong();
+	static public final AtomicLong numTimedOut = new AtomicLong();
+	static public final AtomicLong numFailed = new AtomicLong();
 	
-	static public ParserWrapper getParserWrapper()
+	// runs the parses that have a time budget (only if Timeout > 0, otherwise a sentence is parsed
+	// in the calling thread), with Threads threads; the time in the queue counts in the budget.
+	// A parse that is over budget is abandoned and interrupted, but the PCFG parser may not stop
+	// until it's done, and it keeps its thread until then: the pool gets a thread in its place,
+	// and gives it back when the abandoned parse is done, so the stuck parses don't stall the others
+	static private ThreadPoolExecutor executor;
+	
+	// states of a parse in the executor
+	static private final int Queued = 0;
+	static private final int Running = 1;
+	static private final int Done = 2;
+	static private final int Abandoned = 3;
+	
+	static public synchronized ParserWrapper getParserWrapper()
 	{
 		if(parser == null)
 		{
@@ -39,13 +97,22 @@ public class ParserWrapper
 		return parser;
 	}
 	
+	// the grammar is loaded once and shared, each thread has its own parser query (and charts)
 	protected LexicalizedParser lp;
+	protected EnginePool<LexicalizedParserQuery> parserQueries;
 	protected TreebankLanguagePack tlp;
 	protected GrammaticalStructureFactory gsf;
 	
 	ParserWrapper(File modelFile)
 	{
 		lp = LexicalizedParser.loadModel(modelFile.getAbsolutePath());
+		parserQueries = new EnginePool<LexicalizedParserQuery>()
+		{
+			protected LexicalizedParserQuery newEngine()
+			{
+				return lp.parserQuery();
+			}
+		};
 		tlp = new PennTreebankLanguagePack();
 	    gsf = tlp.grammaticalStructureFactory();
 	}
@@ -58,7 +125,23 @@ public class ParserWrapper
 	 */
 	public static String lemmanize(String token, String pos)
 	{
-		return morphology.lemma(token, pos);
+		return morphologies.get().lemma(token, pos);
+	}
+	
+	/**
+	 * parse a sentence with the parser query of the current thread
+	 * if the query fails, fall back to lp.apply(), which returns a flat tree
+	 * @param sentence
+	 * @return
+	 */
+	protected Tree parse(List<? extends HasWord> sentence)
+	{
+		LexicalizedParserQuery pq = parserQueries.get();
+		if(pq.parse(sentence))
+		{
+			return pq.getBestParse();
+		}
+		return lp.apply(sentence);
 	}
 	
 	public Tree getParseTree(String[] tokens)
@@ -70,7 +153,7 @@ public class ParserWrapper
 			Word word = new Word(tok);
 			sentence.add(word);
 		}
-		Tree parseTree = lp.apply(sentence);
+		Tree parseTree = parse(sentence);
 		return parseTree;
 	}
 	
@@ -90,7 +173,7 @@ public class ParserWrapper
 			TaggedWord word = new TaggedWord(tok, pos);
 			sentence.add(word);
 		}
-		Tree parseTree = lp.apply(sentence);
+		Tree parseTree = parse(sentence);
 		return parseTree;
 	}
 	
@@ -109,13 +192,25 @@ public class ParserWrapper
 	public static class ParseResult
 	{
 		public Tree tree;
+		// null if the result is a fallback
 		public Collection<TypedDependency> deps;
+		public DependencyGraph graph;
+		// null if parsed, otherwise the reason of the fallback (TooLong, TimedOut or Failed)
+		public String degraded;
 		
 		ParseResult(Tree tree, Collection<TypedDependency> deps)
 		{
 			this.tree = tree;
 			this.deps = deps;
 		}
+		
+		ParseResult(Tree tree, Collection<TypedDependency> deps, DependencyGraph graph, String degraded)
+		{
+			this.tree = tree;
+			this.deps = deps;
+			this.graph = graph;
+			this.degraded = degraded;
+		}
 	}
 	
 	/**
@@ -138,6 +233,316 @@ public class ParserWrapper
 		return getTypedDeps(tree);
 	}
 	
+	/**
+	 * parse a sentence within the guard rails (MaxLength, Timeout), and build its dependency graph.
+	 * if the sentence is too long, over budget, or the parser fails, the tree and the graph
+	 * are built from the chunks and POS tags instead (see getFallbackTree/getFallbackGraph)
+	 * @param tokens
+	 * @param postags POS tags of the tokens, used by the fallback, and by the parser if Tagged
+	 * @param chunks chunk tags of the tokens (e.g. B-NP I-NP O), can be null
+	 * @return
+	 */
+	public ParseResult getParseResult(final String[] tokens, final String[] postags, String[] chunks)
+	{
+		String degraded = null;
+		if(MaxLength > 0 && tokens.length > MaxLength)
+		{
+			numTooLong.incrementAndGet();
+			degraded = TooLong;
+		}
+		else
+		{
+			try
+			{
+				Tree tree;
+				if(Timeout > 0)
+				{
+					final AtomicInteger state = new AtomicInteger(Queued);
+					Future<Tree> future = getExecutor().submit(new Callable<Tree>()
+					{
+						public Tree call()
+						{
+							// abandoned before it started
+							if(!state.compareAndSet(Queued, Running))
+							{
+								return null;
+							}
+							try
+							{
+								return Tagged ? getParseTree(tokens, postags) : getParseTree(tokens);
+							}
+							finally
+							{
+								// the thread was replaced when the parse was abandoned, so it leaves the pool now
+								if(!state.compareAndSet(Running, Done))
+								{
+									resizeExecutor(-1);
+								}
+							}
+						}
+					});
+					try
+					{
+						tree = future.get(Timeout, TimeUnit.MILLISECONDS);
+					}
+					catch(TimeoutException e)
+					{
+						future.cancel(true);
+						abandon(state);
+						throw e;
+					}
+				}
+				else
+				{
+					tree = Tagged ? getParseTree(tokens, postags) : getParseTree(tokens);
+				}
+				Collection<TypedDependency> deps = getTypedDeps(tree);
+				numParsed.incrementAndGet();
+				return new ParseResult(tree, deps, new DependencyGraph(deps, tokens.length), null);
+			}
+			catch(TimeoutException e)
+			{
+				numTimedOut.incrementAndGet();
+				degraded = TimedOut;
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				numFailed.incrementAndGet();
+				degraded = Failed;
+			}
+			catch(ExecutionException e)
+			{
+				e.getCause().printStackTrace();
+				numFailed.incrementAndGet();
+				degraded = Failed;
+			}
+			catch(Exception e)
+			{
+				e.printStackTrace();
+				numFailed.incrementAndGet();
+				degraded = Failed;
+			}
+			catch(StackOverflowError e)
+			{
+				e.printStackTrace();
+				numFailed.incrementAndGet();
+				degraded = Failed;
+			}
+		}
+		return new ParseResult(getFallbackTree(tokens, postags, chunks), null, getFallbackGraph(tokens, postags, chunks), degraded);
+	}
+	
+	static private synchronized ThreadPoolExecutor getExecutor()
+	{
+		if(executor == null)
+		{
+			final AtomicInteger count = new AtomicInteger();
+			// the queue is unbounded, so the pool has corePoolSize threads, which is changed by resizeExecutor
+			executor = new ThreadPoolExecutor(Math.max(1, Threads), Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "parser-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+	
+	/**
+	 * add (or remove) threads of the executor, the threads that are removed leave when they are idle
+	 * @param delta
+	 */
+	static private synchronized void resizeExecutor(int delta)
+	{
+		executor.setCorePoolSize(executor.getCorePoolSize() + delta);
+	}
+	
+	/**
+	 * abandon a parse that is over budget: if it's running, its thread is replaced until it's done
+	 * @param state
+	 */
+	static private void abandon(AtomicInteger state)
+	{
+		while(true)
+		{
+			int current = state.get();
+			if(current == Running && state.compareAndSet(Running, Abandoned))
+			{
+				resizeExecutor(1);
+				return;
+			}
+			if(current == Done || (current == Queued && state.compareAndSet(Queued, Abandoned)))
+			{
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * number of threads that run parses, including the ones of abandoned parses that are not done yet
+	 * @return
+	 */
+	static public int getNumThreads()
+	{
+		ThreadPoolExecutor executor;
+		synchronized(ParserWrapper.class)
+		{
+			executor = ParserWrapper.executor;
+		}
+		return executor == null ? 0 : executor.getPoolSize();
+	}
+	
+	/**
+	 * the settings that change the result of getParseResult, e.g. as part of a cache key
+	 * @return
+	 */
+	static public String getSettings()
+	{
+		return "maxLength=" + MaxLength + ",timeout=" + Timeout + ",tagged=" + Tagged;
+	}
+	
+	/**
+	 * print the numbers of parsed and degraded sentences
+	 * @param out
+	 */
+	static public void printStatistics(java.io.PrintStream out)
+	{
+		out.println(String.format("parser	parsed=%d	tooLong=%d	timeout=%d	failed=%d	threads=%d", numParsed.get(), 
+				numTooLong.get(), numTimedOut.get(), numFailed.get(), getNumThreads()));
+	}
+	
+	/**
+	 * a flat tree from chunks and POS tags, e.g. (ROOT (S (NP (DT the) (NN man)) (VP (VBD left)) (. .)))
+	 * if there are no chunks, a right-branching tree (ROOT (S (DT the) (S (NN man) (S (VBD left) (. .)))))
+	 * @param tokens
+	 * @param postags
+	 * @param chunks can be null
+	 * @return
+	 */
+	static public Tree getFallbackTree(String[] tokens, String[] postags, String[] chunks)
+	{
+		TreeFactory tf = new LabeledScoredTreeFactory();
+		List<Tree> preterminals = new ArrayList<Tree>();
+		for(int i=0; i<tokens.length; i++)
+		{
+			List<Tree> leaf = new ArrayList<Tree>();
+			leaf.add(tf.newLeaf(tokens[i]));
+			preterminals.add(tf.newTreeNode(postags[i], leaf));
+		}
+		
+		List<Tree> children = new ArrayList<Tree>();
+		if(chunks == null)
+		{
+			// right-branching
+			Tree tree = null;
+			for(int i=tokens.length-1; i>=0; i--)
+			{
+				List<Tree> kids = new ArrayList<Tree>();
+				kids.add(preterminals.get(i));
+				if(tree != null)
+				{
+					kids.add(tree);
+				}
+				tree = tf.newTreeNode("S", kids);
+			}
+			if(tree != null)
+			{
+				children.add(tree);
+			}
+		}
+		else
+		{
+			List<Tree> phrase = null;
+			for(int i=0; i<tokens.length; i++)
+			{
+				if(chunks[i].startsWith("B-") || (chunks[i].startsWith("I-") && phrase == null))
+				{
+					phrase = new ArrayList<Tree>();
+					children.add(tf.newTreeNode(chunks[i].substring(2), phrase));
+				}
+				else if(!chunks[i].startsWith("I-"))
+				{
+					phrase = null;
+				}
+				
+				if(phrase != null)
+				{
+					phrase.add(preterminals.get(i));
+				}
+				else
+				{
+					children.add(preterminals.get(i));
+				}
+			}
+			List<Tree> s = new ArrayList<Tree>();
+			s.add(tf.newTreeNode("S", children));
+			children = s;
+		}
+		return tf.newTreeNode("ROOT", children);
+	}
+	
+	/**
+	 * a dependency graph from chunks and POS tags: the head of a chunk is its last token, 
+	 * the other tokens of the chunk depend on it. The head of the first verb chunk (or the
+	 * last chunk) is the root, and the other heads depend on the root. The relation is "dep".
+	 * if there are no chunks, each token is a chunk
+	 * @param tokens
+	 * @param postags
+	 * @param chunks can be null
+	 * @return
+	 */
+	static public DependencyGraph getFallbackGraph(String[] tokens, String[] postags, String[] chunks)
+	{
+		// heads.get(k) is the head of the k-th chunk, and head[i] is the head of token i
+		List<Integer> heads = new ArrayList<Integer>();
+		int[] head = new int[tokens.length];
+		int root = -1;
+		for(int i=0; i<tokens.length; i++)
+		{
+			int end = i;
+			if(chunks != null && !chunks[i].equals("O"))
+			{
+				while(end + 1 < tokens.length && chunks[end + 1].startsWith("I-"))
+				{
+					end++;
+				}
+			}
+			for(int j=i; j<=end; j++)
+			{
+				head[j] = end;
+			}
+			heads.add(end);
+			if(root < 0 && ((chunks != null && chunks[i].endsWith("VP")) || (chunks == null && postags[i].startsWith("V"))))
+			{
+				root = end;
+			}
+			i = end;
+		}
+		if(root < 0)
+		{
+			root = tokens.length - 1;
+		}
+		
+		List<GraphEdge> edges = new ArrayList<GraphEdge>();
+		for(int i=0; i<tokens.length; i++)
+		{
+			if(head[i] != i)
+			{
+				edges.add(new GraphEdge(head[i], i, "dep"));
+			}
+			else if(i != root)
+			{
+				edges.add(new GraphEdge(root, i, "dep"));
+			}
+		}
+		return new DependencyGraph(edges, root, tokens.length);
+	}
+	
 	/**
 	 * get the collection of typedDependencies from a parse tree
 	 * @param parseTree
@@ -158,7 +563,7 @@ public class ParserWrapper
 	
 	static public void main(String[] args) throws InvalidFormatException, IOException
 	{
-		String word = morphology.lemma("men", "NNS");
+		String word = lemmanize("men", "NNS");
 		System.out.println(word);
 	}
 }
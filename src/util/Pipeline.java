@@ -0,0 +1,262 @@
+package util;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * a pipeline of stages connected by bounded queues, e.g. read --> parse --> features --> decode --> write
+ * each stage has its own number of worker threads. A stage blocks when its output queue is full,
+ * so the number of items in memory is bounded by the queue capacity and the number of workers
+ *
+ * items are processed in the order they are taken from the queues, so with more than one worker
+ * in a stage the order is not kept. An exception on an item stops the pipeline: the items that are
+ * not processed yet are dropped, and run() throws it. With setSkipErrors(true) only the item is
+ * reported and dropped, the other items go on, and the number of skipped items is in printStatistics
+ *
+ * @param <T> the type of items, which is usually a mutable task that each stage fills in
+ */
+public class Pipeline<T>
+{
+	// end of stream marker
+	static private final Object End = new Object();
+
+	/**
+	 * a stage of the pipeline
+	 * @param <T>
+	 */
+	public static abstract class Stage<T>
+	{
+		public final String name;
+		public final int parallelism;
+
+		// statistics
+		public final AtomicLong processed = new AtomicLong();
+		public final AtomicLong failed = new AtomicLong();
+		public final AtomicLong nanos = new AtomicLong();
+
+		public Stage(String name, int parallelism)
+		{
+			this.name = name;
+			this.parallelism = Math.max(1, parallelism);
+		}
+
+		/**
+		 * process an item, it's called by the workers of this stage concurrently
+		 * @param item
+		 * @return false to drop the item
+		 * @throws Exception
+		 */
+		protected abstract boolean process(T item) throws Exception;
+	}
+
+	protected List<Stage<T>> stages = new ArrayList<Stage<T>>();
+	protected int capacity;
+	protected boolean skipErrors = false;
+	// number of items that are dropped because of an exception, if errors are skipped
+	protected AtomicLong skipped = new AtomicLong();
+	// the first exception, which stops the pipeline if errors are not skipped
+	protected AtomicReference<ExecutionException> error = new AtomicReference<ExecutionException>();
+
+	/**
+	 * @param capacity the capacity of each queue between two stages
+	 */
+	public Pipeline(int capacity)
+	{
+		this.capacity = Math.max(1, capacity);
+	}
+
+	public Pipeline<T> add(Stage<T> stage)
+	{
+		stages.add(stage);
+		return this;
+	}
+
+	/**
+	 * @param skipErrors true to drop an item that fails and go on with the others
+	 */
+	public void setSkipErrors(boolean skipErrors)
+	{
+		this.skipErrors = skipErrors;
+	}
+
+	/**
+	 * the parallelism of a stage given by -Dpipeline.name=N
+	 * @param name
+	 * @param defaultValue
+	 * @return
+	 */
+	static public int getParallelism(String name, int defaultValue)
+	{
+		String value = System.getProperty("pipeline." + name);
+		if(value != null)
+		{
+			try
+			{
+				return Math.max(1, Integer.parseInt(value.trim()));
+			}
+			catch(NumberFormatException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * feed the items from the source to the first stage (in the calling thread),
+	 * and wait until all of them have passed through the last stage
+	 * @param source
+	 * @throws InterruptedException
+	 * @throws ExecutionException the first exception on an item, unless errors are skipped
+	 */
+	public void run(Iterator<T> source) throws InterruptedException, ExecutionException
+	{
+		// queues.get(i) is the input of stage i, the output of the last stage is discarded
+		List<BlockingQueue<Object>> queues = new ArrayList<BlockingQueue<Object>>();
+		for(int i=0; i<stages.size(); i++)
+		{
+			queues.add(new ArrayBlockingQueue<Object>(capacity));
+		}
+
+		List<Thread> workers = new ArrayList<Thread>();
+		for(int i=0; i<stages.size(); i++)
+		{
+			Stage<T> stage = stages.get(i);
+			BlockingQueue<Object> in = queues.get(i);
+			BlockingQueue<Object> out = i + 1 < stages.size() ? queues.get(i + 1) : null;
+			AtomicInteger running = new AtomicInteger(stage.parallelism);
+			for(int j=0; j<stage.parallelism; j++)
+			{
+				Thread worker = new Thread(new Worker(stage, in, out, running), stage.name + "-" + j);
+				worker.setDaemon(true);
+				worker.start();
+				workers.add(worker);
+			}
+		}
+
+		if(stages.size() > 0)
+		{
+			BlockingQueue<Object> first = queues.get(0);
+			while(error.get() == null && source.hasNext())
+			{
+				first.put(source.next());
+			}
+			first.put(End);
+		}
+
+		for(Thread worker : workers)
+		{
+			worker.join();
+		}
+		if(error.get() != null)
+		{
+			throw error.get();
+		}
+	}
+
+	/**
+	 * a worker thread of a stage
+	 */
+	class Worker implements Runnable
+	{
+		Stage<T> stage;
+		BlockingQueue<Object> in;
+		BlockingQueue<Object> out;
+		// number of workers of the stage that haven't seen the end
+		AtomicInteger running;
+
+		Worker(Stage<T> stage, BlockingQueue<Object> in, BlockingQueue<Object> out, AtomicInteger running)
+		{
+			this.stage = stage;
+			this.in = in;
+			this.out = out;
+			this.running = running;
+		}
+
+		public void run()
+		{
+			try
+			{
+				while(true)
+				{
+					Object item = in.take();
+					if(item == End)
+					{
+						// let the other workers of this stage see the end, and the last one passes it on
+						in.put(End);
+						if(running.decrementAndGet() == 0 && out != null)
+						{
+							out.put(End);
+						}
+						return;
+					}
+					if(processItem((T) item) && out != null)
+					{
+						out.put(item);
+					}
+				}
+			}
+			catch(InterruptedException e)
+			{
+				e.printStackTrace();
+			}
+		}
+
+		boolean processItem(T item)
+		{
+			// the pipeline is stopped, drop the rest
+			if(error.get() != null)
+			{
+				return false;
+			}
+			long start = System.nanoTime();
+			try
+			{
+				boolean ret = stage.process(item);
+				stage.processed.incrementAndGet();
+				return ret;
+			}
+			catch(Throwable e)
+			{
+				stage.failed.incrementAndGet();
+				if(skipErrors)
+				{
+					System.err.println("[" + stage.name + "] failed on " + item + ", skipped");
+					e.printStackTrace();
+					skipped.incrementAndGet();
+				}
+				else
+				{
+					error.compareAndSet(null, new ExecutionException("[" + stage.name + "] failed on " + item, e));
+				}
+				return false;
+			}
+			finally
+			{
+				stage.nanos.addAndGet(System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * print number of items and the busy time of each stage, and the number of skipped items
+	 * @param out
+	 */
+	public void printStatistics(PrintStream out)
+	{
+		for(Stage<T> stage : stages)
+		{
+			out.println(String.format("%s\tthreads=%d\tprocessed=%d\tfailed=%d\tbusy=%.1fs", stage.name, stage.parallelism,
+					stage.processed.get(), stage.failed.get(), stage.nanos.get() / 1e9));
+		}
+		out.println("skipped=" + skipped.get());
+	}
+}
@@ -0,0 +1,376 @@
+package util;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * the registry of the resources (models, lexicons, dictionaries) that are loaded by static
+ * initializers and singletons, so that they can be loaded at startup in parallel, instead of
+ * one after another on the path of the first document
+ *
+ * a resource is loaded once, either by warmUp() in its own thread, or on demand by get() in the calling
+ * thread, whichever comes first. A resource loads its dependencies first, and its own load is measured
+ * after that, so the load time and the allocated bytes of a resource don't include the dependencies
+ *
+ * -Dresources=parallel (default): warmUp() loads all the resources in parallel, and returns immediately
+ * -Dresources=serial: warmUp() loads them one by one and waits, and measures the retained heap of each
+ * -Dresources=lazy: warmUp() does nothing, the resources are loaded on first use as before
+ */
+public class ResourceRegistry
+{
+	static public final String ModeProperty = "resources";
+
+	/**
+	 * a resource that is loaded once
+	 */
+	static public abstract class Resource
+	{
+		public final String name;
+		public final List<String> dependencies;
+
+		// statistics, they are set when the resource is loaded
+		public volatile String thread;
+		public volatile long millis = -1;
+		// bytes allocated by the thread that loaded it, -1 if not supported by the JVM
+		public volatile long allocated = -1;
+		// heap that is still used after a gc, only measured in serial mode
+		public volatile long retained = -1;
+		public volatile Throwable error;
+
+		public Resource(String name, String... dependencies)
+		{
+			this.name = name;
+			this.dependencies = Arrays.asList(dependencies);
+		}
+
+		/**
+		 * load the resource, e.g. by getting the singleton
+		 * @return
+		 * @throws Exception
+		 */
+		protected abstract Object load() throws Exception;
+	}
+
+	/**
+	 * a resource that is loaded by the static initializer of a class
+	 */
+	static public class ClassResource extends Resource
+	{
+		protected String className;
+
+		public ClassResource(String name, String className, String... dependencies)
+		{
+			super(name, dependencies);
+			this.className = className;
+		}
+
+		protected Object load() throws Exception
+		{
+			return Class.forName(className, true, ResourceRegistry.class.getClassLoader());
+		}
+	}
+
+	static private ResourceRegistry singleton;
+
+	static public synchronized ResourceRegistry getSingleton()
+	{
+		if(singleton == null)
+		{
+			singleton = new ResourceRegistry();
+			singleton.registerDefaults();
+		}
+		return singleton;
+	}
+
+	protected Map<String, Resource> resources = new LinkedHashMap<String, Resource>();
+	protected Map<String, FutureTask<Object>> tasks = new LinkedHashMap<String, FutureTask<Object>>();
+	protected volatile boolean serial;
+
+	/**
+	 * the resources that are used to preprocess a document and generate the features
+	 */
+	protected void registerDefaults()
+	{
+		register(new Resource("triggerLexicon")
+		{
+			protected Object load()
+			{
+				return TriggerLexicon.getSingleton();
+			}
+		});
+		register(new ClassResource("typeConstraints", "util.TypeConstraints"));
+		register(new ClassResource("document", "commons.Document", "triggerLexicon"));
+		register(new ClassResource("nodeFeatures", "event.perceptron.featureGenerator.NodeFeatureGenerator", "triggerLexicon"));
+		register(new Resource("sentDetector")
+		{
+			protected Object load() throws Exception
+			{
+				return SentDetectorWrapper.getSentDetector();
+			}
+		});
+		register(new Resource("tokenizer")
+		{
+			protected Object load() throws Exception
+			{
+				return TokenizerWrapper.getTokenizer();
+			}
+		});
+		register(new Resource("posTagger")
+		{
+			protected Object load() throws Exception
+			{
+				return POSTaggerWrapper.getTagger();
+			}
+		});
+		register(new Resource("chunker")
+		{
+			protected Object load() throws Exception
+			{
+				return ChunkWrapper.getChunker();
+			}
+		});
+		register(new Resource("parser")
+		{
+			protected Object load()
+			{
+				return ParserWrapper.getParserWrapper();
+			}
+		});
+		register(new Resource("wordNet")
+		{
+			protected Object load() throws Exception
+			{
+				return WordNetWrapper.getSingleTon();
+			}
+		});
+		register(new Resource("nomlex")
+		{
+			protected Object load()
+			{
+				return Nomlex.getSingleTon();
+			}
+		});
+		register(new Resource("brownClusters")
+		{
+			protected Object load()
+			{
+				return BrownClusterOriginal.getSingleton();
+			}
+		});
+		register(new Resource("frameNet")
+		{
+			protected Object load()
+			{
+				return FrameNet.getSingleton();
+			}
+		});
+	}
+
+	/**
+	 * declare a resource, a resource with the same name is replaced if it isn't loaded yet
+	 * @param resource
+	 */
+	public synchronized void register(final Resource resource)
+	{
+		Resource old = resources.get(resource.name);
+		if(old != null && old.thread != null)
+		{
+			return;
+		}
+		resources.put(resource.name, resource);
+		tasks.put(resource.name, new FutureTask<Object>(new Callable<Object>()
+		{
+			public Object call() throws Exception
+			{
+				return doLoad(resource);
+			}
+		}));
+	}
+
+	protected Object doLoad(Resource resource) throws Exception
+	{
+		for(String dependency : resource.dependencies)
+		{
+			get(dependency);
+		}
+
+		resource.thread = Thread.currentThread().getName();
+		ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+		long allocatedBefore = getAllocatedBytes(mxBean);
+		long usedBefore = serial ? getUsedHeap() : 0;
+		long start = System.nanoTime();
+		try
+		{
+			return resource.load();
+		}
+		catch(Exception e)
+		{
+			resource.error = e;
+			throw e;
+		}
+		catch(Error e)
+		{
+			resource.error = e;
+			throw e;
+		}
+		finally
+		{
+			resource.millis = (System.nanoTime() - start) / 1000000;
+			long allocatedAfter = getAllocatedBytes(mxBean);
+			if(allocatedBefore >= 0 && allocatedAfter >= 0)
+			{
+				resource.allocated = allocatedAfter - allocatedBefore;
+			}
+			if(serial)
+			{
+				resource.retained = getUsedHeap() - usedBefore;
+			}
+		}
+	}
+
+	static private long getAllocatedBytes(ThreadMXBean mxBean)
+	{
+		if(mxBean instanceof com.sun.management.ThreadMXBean)
+		{
+			return ((com.sun.management.ThreadMXBean) mxBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	static private long getUsedHeap()
+	{
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * get a resource, it's loaded in the calling thread if no other thread is loading it,
+	 * otherwise wait for that thread
+	 * @param name
+	 * @return null if the resource failed to load
+	 */
+	public Object get(String name)
+	{
+		FutureTask<Object> task;
+		synchronized(this)
+		{
+			task = tasks.get(name);
+		}
+		if(task == null)
+		{
+			throw new IllegalArgumentException("unknown resource " + name);
+		}
+		// it does nothing if the task is running or done
+		task.run();
+		try
+		{
+			return task.get();
+		}
+		catch(InterruptedException e)
+		{
+			e.printStackTrace();
+		}
+		catch(ExecutionException e)
+		{
+			System.err.println("failed to load resource " + name);
+			e.getCause().printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * load all resources according to -Dresources=parallel|serial|lazy
+	 */
+	public void warmUp()
+	{
+		String mode = System.getProperty(ModeProperty, "parallel");
+		if(mode.equals("lazy"))
+		{
+			return;
+		}
+		List<String> names;
+		synchronized(this)
+		{
+			names = new ArrayList<String>(tasks.keySet());
+		}
+		if(mode.equals("serial"))
+		{
+			serial = true;
+			for(String name : names)
+			{
+				get(name);
+			}
+			return;
+		}
+		// one daemon thread per resource, as most of the time is spent in reading files
+		for(final String name : names)
+		{
+			Thread thread = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					get(name);
+				}
+			}, "resource-" + name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * wait until all resources are loaded
+	 */
+	public void awaitAll()
+	{
+		List<String> names;
+		synchronized(this)
+		{
+			names = new ArrayList<String>(tasks.keySet());
+		}
+		for(String name : names)
+		{
+			get(name);
+		}
+	}
+
+	/**
+	 * print the load time, the thread and the heap cost of each resource that is loaded
+	 * @param out
+	 */
+	public synchronized void printStatistics(PrintStream out)
+	{
+		for(Resource resource : resources.values())
+		{
+			if(resource.thread == null)
+			{
+				out.println(resource.name + "\tnot loaded");
+				continue;
+			}
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("%s\t%s\ttime=%dms", resource.name, resource.thread, resource.millis));
+			if(resource.allocated >= 0)
+			{
+				sb.append(String.format("\tallocated=%.1fMB", resource.allocated / 1048576.0));
+			}
+			if(resource.retained >= 0)
+			{
+				sb.append(String.format("\tretained=%.1fMB", resource.retained / 1048576.0));
+			}
+			if(resource.error != null)
+			{
+				sb.append("\tfailed: " + resource.error);
+			}
+			out.println(sb);
+		}
+	}
+}
@@ -19,7 +19,7 @@ public class SentDetectorWrapper
 {
 	public static SentDetectorWrapper sentDetectorWrapper;
 
-	public static SentDetectorWrapper getSentDetector()
+	public static synchronized SentDetectorWrapper getSentDetector()
 			throws InvalidFormatException, IOException
 	{
 		if (sentDetectorWrapper == null)
@@ -30,7 +30,9 @@ public class SentDetectorWrapper
 		return sentDetectorWrapper;
 	}
 
-	SentenceDetectorME sentDetector;
+	// the model is shared, each thread has its own SentenceDetectorME
+	SentenceModel model;
+	EnginePool<SentenceDetectorME> sentDetectors;
 
 	static List<String> abbreviations = new ArrayList<String>();
 	static List<String> monocaseAbbreviations = new ArrayList<String>();
@@ -89,9 +91,15 @@ public class SentDetectorWrapper
 			IOException
 	{
 		InputStream modelIn = new FileInputStream(model_File);
-		SentenceModel model = new SentenceModel(modelIn);
+		model = new SentenceModel(modelIn);
 		modelIn.close();
-		sentDetector = new SentenceDetectorME(model);
+		sentDetectors = new EnginePool<SentenceDetectorME>()
+		{
+			protected SentenceDetectorME newEngine()
+			{
+				return new SentenceDetectorME(model);
+			}
+		};
 	}
 
 	/**
@@ -99,7 +107,7 @@ public class SentDetectorWrapper
 	 */
 	public String[] detect(String text)
 	{
-		return sentDetector.sentDetect(text);
+		return sentDetectors.get().sentDetect(text);
 	}
 
 	public util.Span[] detectPosMonocase(String text)
@@ -159,7 +167,7 @@ public class SentDetectorWrapper
 	private void segBuffer(ArrayList<util.Span> ret, String buffer,
 			int offset)
 	{
-		Span[] spanBuffer = sentDetector.sentPosDetect(buffer);
+		Span[] spanBuffer = sentDetectors.get().sentPosDetect(buffer);
 		for (int i = 0; i < spanBuffer.length; i++)
 		{
 			Span span = spanBuffer[i];
@@ -165,4 +165,35 @@ public class Span implements Comparable
 	{
 		return text.substring(start, end + 1);
 	}
+
+	/**
+	 * the indices of the spans that overlap with span, found by binary search
+	 * @param spans in the order of the text and not overlapped, e.g. the token spans of a sentence
+	 * @param span
+	 * @return {from, to}: spans[from] ... spans[to-1] overlap with span, from == to if none
+	 */
+	public static int[] getOverlapRange(Span[] spans, Span span)
+	{
+		// the first span that ends at or after the start of span
+		int low = 0;
+		int high = spans.length;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (spans[mid].end < span.start)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		int to = low;
+		while (to < spans.length && spans[to].start <= span.end)
+		{
+			to++;
+		}
+		return new int[] { low, to };
+	}
 }
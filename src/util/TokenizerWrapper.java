@@ -19,7 +19,7 @@ public class TokenizerWrapper
 {
 	public static TokenizerWrapper tokenizerWrapper;
 	
-	public static TokenizerWrapper getTokenizer() throws InvalidFormatException, IOException
+	public static synchronized TokenizerWrapper getTokenizer() throws InvalidFormatException, IOException
 	{
 		if(tokenizerWrapper == null)
 		{
@@ -28,14 +28,22 @@ public class TokenizerWrapper
 		return tokenizerWrapper;
 	}
 	
-	TokenizerME tokenizer;
+	// the model is shared, each thread has its own TokenizerME
+	TokenizerModel model;
+	EnginePool<TokenizerME> tokenizers;
 	
 	TokenizerWrapper(File model_File) throws InvalidFormatException, IOException
 	{
 		InputStream modelIn = new FileInputStream(model_File);
-		TokenizerModel model = new TokenizerModel(modelIn);
+		model = new TokenizerModel(modelIn);
 		modelIn.close();	
-		tokenizer = new TokenizerME(model);
+		tokenizers = new EnginePool<TokenizerME>()
+		{
+			protected TokenizerME newEngine()
+			{
+				return new TokenizerME(model);
+			}
+		};
 	}
 	
 	/**
@@ -45,7 +53,7 @@ public class TokenizerWrapper
 	 */
 	public String[] tokenize(String text)
 	{
-		return tokenizer.tokenize(text);
+		return tokenizers.get().tokenize(text);
 	}
 	
 	/**
@@ -55,7 +63,7 @@ public class TokenizerWrapper
 	 */
 	public util.Span[] tokenizeSpan(String text)
 	{
-		Span[] spans = tokenizer.tokenizePos(text);
+		Span[] spans = tokenizers.get().tokenizePos(text);
 		util.Span[] ret = new util.Span[spans.length];
 		int i=0;
 		for(Span span : spans)
@@ -0,0 +1,373 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * inverted index of the trigger lexicon (data/triggerTokens)
+ * lemma --> (event subtype, confidence), loaded once and shared by Document and the feature generators
+ * event subtypes and their coarse types are numbered in file order, so that
+ * threshold queries can be answered by BitSets instead of scanning token lists
+ */
+public class TriggerLexicon
+{
+	// confidence thresholds used by the feature generators
+	public static final double THRESHOLD_ALL = 0.15;
+	public static final double THRESHOLD_HIGH_QUALITY = 0.50;
+	public static final double THRESHOLD_NODE_FEATURE = 0.80;
+
+	static private TriggerLexicon lexicon = null;
+
+	static public synchronized TriggerLexicon getSingleton()
+	{
+		if(lexicon == null)
+		{
+			LexicalBundle.Table table = LexicalBundle.getTable(LexicalBundle.TriggerTable);
+			if(table != null)
+			{
+				// the lines of the file from the compiled bundle given by -DlexicalBundle
+				lexicon = new TriggerLexicon(table);
+			}
+			else
+			{
+				lexicon = new TriggerLexicon(new File("data/triggerTokens"));
+			}
+		}
+		return lexicon;
+	}
+
+	/**
+	 * postings of a lemma, sorted by confidence in descending order
+	 */
+	static class Entry
+	{
+		int[] subTypes = new int[0];
+		double[] confidences = new double[0];
+
+		/**
+		 * keep the max confidence for each subtype, and keep postings sorted
+		 * @param subType
+		 * @param confidence
+		 */
+		void add(int subType, double confidence)
+		{
+			for(int i=0; i<subTypes.length; i++)
+			{
+				if(subTypes[i] == subType)
+				{
+					if(confidences[i] >= confidence)
+					{
+						return;
+					}
+					remove(i);
+					break;
+				}
+			}
+			int pos = 0;
+			while(pos < confidences.length && confidences[pos] >= confidence)
+			{
+				pos++;
+			}
+			int[] newSubTypes = new int[subTypes.length + 1];
+			double[] newConfidences = new double[confidences.length + 1];
+			System.arraycopy(subTypes, 0, newSubTypes, 0, pos);
+			System.arraycopy(confidences, 0, newConfidences, 0, pos);
+			newSubTypes[pos] = subType;
+			newConfidences[pos] = confidence;
+			System.arraycopy(subTypes, pos, newSubTypes, pos + 1, subTypes.length - pos);
+			System.arraycopy(confidences, pos, newConfidences, pos + 1, confidences.length - pos);
+			subTypes = newSubTypes;
+			confidences = newConfidences;
+		}
+
+		private void remove(int i)
+		{
+			int[] newSubTypes = new int[subTypes.length - 1];
+			double[] newConfidences = new double[confidences.length - 1];
+			System.arraycopy(subTypes, 0, newSubTypes, 0, i);
+			System.arraycopy(confidences, 0, newConfidences, 0, i);
+			System.arraycopy(subTypes, i + 1, newSubTypes, i, subTypes.length - i - 1);
+			System.arraycopy(confidences, i + 1, newConfidences, i, confidences.length - i - 1);
+			subTypes = newSubTypes;
+			confidences = newConfidences;
+		}
+	}
+
+	// lemma --> postings
+	Map<String, Entry> index = new HashMap<String, Entry>();
+
+	// subtype alphabet, and the id of the coarse type of each subtype (-1 if unknown)
+	List<String> subTypeNames = new ArrayList<String>();
+	Map<String, Integer> subTypeIds = new HashMap<String, Integer>();
+	List<Integer> subTypeToType = new ArrayList<Integer>();
+
+	// coarse type alphabet, and the subtypes of each coarse type
+	List<String> typeNames = new ArrayList<String>();
+	Map<String, Integer> typeIds = new HashMap<String, Integer>();
+	List<BitSet> subTypesOfType = new ArrayList<BitSet>();
+
+	// lemmas of each subtype in file order, used to rebuild the legacy maps
+	List<List<String>> lemmasOfSubType = new ArrayList<List<String>>();
+	List<List<Double>> confidencesOfSubType = new ArrayList<List<Double>>();
+
+	public TriggerLexicon(File lexiconFile)
+	{
+		System.out.print("loading trigger lexicon...");
+		try
+		{
+			BufferedReader reader = new BufferedReader(new FileReader(lexiconFile));
+			String line = null;
+			while((line = reader.readLine()) != null)
+			{
+				addLine(line);
+			}
+			reader.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		System.out.println("done");
+	}
+
+	/**
+	 * the lines of the lexicon file from the compiled bundle, in file order
+	 * @param table
+	 */
+	public TriggerLexicon(LexicalBundle.Table table)
+	{
+		for(int i=0; i<table.size(); i++)
+		{
+			addLine(table.getValue(i));
+		}
+	}
+
+	/**
+	 * add a line of the lexicon: event subtype, trigger token, confidence
+	 * @param line
+	 */
+	private void addLine(String line)
+	{
+		if(line.length() == 0)
+		{
+			return;
+		}
+		String[] fields = line.split("\\t");
+		String eventSubType = fields[0];
+		String triggerToken = fields[1];
+		double confidence = Double.parseDouble(fields[2]);
+		if(confidence < THRESHOLD_ALL)
+		{
+			return;
+		}
+		int subType = lookupSubType(eventSubType);
+
+		Entry entry = index.get(triggerToken);
+		if(entry == null)
+		{
+			entry = new Entry();
+			index.put(triggerToken, entry);
+		}
+		entry.add(subType, confidence);
+
+		lemmasOfSubType.get(subType).add(triggerToken);
+		confidencesOfSubType.get(subType).add(confidence);
+	}
+
+	private int lookupSubType(String eventSubType)
+	{
+		Integer id = subTypeIds.get(eventSubType);
+		if(id == null)
+		{
+			id = subTypeNames.size();
+			subTypeNames.add(eventSubType);
+			subTypeIds.put(eventSubType, id);
+			lemmasOfSubType.add(new ArrayList<String>());
+			confidencesOfSubType.add(new ArrayList<Double>());
+
+			int typeId = -1;
+			String eventType = TypeConstraints.eventTypeMapModified.get(eventSubType);
+			if(eventType != null)
+			{
+				Integer type = typeIds.get(eventType);
+				if(type == null)
+				{
+					type = typeNames.size();
+					typeNames.add(eventType);
+					typeIds.put(eventType, type);
+					subTypesOfType.add(new BitSet());
+				}
+				typeId = type;
+				subTypesOfType.get(typeId).set(id);
+			}
+			subTypeToType.add(typeId);
+		}
+		return id;
+	}
+
+	/**
+	 * the ids of subtypes whose confidence for this lemma is >= threshold
+	 * @param lemma
+	 * @param threshold
+	 * @return
+	 */
+	public BitSet getSubTypeIds(String lemma, double threshold)
+	{
+		BitSet ret = new BitSet(subTypeNames.size());
+		Entry entry = index.get(lemma);
+		if(entry != null)
+		{
+			for(int i=0; i<entry.subTypes.length && entry.confidences[i] >= threshold; i++)
+			{
+				ret.set(entry.subTypes[i]);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * the ids of coarse event types whose confidence for this lemma is >= threshold
+	 * @param lemma
+	 * @param threshold
+	 * @return
+	 */
+	public BitSet getTypeIds(String lemma, double threshold)
+	{
+		BitSet ret = new BitSet(typeNames.size());
+		Entry entry = index.get(lemma);
+		if(entry != null)
+		{
+			for(int i=0; i<entry.subTypes.length && entry.confidences[i] >= threshold; i++)
+			{
+				int type = subTypeToType.get(entry.subTypes[i]);
+				if(type >= 0)
+				{
+					ret.set(type);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * names of subtypes whose confidence for this lemma is >= threshold, in subtype id order
+	 * @param lemma
+	 * @param threshold
+	 * @return
+	 */
+	public List<String> getSubTypes(String lemma, double threshold)
+	{
+		List<String> ret = new ArrayList<String>();
+		BitSet ids = getSubTypeIds(lemma, threshold);
+		for(int i = ids.nextSetBit(0); i >= 0; i = ids.nextSetBit(i + 1))
+		{
+			ret.add(subTypeNames.get(i));
+		}
+		return ret;
+	}
+
+	public boolean contains(String lemma)
+	{
+		return index.containsKey(lemma);
+	}
+
+	public String getSubTypeName(int id)
+	{
+		return subTypeNames.get(id);
+	}
+
+	public int getTypeIdOfSubType(int subTypeId)
+	{
+		return subTypeToType.get(subTypeId);
+	}
+
+	public String getTypeName(int id)
+	{
+		return typeNames.get(id);
+	}
+
+	/**
+	 * the ids of the subtypes of a coarse type, don't modify it
+	 * @param typeId
+	 * @return
+	 */
+	public BitSet getSubTypeIdsOfType(int typeId)
+	{
+		return subTypesOfType.get(typeId);
+	}
+
+	public int numSubTypes()
+	{
+		return subTypeNames.size();
+	}
+
+	public int numTypes()
+	{
+		return typeNames.size();
+	}
+
+	/**
+	 * event subtype --> trigger tokens with confidence >= threshold
+	 * (the format of the old maps in Document/NodeFeatureGenerator)
+	 * @param threshold
+	 * @return
+	 */
+	public Map<String, List<String>> getTriggersBySubType(double threshold)
+	{
+		Map<String, List<String>> ret = new LinkedHashMap<String, List<String>>();
+		for(int id=0; id<subTypeNames.size(); id++)
+		{
+			addTriggers(ret, subTypeNames.get(id), id, threshold);
+		}
+		return ret;
+	}
+
+	/**
+	 * event type --> trigger tokens with confidence >= threshold
+	 * @param threshold
+	 * @return
+	 */
+	public Map<String, List<String>> getTriggersByType(double threshold)
+	{
+		Map<String, List<String>> ret = new LinkedHashMap<String, List<String>>();
+		for(int id=0; id<subTypeNames.size(); id++)
+		{
+			int type = subTypeToType.get(id);
+			if(type >= 0)
+			{
+				addTriggers(ret, typeNames.get(type), id, threshold);
+			}
+		}
+		return ret;
+	}
+
+	private void addTriggers(Map<String, List<String>> map, String key, int subType, double threshold)
+	{
+		List<String> lemmas = lemmasOfSubType.get(subType);
+		List<Double> confidences = confidencesOfSubType.get(subType);
+		for(int i=0; i<lemmas.size(); i++)
+		{
+			if(confidences.get(i) >= threshold)
+			{
+				List<String> triggers = map.get(key);
+				if(triggers == null)
+				{
+					triggers = new ArrayList<String>();
+					map.put(key, triggers);
+				}
+				if(!triggers.contains(lemmas.get(i)))
+				{
+					triggers.add(lemmas.get(i));
+				}
+			}
+		}
+	}
+}
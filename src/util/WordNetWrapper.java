@@ -1,12 +1,17 @@
 package util;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import edu.mit.jwi.Dictionary;
 import edu.mit.jwi.IDictionary;
+import edu.mit.jwi.RAMDictionary;
+import edu.mit.jwi.data.ILoadPolicy;
 import edu.mit.jwi.item.IIndexWord;
 import edu.mit.jwi.item.ISynset;
 import edu.mit.jwi.item.ISynsetID;
@@ -19,14 +24,43 @@ import edu.mit.jwi.item.Pointer;
  * This is a thin wrapper for JWI api, some codes are copied from JWI manual
  * http://projects.csail.mit.edu/jwi/
  *
+ * the first sense of a (lemma, POS) and its hypernyms are kept in an LRU cache of -Dwordnet.cache=N entries
+ * (0 to disable), so the same words of different documents are looked up in the dictionary only once.
+ * With -Dwordnet.ram=true the whole dictionary is loaded into memory at start
  */
 public class WordNetWrapper 
 {
+	static public final int CacheSize = Integer.getInteger("wordnet.cache", 100000);
+	static public final boolean InMemory = Boolean.getBoolean("wordnet.ram");
+	
 	protected IDictionary dict;
+	protected LruCache<String, Sense> cache;
+	
+	/**
+	 * the first sense of a word, with its synonyms and its hypernym synsets
+	 */
+	static class Sense
+	{
+		// the lemma isn't accepted by the dictionary, e.g. empty
+		static final Sense Illegal = new Sense(null, null, null);
+		// the lemma isn't in the dictionary
+		static final Sense Missing = new Sense(null, null, null);
+		
+		ISynset synset;
+		List<String> synonyms;
+		List<ISynset> hypernyms;
+		
+		Sense(ISynset synset, List<String> synonyms, List<ISynset> hypernyms)
+		{
+			this.synset = synset;
+			this.synonyms = synonyms;
+			this.hypernyms = hypernyms;
+		}
+	}
 	
 	protected static WordNetWrapper singleton;
 	
-	static public WordNetWrapper getSingleTon() throws IOException
+	static public synchronized WordNetWrapper getSingleTon() throws IOException
 	{
 		if(singleton == null)
 		{
@@ -42,8 +76,95 @@ public class WordNetWrapper
 		URL url = new URL("file", null, "data/WordnetDb");
 		
 		// construct the dictionary object and open it
-		dict = new Dictionary(url);
+		if(InMemory)
+		{
+			dict = new RAMDictionary(new File(url.getPath()), ILoadPolicy.IMMEDIATE_LOAD);
+		}
+		else
+		{
+			dict = new Dictionary(url);
+		}
 		dict.open();
+		if(CacheSize > 0)
+		{
+			cache = new LruCache<String, Sense>(CacheSize);
+		}
+	}
+	
+	/**
+	 * the first sense of the lemma, from the cache if it's there
+	 * @param lemma
+	 * @param pos_wn
+	 * @return
+	 */
+	protected Sense getSense(String lemma, POS pos_wn)
+	{
+		if(cache == null || lemma == null)
+		{
+			return lookupSense(lemma, pos_wn);
+		}
+		String key = lemma + "/" + pos_wn.getTag();
+		Sense sense = cache.get(key);
+		if(sense == null)
+		{
+			sense = lookupSense(lemma, pos_wn);
+			cache.put(key, sense);
+		}
+		return sense;
+	}
+	
+	/**
+	 * look up the first sense of the lemma in the dictionary
+	 * @param lemma
+	 * @param pos_wn
+	 * @return
+	 */
+	protected synchronized Sense lookupSense(String lemma, POS pos_wn)
+	{
+		// look up first sense of the word 
+		IIndexWord idxWord = null;
+		try
+		{
+			idxWord = dict.getIndexWord(lemma, pos_wn);
+		}
+		catch(java.lang.IllegalArgumentException e)
+		{
+			System.err.println("IllegalArgumentException: lemma: " + lemma + "\t" + "POS: " + pos_wn);
+			return Sense.Illegal;
+		}
+		if(idxWord == null)
+		{
+			return Sense.Missing;
+		}
+		IWordID wordID = idxWord.getWordIDs().get(0); // 1st meaning
+		IWord word = dict.getWord(wordID);
+		ISynset synset = word.getSynset();
+		
+		List<String> synonyms = new ArrayList<String>();
+		for(IWord temp : synset.getWords())
+		{
+			synonyms.add(temp.getLemma());
+		}
+		
+		// get the hypernyms
+		List<ISynset> hypernyms = new ArrayList<ISynset>();
+		for(ISynsetID sid : synset.getRelatedSynsets(Pointer.HYPERNYM))
+		{
+			hypernyms.add(dict.getSynset(sid));
+		}
+		return new Sense(synset, Collections.unmodifiableList(synonyms), Collections.unmodifiableList(hypernyms));
+	}
+	
+	/**
+	 * print the hits and misses of the cache
+	 * @param out
+	 */
+	static public synchronized void printStatistics(PrintStream out)
+	{
+		if(singleton != null && singleton.cache != null)
+		{
+			out.println("wordnet cache\t" + singleton.cache);
+		}
 	}
 	
 	/**
@@ -104,78 +225,34 @@ public class WordNetWrapper
 			return null;
 		}
 		
-		// look up first sense of the word 
-		IIndexWord idxWord = null;
-		try
+		Sense sense = getSense(lemma, pos_wn);
+		if(sense.synset == null)
 		{
-			idxWord = dict.getIndexWord(lemma, pos_wn);
-		}
-		catch(java.lang.IllegalArgumentException e)
-		{
-			System.err.println("IllegalArgumentException: lemma: " + lemma + "\t" + "POS: " + pos_wn);
 			return null;
 		}
-		if(idxWord == null)
-		{
-			return null;
-		}
-		IWordID wordID = idxWord.getWordIDs().get(0); // 1st meaning
-		IWord word = dict.getWord(wordID);
-		ISynset synset = word.getSynset();
-		List<IWord> words = synset.getWords();
-		
-		List<String> ret = new ArrayList<String>();
-		for(IWord temp : words)
-		{
-			ret.add(temp.getLemma());
-		}
-		
-		return ret;
+		return new ArrayList<String>(sense.synonyms);
 	}
 	
 	public List<ISynset> getHypernyms(String lemma, String pos)
 	{	
-		List<ISynset> ret = new ArrayList<ISynset>();
-		
 		POS pos_wn = convertTreebankPOS(pos);
 		if(pos_wn == null)
 		{
 			return null;
 		}
 		
-		// look up first sense of the word 
-		IIndexWord idxWord = null;
-		try
+		Sense sense = getSense(lemma, pos_wn);
+		if(sense.synset == null)
 		{
-			idxWord = dict.getIndexWord(lemma, pos_wn);
-		}
-		catch(java.lang.IllegalArgumentException e)
-		{
-			System.err.println("IllegalArgumentException: lemma: " + lemma + "\t" + "POS: " + pos_wn);
 			return null;
 		}
-		if(idxWord == null)
-		{
-			return null;
-		}
-		IWordID wordID = idxWord.getWordIDs().get(0); // 1st meaning
-		IWord word = dict.getWord( wordID );
-		ISynset synset = word.getSynset();
-	
-		// get the hypernyms
-		List<ISynsetID> hypernyms = synset.getRelatedSynsets(Pointer.HYPERNYM);
-	
-		// get each hypernyms id
-		for(ISynsetID sid : hypernyms )
-		{
-			ret.add(dict.getSynset(sid));
-		}
+		List<ISynset> ret = new ArrayList<ISynset>(sense.hypernyms);
 		
 		// if there isn't hypernym of current word
 		// just fill in the synset of itself
 		if(ret.size() == 0)
 		{
-			ret.add(synset);
+			ret.add(sense.synset);
 		}
 		return ret;
 	}
@@ -189,31 +266,18 @@ public class WordNetWrapper
 			return ret;
 		}
 		
-		// look up first sense of the word 
-		IIndexWord idxWord = null;
-		try
-		{
-			idxWord = dict.getIndexWord(lemma, pos_wn);
-		}
-		catch(java.lang.IllegalArgumentException e)
+		Sense sense = getSense(lemma, pos_wn);
+		if(sense == Sense.Illegal)
 		{
-			System.err.println("IllegalArgumentException: lemma: " + lemma + "\t" + "POS: " + pos_wn);
 			return null;
 		}
-		if(idxWord == null)
+		if(sense.synset == null)
 		{
 			return ret;
 		}
-		IWordID wordID = idxWord.getWordIDs().get(0); // 1st meaning
-		IWord word = dict.getWord( wordID );
-		ISynset synset = word.getSynset();
-	
-		// get the hypernyms
-		List<ISynsetID> hypernyms = synset.getRelatedSynsets(Pointer.HYPERNYM);
-		for(ISynsetID sid : hypernyms)
+		for(ISynset hypernym : sense.hypernyms)
 		{
-			List<IWord> words = dict.getSynset(sid).getWords();
-			for(IWord temp : words)
+			for(IWord temp : hypernym.getWords())
 			{
 				ret.add(temp.getLemma());
 			}
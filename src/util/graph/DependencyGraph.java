@@ -3,6 +3,7 @@ package util.graph;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Vector;
 
 import edu.stanford.nlp.trees.TypedDependency;
@@ -69,6 +70,28 @@ public class DependencyGraph
 		}
 	}
 	
+	/**
+	 * a graph from edges that don't come from the parser, e.g. a fallback structure
+	 * @param edges each edge is added to its governor and dependent, in order
+	 * @param root
+	 * @param length
+	 */
+	public DependencyGraph(List<GraphEdge> edges, int root, int length)
+	{
+		getVertices().setSize(length);
+		for(int i=0; i<length; i++)
+		{
+			GraphNode node = new GraphNode(i);
+			getVertices().set(i, node);
+		}
+		this.root = root;
+		for(GraphEdge edge : edges)
+		{
+			getVertices().get(edge.getGovernor()).getEdges().add(edge);
+			getVertices().get(edge.getDependent()).getEdges().add(edge);
+		}
+	}
+	
 	/**
 	 * default constructor
 	 */
@@ -77,6 +100,16 @@ public class DependencyGraph
 		; // do nothing 
 	}
 	
+	public int getRoot()
+	{
+		return root;
+	}
+	
+	public void setRoot(int root)
+	{
+		this.root = root;
+	}
+	
 	/**
 	 * get the shortest path from arg1 to args2
 	 * @return